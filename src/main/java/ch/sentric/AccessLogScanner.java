@@ -0,0 +1,564 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Counts the normalized keys, as returned by {@link URL#getNormalizedUrl()}, of
+ * the urls in Apache or Nginx access logs in the combined format, e.g. to find
+ * the most requested pages of a site.
+ * </p>
+ * <p>
+ * A log is memory mapped in chunks ending at line boundaries, and the chunks
+ * are scanned on a pool of threads. Each thread finds the request target and
+ * optionally the referrer of a line with a byte level scan, rebuilds the url
+ * in a reused builder and normalizes it with its own {@link UrlParser}, so
+ * common lines create no objects except for new keys. Request targets
+ * starting with '/' are completed with the scheme and the host of the
+ * configuration or of the first field, e.g. the <i>%v</i> of Apache's
+ * vhost_combined format. Absolute targets, e.g. of proxies, are kept. Escapes
+ * like \x22 are decoded, and non-ASCII bytes are read as UTF-8.
+ * </p>
+ * The counts of all scanned logs are merged and written sorted, one key per
+ * line followed by the tab separated count, like the text format of
+ * {@link ExternalUrlSorter}. Malformed urls are counted and skipped. Scanning
+ * is not thread safe.
+ */
+public class AccessLogScanner implements Closeable {
+    /**
+     * The default number of bytes mapped and scanned at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    private final String scheme;
+    private final String host;
+    private final boolean hostField;
+    private final boolean referrers;
+    private final int threads;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final KeyCounts counts = new KeyCounts();
+    private long lines;
+    private long urls;
+    private long malformed;
+
+    /**
+     * Constructor.
+     * 
+     * @param scheme
+     *            the scheme of the request targets, e.g. http
+     * @param host
+     *            the host of the request targets, may be null when the first
+     *            field holds it
+     * @param hostField
+     *            whether the first field of a line is the host, optionally
+     *            with port, preferred to the given host unless it is '-'
+     * @param referrers
+     *            whether to count the referrers too
+     * @param threads
+     *            the number of threads scanning chunks
+     */
+    public AccessLogScanner(final String scheme, final String host, final boolean hostField, final boolean referrers, final int threads) {
+	this(scheme, host, hostField, referrers, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    AccessLogScanner(final String scheme, final String host, final boolean hostField, final boolean referrers, final int threads, final int chunkSize) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("threads must be positive: " + threads);
+	}
+	if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+	    throw new IllegalArgumentException("chunk size out of range: " + chunkSize);
+	}
+	this.scheme = scheme;
+	this.host = host;
+	this.hostField = hostField;
+	this.referrers = referrers;
+	this.threads = threads;
+	this.chunkSize = chunkSize;
+	this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Scans a log and adds the keys of its urls to the counts.
+     * 
+     * @param log
+     *            the log file
+     * @return the number of lines scanned
+     * @throws IOException
+     *             when the log can not be read
+     */
+    public long scan(final File log) throws IOException {
+	final FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+	try {
+	    final long[] bounds = chunkBounds(channel);
+	    final AtomicInteger next = new AtomicInteger();
+	    final List<Future<Worker>> workers = new ArrayList<Future<Worker>>(this.threads);
+	    for (int i = 0; i < Math.min(this.threads, bounds.length - 1); i++) {
+		workers.add(this.executor.submit(new Worker(channel, bounds, next)));
+	    }
+	    long scanned = 0;
+	    for (final Future<Worker> future : workers) {
+		final Worker worker = await(future);
+		this.counts.addAll(worker.counts);
+		scanned += worker.lines;
+		this.urls += worker.urls;
+		this.malformed += worker.malformed;
+	    }
+	    this.lines += scanned;
+	    return scanned;
+	} finally {
+	    channel.close();
+	}
+    }
+
+    /**
+     * Returns the number of lines scanned.
+     * 
+     * @return the number of lines
+     */
+    public long getLines() {
+	return this.lines;
+    }
+
+    /**
+     * Returns the number of urls found, including malformed ones.
+     * 
+     * @return the number of urls
+     */
+    public long getUrls() {
+	return this.urls;
+    }
+
+    /**
+     * Returns the number of malformed urls skipped.
+     * 
+     * @return the number of malformed urls
+     */
+    public long getMalformed() {
+	return this.malformed;
+    }
+
+    /**
+     * Returns the count of the given key.
+     * 
+     * @param key
+     *            the normalized key
+     * @return the count, 0 when not found
+     */
+    public long getCount(final CharSequence key) {
+	return this.counts.get(key);
+    }
+
+    /**
+     * Writes the keys sorted by their utf-8 bytes like the ones of
+     * {@link ExternalUrlSorter}, each followed by a tab and its count.
+     * 
+     * @param out
+     *            the writer
+     * @return the number of unique keys
+     * @throws IOException
+     *             when writing fails
+     */
+    public long writeTo(final Writer out) throws IOException {
+	final String[] keys = this.counts.keys();
+	final byte[][] bytes = new byte[keys.length][];
+	for (int i = 0; i < keys.length; i++) {
+	    bytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+	}
+	Arrays.sort(bytes, ExternalUrlSorter.KEY_ORDER);
+	for (final byte[] utf8 : bytes) {
+	    final String key = new String(utf8, StandardCharsets.UTF_8);
+	    out.write(key);
+	    out.write('\t');
+	    out.write(Long.toString(this.counts.get(key)));
+	    out.write('\n');
+	}
+	return keys.length;
+    }
+
+    /**
+     * Stops the threads.
+     */
+    @Override
+    public void close() {
+	this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns the offsets of the chunks of the log, from 0 to its size, each
+     * following a line feed.
+     */
+    private long[] chunkBounds(final FileChannel channel) throws IOException {
+	final long size = channel.size();
+	final List<Long> bounds = new ArrayList<Long>();
+	bounds.add(0L);
+	final ByteBuffer buffer = ByteBuffer.allocate(4096);
+	long position = this.chunkSize;
+	while (position < size) {
+	    // the chunk ends after the line crossing the nominal end
+	    long lineEnd = size;
+	    for (long read = position; read < size && lineEnd == size; read += buffer.limit()) {
+		buffer.clear();
+		channel.read(buffer, read);
+		buffer.flip();
+		for (int i = 0; i < buffer.limit(); i++) {
+		    if (buffer.get(i) == '\n') {
+			lineEnd = read + i + 1;
+			break;
+		    }
+		}
+	    }
+	    if (lineEnd - bounds.get(bounds.size() - 1) > MAX_CHUNK_SIZE) {
+		throw new IOException("line too long at " + position);
+	    }
+	    if (lineEnd < size) {
+		bounds.add(lineEnd);
+	    }
+	    position = lineEnd + this.chunkSize;
+	}
+	bounds.add(size);
+	final long[] result = new long[bounds.size()];
+	for (int i = 0; i < result.length; i++) {
+	    result[i] = bounds.get(i);
+	}
+	return result;
+    }
+
+    private static Worker await(final Future<Worker> worker) throws IOException {
+	try {
+	    return worker.get();
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("interrupted", e);
+	} catch (final ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IOException("scanning a chunk failed", e.getCause());
+	}
+    }
+
+    /**
+     * Scans chunks until none is left, counting into its own table.
+     */
+    private final class Worker implements Callable<Worker> {
+	private final FileChannel channel;
+	private final long[] bounds;
+	private final AtomicInteger next;
+	private final UrlParser parser = new UrlParser();
+	private final StringBuilder url = new StringBuilder(256);
+	private final StringBuilder key = new StringBuilder(256);
+	private final KeyCounts counts = new KeyCounts();
+	private byte[] bytes = new byte[256];
+	private long lines;
+	private long urls;
+	private long malformed;
+
+	Worker(final FileChannel channel, final long[] bounds, final AtomicInteger next) {
+	    this.channel = channel;
+	    this.bounds = bounds;
+	    this.next = next;
+	}
+
+	@Override
+	public Worker call() throws IOException {
+	    int chunk;
+	    while ((chunk = this.next.getAndIncrement()) < this.bounds.length - 1) {
+		final long start = this.bounds[chunk];
+		final MappedByteBuffer log = this.channel.map(FileChannel.MapMode.READ_ONLY, start, this.bounds[chunk + 1] - start);
+		final int end = log.limit();
+		int lineStart = 0;
+		for (int i = 0; i < end; i++) {
+		    if (log.get(i) == '\n') {
+			scanLine(log, lineStart, i);
+			lineStart = i + 1;
+		    }
+		}
+		if (lineStart < end) {
+		    scanLine(log, lineStart, end);
+		}
+	    }
+	    return this;
+	}
+
+	/**
+	 * Scans a line of the combined format, e.g. 1.2.3.4 - - [date]
+	 * "GET /a HTTP/1.1" 200 512 "http://referrer/" "agent".
+	 */
+	private void scanLine(final ByteBuffer log, final int start, final int end) {
+	    this.lines++;
+	    int i = start;
+	    int hostStart = -1;
+	    int hostEnd = -1;
+	    if (AccessLogScanner.this.hostField) {
+		while (i < end && log.get(i) != ' ') {
+		    i++;
+		}
+		if (i > start && !(i == start + 1 && log.get(start) == '-')) {
+		    hostStart = start;
+		    hostEnd = i;
+		}
+	    }
+	    final int request = indexOf(log, '"', i, end);
+	    if (request == -1) {
+		return;
+	    }
+	    final int requestEnd = closingQuote(log, request + 1, end);
+	    final int method = indexOf(log, ' ', request + 1, requestEnd);
+	    if (method != -1) {
+		int targetEnd = method + 1;
+		while (targetEnd < requestEnd && log.get(targetEnd) != ' ') {
+		    targetEnd++;
+		}
+		addTarget(log, method + 1, targetEnd, hostStart, hostEnd);
+	    }
+	    if (AccessLogScanner.this.referrers && requestEnd < end) {
+		final int referrer = indexOf(log, '"', requestEnd + 1, end);
+		if (referrer != -1) {
+		    final int referrerEnd = closingQuote(log, referrer + 1, end);
+		    if (referrerEnd > referrer + 1 && !(referrerEnd == referrer + 2 && log.get(referrer + 1) == '-')) {
+			this.url.setLength(0);
+			append(log, referrer + 1, referrerEnd);
+			count();
+		    }
+		}
+	    }
+	}
+
+	private void addTarget(final ByteBuffer log, final int start, final int end, final int hostStart, final int hostEnd) {
+	    if (start == end) {
+		return;
+	    }
+	    this.url.setLength(0);
+	    if (log.get(start) == '/') {
+		// origin form, completed with scheme and host
+		if (hostStart != -1) {
+		    this.url.append(AccessLogScanner.this.scheme).append("://");
+		    append(log, hostStart, hostEnd);
+		} else if (null != AccessLogScanner.this.host) {
+		    this.url.append(AccessLogScanner.this.scheme).append("://").append(AccessLogScanner.this.host);
+		} else {
+		    return;
+		}
+	    } else if (!isAbsolute(log, start, end)) {
+		// e.g. * or the authority of CONNECT
+		return;
+	    }
+	    append(log, start, end);
+	    count();
+	}
+
+	private void count() {
+	    this.urls++;
+	    try {
+		this.key.setLength(0);
+		this.parser.reset(this.url).normalizeInto(this.key);
+		this.counts.add(this.key, 1);
+	    } catch (final MalformedURLException e) {
+		this.malformed++;
+	    }
+	}
+
+	/**
+	 * Appends the bytes of a field to the url, decoding escapes and UTF-8.
+	 */
+	private void append(final ByteBuffer log, final int start, final int end) {
+	    if (this.bytes.length < end - start) {
+		this.bytes = new byte[Math.max(end - start, 2 * this.bytes.length)];
+	    }
+	    int length = 0;
+	    boolean ascii = true;
+	    for (int i = start; i < end; i++) {
+		byte b = log.get(i);
+		if (b == '\\' && i + 1 < end) {
+		    final byte escaped = log.get(i + 1);
+		    final int high = i + 3 < end && escaped == 'x' ? Character.digit(log.get(i + 2), 16) : -1;
+		    final int low = high == -1 ? -1 : Character.digit(log.get(i + 3), 16);
+		    if (low != -1) {
+			b = (byte) (high << 4 | low);
+			i += 3;
+		    } else if (escaped == '"' || escaped == '\\') {
+			b = escaped;
+			i++;
+		    }
+		}
+		ascii &= b >= 0;
+		this.bytes[length++] = b;
+	    }
+	    if (ascii) {
+		for (int i = 0; i < length; i++) {
+		    this.url.append((char) this.bytes[i]);
+		}
+	    } else {
+		this.url.append(new String(this.bytes, 0, length, StandardCharsets.UTF_8));
+	    }
+	}
+    }
+
+    private static int indexOf(final ByteBuffer log, final char c, final int start, final int end) {
+	for (int i = start; i < end; i++) {
+	    if (log.get(i) == c) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the quote closing a field, skipping escaped ones, or
+     * the end.
+     */
+    private static int closingQuote(final ByteBuffer log, final int start, final int end) {
+	for (int i = start; i < end; i++) {
+	    final byte b = log.get(i);
+	    if (b == '"') {
+		return i;
+	    } else if (b == '\\') {
+		i++;
+	    }
+	}
+	return end;
+    }
+
+    /**
+     * Checks whether the target starts with a scheme followed by "://".
+     */
+    private static boolean isAbsolute(final ByteBuffer log, final int start, final int end) {
+	for (int i = start; i + 2 < end; i++) {
+	    final byte b = log.get(i);
+	    if (b == ':') {
+		return i > start && log.get(i + 1) == '/' && log.get(i + 2) == '/';
+	    }
+	    if (!((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (i > start && ((b >= '0' && b <= '9') || b == '+' || b == '-' || b == '.')))) {
+		return false;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Counts keys in an open addressing table, creating a string only for new
+     * keys.
+     */
+    private static final class KeyCounts {
+	private String[] keys = new String[1024];
+	private int[] hashes = new int[1024];
+	private long[] counts = new long[1024];
+	private int size;
+
+	void add(final CharSequence key, final long count) {
+	    final int hash = hash(key);
+	    final int slot = slot(key, hash);
+	    if (null == this.keys[slot]) {
+		this.keys[slot] = key.toString();
+		this.hashes[slot] = hash;
+		if (++this.size > this.keys.length / 2) {
+		    this.counts[slot] = count;
+		    grow();
+		    return;
+		}
+	    }
+	    this.counts[slot] += count;
+	}
+
+	void addAll(final KeyCounts other) {
+	    for (int i = 0; i < other.keys.length; i++) {
+		if (null != other.keys[i]) {
+		    add(other.keys[i], other.counts[i]);
+		}
+	    }
+	}
+
+	long get(final CharSequence key) {
+	    final int slot = slot(key, hash(key));
+	    return null == this.keys[slot] ? 0 : this.counts[slot];
+	}
+
+	String[] keys() {
+	    final String[] result = new String[this.size];
+	    int n = 0;
+	    for (final String key : this.keys) {
+		if (null != key) {
+		    result[n++] = key;
+		}
+	    }
+	    return result;
+	}
+
+	/**
+	 * Returns the slot of the key, or the empty slot it belongs to.
+	 */
+	private int slot(final CharSequence key, final int hash) {
+	    final int mask = this.keys.length - 1;
+	    int slot = (hash ^ (hash >>> 16)) & mask;
+	    while (null != this.keys[slot] && !(this.hashes[slot] == hash && this.keys[slot].contentEquals(key))) {
+		slot = (slot + 1) & mask;
+	    }
+	    return slot;
+	}
+
+	private void grow() {
+	    final String[] oldKeys = this.keys;
+	    final int[] oldHashes = this.hashes;
+	    final long[] oldCounts = this.counts;
+	    this.keys = new String[oldKeys.length * 2];
+	    this.hashes = new int[oldKeys.length * 2];
+	    this.counts = new long[oldKeys.length * 2];
+	    final int mask = this.keys.length - 1;
+	    for (int i = 0; i < oldKeys.length; i++) {
+		if (null != oldKeys[i]) {
+		    int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+		    while (null != this.keys[slot]) {
+			slot = (slot + 1) & mask;
+		    }
+		    this.keys[slot] = oldKeys[i];
+		    this.hashes[slot] = oldHashes[i];
+		    this.counts[slot] = oldCounts[i];
+		}
+	    }
+	}
+
+	private static int hash(final CharSequence key) {
+	    int hash = 0;
+	    for (int i = 0; i < key.length(); i++) {
+		hash = 31 * hash + key.charAt(i);
+	    }
+	    return hash;
+	}
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Resolves host names asynchronously on a bounded pool of threads, so a batch
+ * of urls resolves with at most the given number of concurrent lookups instead
+ * of one blocking call after the other.
+ * </p>
+ * Results are cached per host, successful lookups for the positive, failed
+ * lookups for the negative time to live. Concurrent lookups of the same host
+ * share a single lookup. The cache is bounded, once full, expired entries are
+ * evicted and new results are not cached until there is room again. This class
+ * is thread safe.
+ */
+public class AsyncHostResolver implements Closeable {
+    /**
+     * The default time to live of successful lookups.
+     */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The default time to live of failed lookups.
+     */
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The default maximum number of cached hosts.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private final HostResolver resolver;
+    private final ExecutorService executor;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Constructor, resolving with the {@link JdkHostResolver} and the default
+     * times to live.
+     * 
+     * @param concurrency
+     *            the maximum number of concurrent lookups
+     */
+    public AsyncHostResolver(final int concurrency) {
+	this(new JdkHostResolver(), concurrency, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param resolver
+     *            the resolver doing the blocking lookups
+     * @param concurrency
+     *            the maximum number of concurrent lookups
+     * @param ttlMillis
+     *            the time to live of successful lookups, 0 to not cache them
+     * @param negativeTtlMillis
+     *            the time to live of failed lookups, 0 to not cache them
+     * @param maxEntries
+     *            the maximum number of cached hosts
+     */
+    public AsyncHostResolver(final HostResolver resolver, final int concurrency, final long ttlMillis, final long negativeTtlMillis, final int maxEntries) {
+	if (concurrency < 1) {
+	    throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+	}
+	if (ttlMillis < 0 || negativeTtlMillis < 0) {
+	    throw new IllegalArgumentException("time to live must not be negative");
+	}
+	this.resolver = resolver;
+	this.executor = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory());
+	this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+	this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Resolves the given host name.
+     * 
+     * @param host
+     *            the host name without port or user info
+     * @return the future addresses, completed exceptionally with an
+     *         {@link UnknownHostException} when the host can not be resolved
+     */
+    public CompletableFuture<InetAddress[]> resolve(final String host) {
+	final String key = host.toLowerCase(Locale.ENGLISH);
+	final long now = System.nanoTime();
+	Entry entry = this.cache.get(key);
+	while (null == entry || entry.isExpired(now)) {
+	    final Entry created = new Entry();
+	    if (null == entry ? null == (entry = this.cache.putIfAbsent(key, created)) : this.cache.replace(key, entry, created)) {
+		lookup(key, created);
+		return created.future;
+	    }
+	    entry = this.cache.get(key);
+	}
+	return entry.future;
+    }
+
+    /**
+     * Resolves the ip address of the host of the given url, like
+     * {@link URL#resolveIp()}.
+     * 
+     * @param url
+     *            the url
+     * @return the future ip address, completed exceptionally with an
+     *         {@link UnknownHostException} when the host can not be resolved
+     *         or resolves to 127.0.0.1
+     */
+    public CompletableFuture<String> resolveIp(final URL url) {
+	return resolve(url.getAuthority().getHostName().getAsString()).thenApply(new Function<InetAddress[], String>() {
+	    @Override
+	    public String apply(final InetAddress[] addresses) {
+		final String ip = addresses[0].getHostAddress();
+		if (ip.equals("127.0.0.1")) {
+		    throw new CompletionException(new UnknownHostException("IP" + ip + "not valid"));
+		}
+		return ip;
+	    }
+	});
+    }
+
+    /**
+     * Resolves the hosts of the given urls, each distinct host once.
+     * 
+     * @param urls
+     *            the urls
+     * @return the future ip address per url, in the order of the urls, also
+     *         for equal urls
+     */
+    public List<CompletableFuture<String>> resolveIps(final Collection<URL> urls) {
+	final List<CompletableFuture<String>> result = new ArrayList<CompletableFuture<String>>(urls.size());
+	for (final URL url : urls) {
+	    result.add(resolveIp(url));
+	}
+	return result;
+    }
+
+    /**
+     * Returns the number of cached hosts, including pending lookups.
+     * 
+     * @return the number of cached hosts
+     */
+    public int getCacheSize() {
+	return this.cache.size();
+    }
+
+    /**
+     * Discards all cached results; pending lookups complete as usual.
+     */
+    public void clear() {
+	this.cache.clear();
+    }
+
+    /**
+     * Stops the lookup threads. Pending lookups are cancelled, i.e. their
+     * futures complete with a {@link java.util.concurrent.CancellationException}
+     * and they are removed from the cache.
+     */
+    @Override
+    public void close() {
+	this.executor.shutdownNow();
+	for (final Iterator<Entry> i = this.cache.values().iterator(); i.hasNext();) {
+	    final Entry entry = i.next();
+	    if (!entry.future.isDone()) {
+		i.remove();
+		entry.future.cancel(false);
+	    }
+	}
+    }
+
+    private void lookup(final String host, final Entry entry) {
+	if (this.cache.size() > this.maxEntries) {
+	    evictExpired();
+	}
+	try {
+	    this.executor.execute(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			final InetAddress[] addresses = AsyncHostResolver.this.resolver.resolve(host);
+			complete(host, entry, AsyncHostResolver.this.ttlNanos);
+			entry.future.complete(addresses);
+		    } catch (final UnknownHostException e) {
+			complete(host, entry, AsyncHostResolver.this.negativeTtlNanos);
+			entry.future.completeExceptionally(e);
+		    } catch (final RuntimeException e) {
+			// not a result of the lookup, don't cache it
+			AsyncHostResolver.this.cache.remove(host, entry);
+			entry.future.completeExceptionally(e);
+		    }
+		}
+	    });
+	} catch (final RuntimeException e) {
+	    this.cache.remove(host, entry);
+	    entry.future.completeExceptionally(e);
+	}
+    }
+
+    /**
+     * Sets the expiry of a completed lookup before its future completes, so
+     * any caller seeing the completed future also sees the expiry.
+     */
+    private void complete(final String host, final Entry entry, final long ttlNanos) {
+	if (ttlNanos == 0 || this.cache.size() > this.maxEntries) {
+	    this.cache.remove(host, entry);
+	} else {
+	    entry.expiry = System.nanoTime() + ttlNanos;
+	}
+    }
+
+    private void evictExpired() {
+	final long now = System.nanoTime();
+	for (final Iterator<Entry> i = this.cache.values().iterator(); i.hasNext();) {
+	    if (i.next().isExpired(now)) {
+		i.remove();
+	    }
+	}
+    }
+
+    /**
+     * A cached lookup, pending until its future is done.
+     */
+    private static final class Entry {
+	private final CompletableFuture<InetAddress[]> future = new CompletableFuture<InetAddress[]>();
+	private volatile long expiry;
+
+	boolean isExpired(final long now) {
+	    return this.future.isDone() && now - this.expiry >= 0;
+	}
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+	private final AtomicInteger count = new AtomicInteger();
+
+	@Override
+	public Thread newThread(final Runnable runnable) {
+	    final Thread thread = new Thread(runnable, "host-resolver-" + this.count.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
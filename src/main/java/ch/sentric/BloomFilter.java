@@ -0,0 +1,278 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A blocked bloom filter over {@link Fingerprint}s of normalized urls, used as
+ * cheap front of an exact store like {@link FingerprintSet}. All bits of a
+ * fingerprint fall into one block of 512 bits, i.e. one cache line, so a
+ * lookup touches one block only.
+ * <p>
+ * {@link #mightContain(long)} returning false means the url has definitely not
+ * been seen, true means it may have been seen. Bits are set with atomic word
+ * updates, all methods are thread safe.
+ * </p>
+ */
+public class BloomFilter {
+    private static final int MAGIC = 0x55524C42; // URLB
+    private static final int VERSION = 2;
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int BLOCK_BITS = WORDS_PER_BLOCK * 64;
+    private static final int MAX_HASHES = 16;
+    private static final int PROBES_PER_HASH = 7; // of 9 bits each
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+    private final int blocks;
+    private final int hashes;
+
+    private BloomFilter(final long[] words, final int hashes) {
+	this.words = words;
+	this.blocks = words.length / WORDS_PER_BLOCK;
+	this.hashes = hashes;
+    }
+
+    /**
+     * Creates a filter sized for the expected number of urls and the requested
+     * false positive rate. As the urls do not spread evenly over the blocks, a
+     * blocked filter needs more bits than a plain one for the same rate, so
+     * the size is grown from the plain one until the rate expected for the
+     * blocks is reached.
+     * 
+     * @param expectedCount
+     *            the expected number of urls
+     * @param falsePositiveRate
+     *            the false positive rate, between 0 and 1 exclusive
+     * @return the filter
+     */
+    public static BloomFilter create(final long expectedCount, final double falsePositiveRate) {
+	if (expectedCount < 1) {
+	    throw new IllegalArgumentException("expected count must be positive: " + expectedCount);
+	}
+	if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+	    throw new IllegalArgumentException("false positive rate must be between 0 and 1: " + falsePositiveRate);
+	}
+	double bitsPerUrl = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+	int hashes = bestHashes(bitsPerUrl);
+	while (falsePositiveRate(bitsPerUrl, hashes) > falsePositiveRate) {
+	    bitsPerUrl *= 1.01;
+	    hashes = bestHashes(bitsPerUrl);
+	}
+	final long blocks = Math.max(1, (long) Math.ceil(expectedCount * bitsPerUrl / BLOCK_BITS));
+	if (blocks * WORDS_PER_BLOCK > Integer.MAX_VALUE - 8) {
+	    throw new IllegalArgumentException("filter for " + expectedCount + " urls is too large");
+	}
+	return new BloomFilter(new long[(int) blocks * WORDS_PER_BLOCK], hashes);
+    }
+
+    /**
+     * Returns the number of hash functions giving the lowest false positive
+     * rate for the given bits per url.
+     */
+    private static int bestHashes(final double bitsPerUrl) {
+	int best = 1;
+	for (int hashes = 2; hashes <= MAX_HASHES; hashes++) {
+	    if (falsePositiveRate(bitsPerUrl, hashes) < falsePositiveRate(bitsPerUrl, best)) {
+		best = hashes;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * Returns the expected false positive rate of a blocked filter, i.e. the
+     * rate of a plain filter of one block averaged over the poisson
+     * distributed number of urls per block.
+     */
+    static double falsePositiveRate(final double bitsPerUrl, final int hashes) {
+	final double mean = BLOCK_BITS / bitsPerUrl;
+	final double unset = Math.log1p(-1.0 / BLOCK_BITS);
+	final long last = (long) Math.ceil(mean + 10 * Math.sqrt(mean) + 10);
+	double logProbability = -mean;
+	double rate = 0;
+	for (long urls = 0; urls <= last; urls++) {
+	    if (urls > 0) {
+		logProbability += Math.log(mean / urls);
+	    }
+	    rate += Math.exp(logProbability) * Math.pow(-Math.expm1(unset * urls * hashes), hashes);
+	}
+	return rate;
+    }
+
+    /**
+     * Adds the fingerprint of the given url.
+     * 
+     * @param url
+     *            the url
+     * @return true when the url has definitely not been added before
+     */
+    public boolean put(final URL url) {
+	return put(Fingerprint.of(url));
+    }
+
+    /**
+     * Adds the given fingerprint.
+     * 
+     * @param fingerprint
+     *            the fingerprint
+     * @return true when the fingerprint has definitely not been added before
+     */
+    public boolean put(final long fingerprint) {
+	final int base = blockFor(fingerprint) * WORDS_PER_BLOCK;
+	boolean changed = false;
+	long hash = fingerprint;
+	for (int i = 0; i < this.hashes; i++) {
+	    if (i > 0 && i % PROBES_PER_HASH == 0) {
+		hash = Fingerprint.mix(fingerprint + i * GOLDEN_GAMMA);
+	    }
+	    final int index = base + ((int) (hash >>> 6) & (WORDS_PER_BLOCK - 1));
+	    final long mask = 1L << hash;
+	    if ((this.words[index] & mask) == 0) {
+		final long previous = (long) WORD.getAndBitwiseOr(this.words, index, mask);
+		changed |= (previous & mask) == 0;
+	    }
+	    hash >>>= 9;
+	}
+	return changed;
+    }
+
+    /**
+     * Checks whether the fingerprint of the given url may have been added.
+     * 
+     * @param url
+     *            the url
+     * @return false when the url has definitely not been added
+     */
+    public boolean mightContain(final URL url) {
+	return mightContain(Fingerprint.of(url));
+    }
+
+    /**
+     * Checks whether the given fingerprint may have been added.
+     * 
+     * @param fingerprint
+     *            the fingerprint
+     * @return false when the fingerprint has definitely not been added
+     */
+    public boolean mightContain(final long fingerprint) {
+	final int base = blockFor(fingerprint) * WORDS_PER_BLOCK;
+	long hash = fingerprint;
+	for (int i = 0; i < this.hashes; i++) {
+	    if (i > 0 && i % PROBES_PER_HASH == 0) {
+		hash = Fingerprint.mix(fingerprint + i * GOLDEN_GAMMA);
+	    }
+	    final long word = (long) WORD.getVolatile(this.words, base + ((int) (hash >>> 6) & (WORDS_PER_BLOCK - 1)));
+	    if ((word & (1L << hash)) == 0) {
+		return false;
+	    }
+	    hash >>>= 9;
+	}
+	return true;
+    }
+
+    /**
+     * Returns the number of hash functions.
+     * 
+     * @return the number of hash functions
+     */
+    public int getHashes() {
+	return this.hashes;
+    }
+
+    /**
+     * Returns the size of the filter in bits.
+     * 
+     * @return number of bits
+     */
+    public long getBits() {
+	return this.words.length * 64L;
+    }
+
+    /**
+     * Writes the filter to the given file. Bits set concurrently may or may not
+     * be written.
+     * 
+     * @param file
+     *            the file
+     * @throws IOException
+     *             when the file can not be written
+     */
+    public void save(final File file) throws IOException {
+	final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	try {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeInt(this.hashes);
+	    out.writeInt(this.words.length);
+	    for (int i = 0; i < this.words.length; i++) {
+		out.writeLong((long) WORD.getVolatile(this.words, i));
+	    }
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Reads a filter written with {@link #save(File)}.
+     * 
+     * @param file
+     *            the file
+     * @return the filter
+     * @throws IOException
+     *             when the file can not be read or is no bloom filter
+     */
+    public static BloomFilter load(final File file) throws IOException {
+	final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+	try {
+	    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+		throw new IOException(file + " is not a bloom filter");
+	    }
+	    final int hashes = in.readInt();
+	    if (hashes < 1 || hashes > MAX_HASHES) {
+		throw new IOException(file + " has an illegal number of hash functions: " + hashes);
+	    }
+	    final int length = in.readInt();
+	    if (length < WORDS_PER_BLOCK || length % WORDS_PER_BLOCK != 0 || length > Integer.MAX_VALUE - 8) {
+		throw new IOException(file + " has an illegal number of words: " + length);
+	    }
+	    final long[] words = new long[length];
+	    for (int i = 0; i < words.length; i++) {
+		words[i] = in.readLong();
+	    }
+	    return new BloomFilter(words, hashes);
+	} finally {
+	    in.close();
+	}
+    }
+
+    private int blockFor(final long fingerprint) {
+	// the remixed fingerprint selects the block, the raw one and its remixes
+	// the bits in it, 9 bits per probe
+	return (int) Math.multiplyHigh(Fingerprint.mix(fingerprint) >>> 1, (long) this.blocks << 1);
+    }
+}
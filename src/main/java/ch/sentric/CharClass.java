@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+/**
+ * <p>
+ * A set of characters with a scan for the first member, used by the
+ * normalization to detect whether a component needs any work at all, e.g.
+ * uppercase letters in a host or reserved characters in a path part. When the
+ * scan finds no member the component is used as is.
+ * </p>
+ * Membership is a single lookup in a table of the Latin-1 range plus one flag
+ * for all characters above. Instances are immutable.
+ */
+final class CharClass {
+    private final boolean[] latin1 = new boolean[256];
+    private final boolean aboveLatin1;
+
+    /**
+     * Constructor.
+     * 
+     * @param chars
+     *            the members within the Latin-1 range
+     * @param below
+     *            all characters below are members, 0 for none
+     * @param from
+     *            all Latin-1 characters from here on are members, 0 for none
+     * @param aboveLatin1
+     *            whether the characters above U+00FF are members
+     */
+    CharClass(final String chars, final int below, final int from, final boolean aboveLatin1) {
+	for (int i = 0; i < chars.length(); i++) {
+	    final char c = chars.charAt(i);
+	    if (c >= 256) {
+		throw new IllegalArgumentException("not a Latin-1 character: " + c);
+	    }
+	    this.latin1[c] = true;
+	}
+	for (int c = 0; c < below && c < 256; c++) {
+	    this.latin1[c] = true;
+	}
+	for (int c = from == 0 ? 256 : from; c < 256; c++) {
+	    this.latin1[c] = true;
+	}
+	this.aboveLatin1 = aboveLatin1;
+    }
+
+    /**
+     * Checks whether the given character is a member.
+     * 
+     * @param c
+     *            the character
+     * @return true when c is a member
+     */
+    boolean contains(final char c) {
+	return c < 256 ? this.latin1[c] : this.aboveLatin1;
+    }
+
+    /**
+     * Returns the index of the first member in the given string.
+     * 
+     * @param s
+     *            the string
+     * @return the index or -1 when there is none
+     */
+    int indexIn(final String s) {
+	return indexIn(s, 0, s.length());
+    }
+
+    /**
+     * Returns the index of the first member in the given range.
+     * 
+     * @param s
+     *            the string
+     * @param start
+     *            the start, inclusive
+     * @param end
+     *            the end, exclusive
+     * @return the index or -1 when there is none
+     */
+    int indexIn(final String s, final int start, final int end) {
+	final boolean[] table = this.latin1;
+	for (int i = start; i < end; i++) {
+	    final char c = s.charAt(i);
+	    if (c < 256 ? table[c] : this.aboveLatin1) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the first member in the given range of a char
+     * sequence, see {@link #indexIn(String, int, int)}.
+     * 
+     * @param s
+     *            the char sequence
+     * @param start
+     *            the start, inclusive
+     * @param end
+     *            the end, exclusive
+     * @return the index or -1 when there is none
+     */
+    int indexIn(final CharSequence s, final int start, final int end) {
+	final boolean[] table = this.latin1;
+	for (int i = start; i < end; i++) {
+	    final char c = s.charAt(i);
+	    if (c < 256 ? table[c] : this.aboveLatin1) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+}
@@ -15,97 +15,147 @@
  */
 package ch.sentric;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Locale;
 import java.util.StringTokenizer;
 
+import ch.sentric.NormalizationMetrics.Rule;
+
 /**
  * A domain name based implementation of {@link HostName}. The domain name is
  * represented by first, second and n third level domains, e.g. www.google.com.
+ * <p>
+ * The domain is held as one lowercased string without empty labels plus the
+ * start offsets of its labels. The reversed forms are computed once on first
+ * use.
+ * </p>
  */
 public class DomainName implements HostName {
     private static final String DOMAIN_NAME_DELIMITER = ".";
-    private final ArrayList<String> parts = new ArrayList<String>(3);
+    private static final int MAX_LENGTH = 0xFFFF;
+    private static final String WWW = "www";
+    private static final CharClass UPPER_CASE_OR_NON_ASCII = new CharClass("ABCDEFGHIJKLMNOPQRSTUVWXYZ", 0, 0x80, true);
+    private final String name;
+    private final short[] labelStarts;
+    private String reversed;
+    private String optimizedForProximityOrder;
 
     /**
      * The constructor, initializing the domain.
      * 
      * @param domain
-     *            as string
+     *            as string, at most 65535 characters
      */
     public DomainName(final String domain) {
+	if (domain.length() > MAX_LENGTH) {
+	    throw new IllegalArgumentException("domain name too long: " + domain.length());
+	}
+	this.name = isAsciiLowerCase(domain) ? domain : toLowerCase(domain);
+	int labels = this.name.isEmpty() ? 0 : 1;
+	for (int i = 0; i < this.name.length(); i++) {
+	    if (this.name.charAt(i) == '.') {
+		labels++;
+	    }
+	}
+	this.labelStarts = new short[labels];
+	for (int i = 0, label = 1; label < labels; i++) {
+	    if (this.name.charAt(i) == '.') {
+		this.labelStarts[label++] = (short) (i + 1);
+	    }
+	}
+    }
+
+    /**
+     * Checks whether the given domain consists of lowercase ASCII labels
+     * without empty ones, so it can be used as is.
+     */
+    private static boolean isAsciiLowerCase(final String domain) {
+	if (domain.isEmpty()) {
+	    return true;
+	}
+	return UPPER_CASE_OR_NON_ASCII.indexIn(domain) == -1 && domain.charAt(0) != '.' && domain.charAt(domain.length() - 1) != '.' && domain.indexOf("..") == -1;
+    }
+
+    /**
+     * Lowercases the labels of the given domain, dropping empty ones.
+     */
+    static String toLowerCase(final String domain) {
 	final StringTokenizer tokenizer = new StringTokenizer(domain, DOMAIN_NAME_DELIMITER);
+	final StringBuilder builder = new StringBuilder(domain.length());
 	while (tokenizer.hasMoreTokens()) {
-	    final String current = tokenizer.nextToken();
-	    this.parts.add(current.toLowerCase(Locale.ENGLISH));
+	    if (builder.length() > 0) {
+		builder.append('.');
+	    }
+	    builder.append(tokenizer.nextToken().toLowerCase(Locale.ENGLISH));
 	}
+	return builder.toString();
     }
 
     @Override
     public String getAsString() {
-	return concatenate(this.parts, DOMAIN_NAME_DELIMITER);
+	return this.name;
     }
 
     public String getAsReversedString() {
-	return reverseConcatenate(this.parts, DOMAIN_NAME_DELIMITER);
+	String result = this.reversed;
+	if (null == result) {
+	    result = reverse(0);
+	    this.reversed = result;
+	}
+	return result;
     }
 
-    private List<String> stripWWW(final List<String> list) {
-	final ArrayList<String> result = new ArrayList<String>(list.size());
-
-	boolean isFirst = true;
-	for (final String item : list) {
-	    if (isFirst && item.equalsIgnoreCase("www")) {
-		continue;
+    @Override
+    public String getOptimizedForProximityOrder() {
+	String result = this.optimizedForProximityOrder;
+	if (null == result) {
+	    int first = 0;
+	    while (first < this.labelStarts.length && isWWW(first)) {
+		NormalizationMetrics.count(Rule.WWW_STRIPPED);
+		first++;
 	    }
-	    isFirst = false;
-	    result.add(item);
+	    result = first == 0 ? getAsReversedString() : reverse(first);
+	    this.optimizedForProximityOrder = result;
 	}
-
 	return result;
     }
 
-    private String concatenate(final List<String> list, final String separator) {
-	final StringBuilder builder = new StringBuilder();
-	final ListIterator<String> it = list.listIterator();
-
-	while (it.hasNext()) {
-	    builder.append(it.next());
-
-	    if (it.hasNext()) {
-		builder.append(separator);
-	    }
-	}
-	return builder.toString();
+    private int labelStart(final int label) {
+	return this.labelStarts[label] & 0xFFFF;
     }
 
-    private String reverseConcatenate(final List<String> list, final String separator) {
-	final StringBuilder builder = new StringBuilder();
-	final ListIterator<String> it = list.listIterator(list.size());
+    private int labelEnd(final int label) {
+	return label + 1 < this.labelStarts.length ? labelStart(label + 1) - 1 : this.name.length();
+    }
 
-	while (it.hasPrevious()) {
-	    builder.append(it.previous());
+    private boolean isWWW(final int label) {
+	return labelEnd(label) - labelStart(label) == WWW.length() && this.name.startsWith(WWW, labelStart(label));
+    }
 
-	    if (it.hasPrevious()) {
-		builder.append(separator);
+    /**
+     * Concatenates the labels from the last one down to the given one.
+     */
+    private String reverse(final int first) {
+	if (first >= this.labelStarts.length) {
+	    return "";
+	}
+	final int offset = labelStart(first);
+	final char[] result = new char[this.name.length() - offset];
+	int position = 0;
+	for (int label = this.labelStarts.length - 1; label >= first; label--) {
+	    if (position > 0) {
+		result[position++] = '.';
 	    }
+	    final int start = labelStart(label);
+	    final int end = labelEnd(label);
+	    this.name.getChars(start, end, result, position);
+	    position += end - start;
 	}
-	return builder.toString();
-    }
-
-    @Override
-    public String getOptimizedForProximityOrder() {
-	return reverseConcatenate(stripWWW(this.parts), DOMAIN_NAME_DELIMITER);
+	return new String(result);
     }
 
     @Override
     public int hashCode() {
-	final int prime = 31;
-	int result = 1;
-	result = prime * result + ((this.parts == null) ? 0 : this.parts.hashCode());
-	return result;
+	return this.name.hashCode();
     }
 
     @Override
@@ -119,15 +169,7 @@ public class DomainName implements HostName {
 	if (getClass() != obj.getClass()) {
 	    return false;
 	}
-	final DomainName other = (DomainName) obj;
-	if (this.parts == null) {
-	    if (other.parts != null) {
-		return false;
-	    }
-	} else if (!this.parts.equals(other.parts)) {
-	    return false;
-	}
-	return true;
+	return this.name.equals(((DomainName) obj).name);
     }
 
 }
\ No newline at end of file
@@ -15,15 +15,11 @@
  */
 package ch.sentric;
 
-import java.io.CharArrayWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
-import java.security.AccessController;
-import java.util.BitSet;
-
-import sun.security.action.GetPropertyAction;
 
 /**
  * Modified Version of {@link java.net.URLEncoder} to match GoogleBots
@@ -38,35 +34,17 @@ import sun.security.action.GetPropertyAction;
  * <li>%7F..FF</li>
  * </ul>
  * 
- * All Javadoc has been removed to ensure corectness. Please see JavaDoc of the
- * original {java.net.UrlEncoder} instead.
+ * Characters above U+00FF are not converted. Runs of characters to convert
+ * are encoded with the given charset and written as uppercase percent escapes,
+ * UTF-8 is encoded directly without a charset lookup.
  * 
  * @see https
  *      ://code.google.com/intl/de-DE/web/ajaxcrawling/docs/specification.html
  */
 public final class EscapedFragmentEncoder {
-
-    static BitSet needEncoding;
-    static final int caseDiff = ('a' - 'A');
-    static String dfltEncName;
-
-    static {
-
-	needEncoding = new BitSet(256);
-	int i;
-	for (i = 0x00; i <= 0x20; i++) {
-	    needEncoding.set(i);
-	}
-	needEncoding.set(0x23);
-	needEncoding.set(0x25);
-	needEncoding.set(0x26);
-	needEncoding.set(0x2B);
-	for (i = 0x7F; i <= 0xFF; i++) {
-	    needEncoding.set(i);
-	}
-
-	dfltEncName = AccessController.doPrivileged(new GetPropertyAction("file.encoding"));
-    }
+    private static final CharClass NEED_ENCODING = new CharClass("#%&+", 0x21, 0x7F, false);
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String DEFAULT_ENCODING = System.getProperty("file.encoding");
 
     private EscapedFragmentEncoder() {
     }
@@ -80,17 +58,12 @@ public final class EscapedFragmentEncoder {
      */
     @Deprecated
     public static String encode(final String s) {
-
-	String str = null;
-
 	try {
-	    str = encode(s, dfltEncName);
+	    return encode(s, DEFAULT_ENCODING);
 	} catch (final UnsupportedEncodingException e) {
 	    // The system should always have the platform default
-	    str = s;
+	    return s;
 	}
-
-	return str;
     }
 
     /**
@@ -100,96 +73,73 @@ public final class EscapedFragmentEncoder {
      *            the string to encode
      * @param enc
      *            the name of a supported {@code Charset}
-     * @return the encoded string
+     * @return the encoded string, the given instance when nothing is encoded
      * @throws UnsupportedEncodingException
      *             if the given encoding is invalid
      */
     public static String encode(final String s, final String enc) throws UnsupportedEncodingException {
-
-	boolean needToChange = false;
-	final StringBuffer out = new StringBuffer(s.length());
-	Charset charset;
-	final CharArrayWriter charArrayWriter = new CharArrayWriter();
-
 	if (enc == null) {
 	    throw new NullPointerException("charsetName");
 	}
-	try {
-	    charset = Charset.forName(enc);
-	} catch (final IllegalCharsetNameException e) {
-	    throw new UnsupportedEncodingException(enc);
-	} catch (final UnsupportedCharsetException e) {
-	    throw new UnsupportedEncodingException(enc);
+	final Charset charset = isUtf8(enc) ? StandardCharsets.UTF_8 : forName(enc);
+
+	final int length = s.length();
+	int i = NEED_ENCODING.indexIn(s);
+	if (i == -1) {
+	    return s;
 	}
 
-	for (int i = 0; i < s.length();) {
-	    int c = s.charAt(i);
-	    // System.out.println("Examining character: " + c);
-	    if (!needEncoding.get(c)) {
-		// System.out.println("Storing: " + c);
-		out.append((char) c);
+	final StringBuilder out = new StringBuilder(length + 16);
+	out.append(s, 0, i);
+	while (i < length) {
+	    final int start = i;
+	    while (i < length && needsEncoding(s.charAt(i))) {
 		i++;
-	    } else {
-		// convert to external encoding before hex conversion
-		do {
-		    charArrayWriter.write(c);
-		    /*
-		     * If this character represents the start of a Unicode
-		     * surrogate pair, then pass in two characters. It's not
-		     * clear what should be done if a bytes reserved in the
-		     * surrogate pairs range occurs outside of a legal surrogate
-		     * pair. For now, just treat it as if it were any other
-		     * character.
-		     */
-		    if (c >= 0xD800 && c <= 0xDBFF) {
-			/*
-			 * System.out.println(Integer.toHexString(c) +
-			 * " is high surrogate");
-			 */
-			if ((i + 1) < s.length()) {
-			    final int d = s.charAt(i + 1);
-			    /*
-			     * System.out.println("\tExamining " +
-			     * Integer.toHexString(d));
-			     */
-			    if (d >= 0xDC00 && d <= 0xDFFF) {
-				/*
-				 * System.out.println("\t" +
-				 * Integer.toHexString(d) +
-				 * " is low surrogate");
-				 */
-				charArrayWriter.write(d);
-				i++;
-			    }
-			}
-		    }
-		    i++;
-		} while (i < s.length() && needEncoding.get((c = s.charAt(i))));
-
-		charArrayWriter.flush();
-		final String str = new String(charArrayWriter.toCharArray());
-		final byte[] ba = str.getBytes(charset);
-		for (final byte element : ba) {
-		    out.append('%');
-		    char ch = Character.forDigit((element >> 4) & 0xF, 16);
-		    // converting to use uppercase letter as part of
-		    // the hex value if ch is a letter.
-		    if (Character.isLetter(ch)) {
-			ch -= caseDiff;
-		    }
-		    out.append(ch);
-		    ch = Character.forDigit(element & 0xF, 16);
-		    if (Character.isLetter(ch)) {
-			ch -= caseDiff;
+	    }
+	    if (charset == StandardCharsets.UTF_8) {
+		for (int j = start; j < i; j++) {
+		    final char c = s.charAt(j);
+		    if (c < 0x80) {
+			appendEscaped(out, c);
+		    } else {
+			appendEscaped(out, 0xC0 | (c >> 6));
+			appendEscaped(out, 0x80 | (c & 0x3F));
 		    }
-		    out.append(ch);
 		}
-		charArrayWriter.reset();
-		needToChange = true;
+	    } else {
+		// other charsets may encode a run differently than its chars
+		for (final byte b : s.substring(start, i).getBytes(charset)) {
+		    appendEscaped(out, b);
+		}
+	    }
+	    final int end = i;
+	    while (i < length && !needsEncoding(s.charAt(i))) {
+		i++;
 	    }
+	    out.append(s, end, i);
 	}
+	return out.toString();
+    }
+
+    private static boolean needsEncoding(final char c) {
+	return NEED_ENCODING.contains(c);
+    }
+
+    private static void appendEscaped(final StringBuilder out, final int b) {
+	out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
 
-	return (needToChange ? out.toString() : s);
+    private static boolean isUtf8(final String enc) {
+	return "UTF-8".equalsIgnoreCase(enc) || "UTF8".equalsIgnoreCase(enc);
     }
 
+    private static Charset forName(final String enc) throws UnsupportedEncodingException {
+	try {
+	    return Charset.forName(enc);
+	} catch (final IllegalCharsetNameException e) {
+	    throw new UnsupportedEncodingException(enc);
+	} catch (final UnsupportedCharsetException e) {
+	    throw new UnsupportedEncodingException(enc);
+	}
+    }
 }
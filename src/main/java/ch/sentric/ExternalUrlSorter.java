@@ -0,0 +1,610 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Sorts and deduplicates the normalized keys, as returned by
+ * {@link URL#getNormalizedUrl()}, of any number of raw urls within a bounded
+ * memory budget, e.g. to bulk load a store from a url dump.
+ * </p>
+ * <p>
+ * Added urls are collected in chunks. Each full chunk is normalized, sorted and
+ * deduplicated on a pool of threads and written to a temporary run file. The
+ * runs are then merged with a loser tree, in several passes when there are
+ * more runs than {@link #MAX_FAN_IN}. Keys are ordered by their UTF-8 bytes,
+ * unsigned, like {@link FrontCodedWriter} expects. Optionally the number of
+ * occurrences and the first raw url of each key are kept. Malformed urls are
+ * counted and skipped.
+ * </p>
+ * Adding urls is not thread safe.
+ */
+public class ExternalUrlSorter implements Closeable {
+    /**
+     * The maximum number of runs merged at once.
+     */
+    public static final int MAX_FAN_IN = 64;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+	/** one key per line, followed by the tab separated count and url when kept */
+	TEXT,
+	/** the keys only, see {@link FrontCodedWriter} */
+	FRONT_CODED
+    }
+
+    private final File directory;
+    private final long chunkBudget;
+    private final boolean keepCounts;
+    private final boolean keepFirstUrl;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final List<Future<File>> runs = new ArrayList<Future<File>>();
+    private final AtomicLong malformed = new AtomicLong();
+    private List<String> chunk = new ArrayList<String>();
+    private long chunkSize;
+    private long added;
+
+    /**
+     * Constructor.
+     * 
+     * @param directory
+     *            the directory of the temporary run files
+     * @param memoryBudget
+     *            the approximate number of bytes the chunks in memory may use
+     * @param threads
+     *            the number of threads normalizing and sorting chunks
+     * @param keepCounts
+     *            whether to count the occurrences of each key
+     * @param keepFirstUrl
+     *            whether to keep the first raw url of each key
+     */
+    public ExternalUrlSorter(final File directory, final long memoryBudget, final int threads, final boolean keepCounts, final boolean keepFirstUrl) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("threads must be positive: " + threads);
+	}
+	// one chunk is filled while the others are sorted
+	this.chunkBudget = memoryBudget / (threads + 1);
+	if (this.chunkBudget < ENTRY_OVERHEAD) {
+	    throw new IllegalArgumentException("memory budget too small: " + memoryBudget);
+	}
+	this.directory = directory;
+	this.keepCounts = keepCounts;
+	this.keepFirstUrl = keepFirstUrl;
+	this.executor = Executors.newFixedThreadPool(threads);
+	this.inFlight = new Semaphore(threads);
+    }
+
+    /**
+     * Adds a raw url.
+     * 
+     * @param url
+     *            the raw url
+     * @throws IOException
+     *             when writing a previous run failed
+     */
+    public void add(final String url) throws IOException {
+	checkNotSorted();
+	this.chunk.add(url);
+	// the raw url, its key and the key bytes
+	this.chunkSize += ENTRY_OVERHEAD + 6L * url.length();
+	this.added++;
+	if (this.chunkSize >= this.chunkBudget) {
+	    flushChunk();
+	}
+    }
+
+    /**
+     * Returns the number of urls added.
+     * 
+     * @return the number of urls
+     */
+    public long getAdded() {
+	return this.added;
+    }
+
+    /**
+     * Returns the number of malformed urls skipped so far.
+     * 
+     * @return the number of malformed urls
+     */
+    public long getMalformed() {
+	return this.malformed.get();
+    }
+
+    /**
+     * Returns the number of runs written so far.
+     * 
+     * @return the number of runs
+     */
+    public int getRunCount() {
+	return this.runs.size();
+    }
+
+    /**
+     * Sorts the added urls and writes their unique keys. No urls may be added
+     * afterwards.
+     * 
+     * @param output
+     *            the output file, an existing file is overwritten
+     * @param format
+     *            the output format, {@link Format#FRONT_CODED} stores the keys
+     *            only
+     * @return the number of unique keys
+     * @throws IOException
+     *             when a run or the output can not be written
+     */
+    public long sortTo(final File output, final Format format) throws IOException {
+	checkNotSorted();
+	if (!this.chunk.isEmpty()) {
+	    flushChunk();
+	}
+	this.chunk = null;
+	List<File> files = new ArrayList<File>(this.runs.size());
+	for (final Future<File> run : this.runs) {
+	    files.add(await(run));
+	}
+	while (files.size() > MAX_FAN_IN) {
+	    // merge consecutive runs, so runs stay in input order
+	    final List<File> merged = new ArrayList<File>();
+	    for (int i = 0; i < files.size(); i += MAX_FAN_IN) {
+		final List<File> group = files.subList(i, Math.min(files.size(), i + MAX_FAN_IN));
+		final File run = createRunFile();
+		final RunWriter writer = new RunWriter(run);
+		try {
+		    merge(group, writer);
+		} finally {
+		    writer.close();
+		}
+		delete(group);
+		merged.add(run);
+	    }
+	    files = merged;
+	}
+
+	final Sink sink = format == Format.FRONT_CODED ? new FrontCodedSink(output) : new TextSink(output);
+	try {
+	    return merge(files, sink);
+	} finally {
+	    sink.close();
+	    delete(files);
+	}
+    }
+
+    /**
+     * Stops the threads and deletes remaining run files.
+     */
+    @Override
+    public void close() {
+	this.executor.shutdownNow();
+	for (final Future<File> run : this.runs) {
+	    if (run.isDone() && !run.isCancelled()) {
+		try {
+		    run.get().delete();
+		} catch (final Exception e) {
+		    // no file was written
+		}
+	    }
+	}
+    }
+
+    private void flushChunk() throws IOException {
+	final List<String> urls = this.chunk;
+	this.chunk = new ArrayList<String>(urls.size());
+	this.chunkSize = 0;
+	try {
+	    this.inFlight.acquire();
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("interrupted", e);
+	}
+	final File run = createRunFile();
+	this.runs.add(this.executor.submit(new Callable<File>() {
+	    @Override
+	    public File call() throws IOException {
+		try {
+		    writeRun(urls, run);
+		    return run;
+		} finally {
+		    ExternalUrlSorter.this.inFlight.release();
+		}
+	    }
+	}));
+	// fail early when a previous run failed
+	for (final Future<File> previous : this.runs) {
+	    if (previous.isDone()) {
+		await(previous);
+	    }
+	}
+    }
+
+    private void writeRun(final List<String> urls, final File run) throws IOException {
+	final List<Entry> entries = new ArrayList<Entry>(urls.size());
+	for (final String url : urls) {
+	    try {
+		final byte[] key = new URL(url).getNormalizedUrl().getBytes(StandardCharsets.UTF_8);
+		entries.add(new Entry(key, 1, this.keepFirstUrl ? url : null));
+	    } catch (final MalformedURLException e) {
+		this.malformed.incrementAndGet();
+	    }
+	}
+	// stable, so the first url of a key stays first
+	Collections.sort(entries, ENTRY_ORDER);
+	final RunWriter writer = new RunWriter(run);
+	try {
+	    Entry current = null;
+	    for (final Entry entry : entries) {
+		if (null != current && Arrays.equals(current.key, entry.key)) {
+		    current.count++;
+		} else {
+		    if (null != current) {
+			writer.write(current.key, current.count, current.url);
+		    }
+		    current = entry;
+		}
+	    }
+	    if (null != current) {
+		writer.write(current.key, current.count, current.url);
+	    }
+	} finally {
+	    writer.close();
+	}
+    }
+
+    private long merge(final List<File> files, final Sink sink) throws IOException {
+	final RunReader[] readers = new RunReader[files.size()];
+	try {
+	    for (int i = 0; i < readers.length; i++) {
+		readers[i] = new RunReader(files.get(i));
+	    }
+	    long keys = 0;
+	    if (readers.length == 0) {
+		return keys;
+	    }
+	    final LoserTree tree = new LoserTree(readers);
+	    byte[] key = null;
+	    long count = 0;
+	    String url = null;
+	    for (RunReader winner = tree.winner(); !winner.exhausted; winner = tree.winner()) {
+		if (null != key && Arrays.equals(key, winner.key)) {
+		    count += winner.count;
+		} else {
+		    if (null != key) {
+			sink.write(key, count, url);
+			keys++;
+		    }
+		    key = winner.key;
+		    count = winner.count;
+		    url = winner.url;
+		}
+		winner.advance();
+		tree.replay();
+	    }
+	    if (null != key) {
+		sink.write(key, count, url);
+		keys++;
+	    }
+	    return keys;
+	} finally {
+	    for (final RunReader reader : readers) {
+		if (null != reader) {
+		    reader.close();
+		}
+	    }
+	}
+    }
+
+    private void checkNotSorted() {
+	if (null == this.chunk) {
+	    throw new IllegalStateException("already sorted");
+	}
+    }
+
+    private File createRunFile() throws IOException {
+	final File run = File.createTempFile("urls-", ".run", this.directory);
+	run.deleteOnExit();
+	return run;
+    }
+
+    private static File await(final Future<File> run) throws IOException {
+	try {
+	    return run.get();
+	} catch (final InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("interrupted", e);
+	} catch (final ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IOException("writing a run failed", e.getCause());
+	}
+    }
+
+    private static void delete(final List<File> files) {
+	for (final File file : files) {
+	    file.delete();
+	}
+    }
+
+    private static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+	long remaining = value;
+	while ((remaining & ~0x7FL) != 0) {
+	    out.write((int) (remaining & 0x7F) | 0x80);
+	    remaining >>>= 7;
+	}
+	out.write((int) remaining);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+	long result = 0;
+	int shift = 0;
+	int b;
+	do {
+	    b = in.readUnsignedByte();
+	    result |= (long) (b & 0x7F) << shift;
+	    shift += 7;
+	} while ((b & 0x80) != 0);
+	return result;
+    }
+
+    /**
+     * The order of the keys, by unsigned utf-8 bytes.
+     */
+    static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>() {
+	@Override
+	public int compare(final byte[] a, final byte[] b) {
+	    return Arrays.compareUnsigned(a, b);
+	}
+    };
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+	@Override
+	public int compare(final Entry a, final Entry b) {
+	    return KEY_ORDER.compare(a.key, b.key);
+	}
+    };
+
+    /**
+     * A key with its count and first url.
+     */
+    private static final class Entry {
+	private final byte[] key;
+	private long count;
+	private final String url;
+
+	Entry(final byte[] key, final long count, final String url) {
+	    this.key = key;
+	    this.count = count;
+	    this.url = url;
+	}
+    }
+
+    /**
+     * Receives the merged, unique keys.
+     */
+    private interface Sink extends Closeable {
+	void write(byte[] key, long count, String url) throws IOException;
+    }
+
+    /**
+     * Writes a run: per key its length and bytes, the count and the url when
+     * kept.
+     */
+    private final class RunWriter implements Sink {
+	private final DataOutputStream out;
+
+	RunWriter(final File file) throws IOException {
+	    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+	}
+
+	@Override
+	public void write(final byte[] key, final long count, final String url) throws IOException {
+	    writeVarLong(this.out, key.length);
+	    this.out.write(key);
+	    if (ExternalUrlSorter.this.keepCounts) {
+		writeVarLong(this.out, count);
+	    }
+	    if (ExternalUrlSorter.this.keepFirstUrl) {
+		final byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(this.out, bytes.length);
+		this.out.write(bytes);
+	    }
+	}
+
+	@Override
+	public void close() throws IOException {
+	    this.out.close();
+	}
+    }
+
+    private final class RunReader implements Closeable {
+	private final DataInputStream in;
+	private byte[] key;
+	private long count;
+	private String url;
+	private boolean exhausted;
+
+	RunReader(final File file) throws IOException {
+	    this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+	    advance();
+	}
+
+	void advance() throws IOException {
+	    final long length;
+	    try {
+		length = readVarLong(this.in);
+	    } catch (final EOFException e) {
+		this.exhausted = true;
+		this.key = null;
+		this.url = null;
+		return;
+	    }
+	    this.key = new byte[(int) length];
+	    this.in.readFully(this.key);
+	    this.count = ExternalUrlSorter.this.keepCounts ? readVarLong(this.in) : 1;
+	    if (ExternalUrlSorter.this.keepFirstUrl) {
+		final byte[] bytes = new byte[(int) readVarLong(this.in)];
+		this.in.readFully(bytes);
+		this.url = new String(bytes, StandardCharsets.UTF_8);
+	    }
+	}
+
+	@Override
+	public void close() throws IOException {
+	    this.in.close();
+	}
+    }
+
+    /**
+     * A tournament tree over the runs, keeping the loser of each match in the
+     * inner nodes, so replacing the winner costs one comparison per level.
+     * Ties are won by the earlier run, which holds the earlier urls.
+     */
+    private static final class LoserTree {
+	private final RunReader[] runs;
+	private final int[] tree;
+
+	LoserTree(final RunReader[] runs) {
+	    this.runs = runs;
+	    final int k = runs.length;
+	    this.tree = new int[k];
+	    // leaf i is node k + i, the winners of the subtrees are computed bottom up
+	    final int[] winners = new int[2 * k];
+	    for (int i = 0; i < k; i++) {
+		winners[k + i] = i;
+	    }
+	    for (int node = k - 1; node >= 1; node--) {
+		final int left = winners[2 * node];
+		final int right = winners[2 * node + 1];
+		if (less(left, right)) {
+		    winners[node] = left;
+		    this.tree[node] = right;
+		} else {
+		    winners[node] = right;
+		    this.tree[node] = left;
+		}
+	    }
+	    this.tree[0] = k == 1 ? 0 : winners[1];
+	}
+
+	RunReader winner() {
+	    return this.runs[this.tree[0]];
+	}
+
+	/**
+	 * Restores the tree after the winner advanced.
+	 */
+	void replay() {
+	    int winner = this.tree[0];
+	    for (int node = (this.runs.length + winner) >> 1; node > 0; node >>= 1) {
+		if (less(this.tree[node], winner)) {
+		    final int loser = winner;
+		    winner = this.tree[node];
+		    this.tree[node] = loser;
+		}
+	    }
+	    this.tree[0] = winner;
+	}
+
+	private boolean less(final int a, final int b) {
+	    final RunReader x = this.runs[a];
+	    final RunReader y = this.runs[b];
+	    if (x.exhausted || y.exhausted) {
+		return !x.exhausted || (y.exhausted && a < b);
+	    }
+	    final int comparison = Arrays.compareUnsigned(x.key, y.key);
+	    return comparison < 0 || (comparison == 0 && a < b);
+	}
+    }
+
+    private final class TextSink implements Sink {
+	private final Writer out;
+
+	TextSink(final File file) throws IOException {
+	    this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	@Override
+	public void write(final byte[] key, final long count, final String url) throws IOException {
+	    this.out.write(new String(key, StandardCharsets.UTF_8));
+	    if (ExternalUrlSorter.this.keepCounts) {
+		this.out.write('\t');
+		this.out.write(Long.toString(count));
+	    }
+	    if (ExternalUrlSorter.this.keepFirstUrl) {
+		this.out.write('\t');
+		this.out.write(url);
+	    }
+	    this.out.write('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+	    this.out.close();
+	}
+    }
+
+    private static final class FrontCodedSink implements Sink {
+	private final FrontCodedWriter writer;
+
+	FrontCodedSink(final File file) throws IOException {
+	    this.writer = new FrontCodedWriter(file);
+	}
+
+	@Override
+	public void write(final byte[] key, final long count, final String url) throws IOException {
+	    this.writer.add(new String(key, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void close() throws IOException {
+	    this.writer.close();
+	}
+    }
+}
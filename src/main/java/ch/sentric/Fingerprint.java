@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+/**
+ * Computes 64-bit fingerprints of normalized urls as returned by
+ * {@link URL#getNormalizedUrl()}. The fingerprint never is 0, which allows
+ * storing it in tables that use 0 as empty marker.
+ */
+public final class Fingerprint {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+
+    private Fingerprint() {
+    }
+
+    /**
+     * Returns the fingerprint of the normalized form of the given url.
+     * 
+     * @param url
+     *            the url
+     * @return the fingerprint, never 0
+     */
+    public static long of(final URL url) {
+	return of(url.getNormalizedUrl());
+    }
+
+    /**
+     * Returns the fingerprint of an already normalized url.
+     * 
+     * @param normalizedUrl
+     *            the normalized url, e.g. com.example/bar.html
+     * @return the fingerprint, never 0
+     */
+    public static long of(final CharSequence normalizedUrl) {
+	return of(normalizedUrl, 0, normalizedUrl.length());
+    }
+
+    /**
+     * Returns the fingerprint of the normalized url in the given range.
+     * 
+     * @param normalizedUrl
+     *            the char sequence containing the normalized url
+     * @param start
+     *            the start index, inclusive
+     * @param end
+     *            the end index, exclusive
+     * @return the fingerprint, never 0
+     */
+    public static long of(final CharSequence normalizedUrl, final int start, final int end) {
+	long hash = SEED ^ ((end - start) * MULTIPLIER);
+	int i = start;
+	// four chars at a time
+	for (; i + 4 <= end; i += 4) {
+	    final long block = normalizedUrl.charAt(i) | ((long) normalizedUrl.charAt(i + 1) << 16) | ((long) normalizedUrl.charAt(i + 2) << 32)
+		    | ((long) normalizedUrl.charAt(i + 3) << 48);
+	    hash = Long.rotateLeft(hash ^ mix(block), 27) * 5 + 0x52DCE729;
+	}
+	long tail = 0;
+	for (int shift = 0; i < end; i++, shift += 16) {
+	    tail |= (long) normalizedUrl.charAt(i) << shift;
+	}
+	hash ^= mix(tail);
+	hash = mix(hash);
+	return hash == 0 ? SEED : hash;
+    }
+
+    /**
+     * The MurmurHash3 64-bit finalizer.
+     */
+    static long mix(final long value) {
+	long k = value;
+	k ^= k >>> 33;
+	k *= 0xFF51AFD7ED558CCDL;
+	k ^= k >>> 33;
+	k *= MULTIPLIER;
+	k ^= k >>> 33;
+	return k;
+    }
+}
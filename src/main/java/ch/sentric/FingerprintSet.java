@@ -0,0 +1,340 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A set of 64-bit {@link Fingerprint}s of normalized urls, stored as primitive
+ * longs outside of the java heap. The slots are organized as an open
+ * addressing table with linear probing; 0 marks an empty slot.
+ * <p>
+ * The table either lives in direct memory ({@link #allocate(long)}) or in a
+ * memory mapped file ({@link #create(File, long)}, {@link #open(File)}). The
+ * file layout is the table itself, so a persisted set is reopened without
+ * rehashing. With the default load factor a set uses about 10 bytes per url.
+ * </p>
+ * {@link #addIfAbsent(long)} is lock free and may be called concurrently.
+ * The capacity is fixed on creation; adding to a full set throws an
+ * {@link IllegalStateException}.
+ */
+public class FingerprintSet implements Closeable {
+    /**
+     * The load factor used to size the table from the expected url count.
+     */
+    public static final double DEFAULT_LOAD_FACTOR = 0.8;
+
+    private static final double MAX_LOAD_FACTOR = 0.95;
+    private static final long MAGIC = 0x55524C4650534554L; // URLFPSET
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SEGMENT_SHIFT = 27; // 2^27 slots = 1GB per segment
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final VarHandle SLOT = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer header;
+    private final ByteBuffer[] segments;
+    private final long capacity;
+    private final long maxSize;
+    private final LongAdder size = new LongAdder();
+    private final FileChannel channel;
+
+    private FingerprintSet(final ByteBuffer header, final ByteBuffer[] segments, final long capacity, final long size, final FileChannel channel) {
+	this.header = header;
+	this.segments = segments;
+	this.capacity = capacity;
+	this.maxSize = (long) (capacity * MAX_LOAD_FACTOR);
+	this.size.add(size);
+	this.channel = channel;
+    }
+
+    /**
+     * Allocates a set in direct memory.
+     * 
+     * @param expectedSize
+     *            the expected number of urls
+     * @return the set
+     */
+    public static FingerprintSet allocate(final long expectedSize) {
+	final long capacity = capacityFor(expectedSize);
+	final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+	final ByteBuffer[] segments = new ByteBuffer[segmentCount(capacity)];
+	for (int i = 0; i < segments.length; i++) {
+	    segments[i] = ByteBuffer.allocateDirect(segmentBytes(capacity, i));
+	}
+	return new FingerprintSet(header, segments, capacity, 0, null);
+    }
+
+    /**
+     * Creates a new memory mapped set backed by the given file. An existing
+     * file is overwritten.
+     * 
+     * @param file
+     *            the file
+     * @param expectedSize
+     *            the expected number of urls
+     * @return the set
+     * @throws IOException
+     *             when the file can not be created or mapped
+     */
+    public static FingerprintSet create(final File file, final long expectedSize) throws IOException {
+	final long capacity = capacityFor(expectedSize);
+	final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	try {
+	    raf.setLength(0);
+	    raf.setLength(HEADER_SIZE + capacity * 8);
+	    final FingerprintSet set = map(raf.getChannel(), capacity, 0);
+	    set.writeHeader();
+	    return set;
+	} catch (final IOException e) {
+	    raf.close();
+	    throw e;
+	}
+    }
+
+    /**
+     * Opens a set previously created with {@link #create(File, long)} or
+     * written with {@link #save(File)}.
+     * 
+     * @param file
+     *            the file
+     * @return the set
+     * @throws IOException
+     *             when the file can not be mapped or is no fingerprint set
+     */
+    public static FingerprintSet open(final File file) throws IOException {
+	final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	try {
+	    final FileChannel channel = raf.getChannel();
+	    final ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	    if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+		throw new IOException(file + " is not a fingerprint set");
+	    }
+	    final long capacity = header.getLong(16);
+	    if (channel.size() != HEADER_SIZE + capacity * 8) {
+		throw new IOException(file + " is truncated");
+	    }
+	    return map(channel, capacity, header.getLong(24));
+	} catch (final IOException e) {
+	    raf.close();
+	    throw e;
+	}
+    }
+
+    private static FingerprintSet map(final FileChannel channel, final long capacity, final long size) throws IOException {
+	final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+	final ByteBuffer[] segments = new ByteBuffer[segmentCount(capacity)];
+	long position = HEADER_SIZE;
+	for (int i = 0; i < segments.length; i++) {
+	    final int bytes = segmentBytes(capacity, i);
+	    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+	    position += bytes;
+	}
+	return new FingerprintSet(header, segments, capacity, size, channel);
+    }
+
+    private static long capacityFor(final long expectedSize) {
+	if (expectedSize < 1) {
+	    throw new IllegalArgumentException("expected size must be positive: " + expectedSize);
+	}
+	return Math.max(16, (long) Math.ceil(expectedSize / DEFAULT_LOAD_FACTOR));
+    }
+
+    private static int segmentCount(final long capacity) {
+	return (int) ((capacity + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentBytes(final long capacity, final int segment) {
+	return (int) (Math.min(capacity - ((long) segment << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT) * 8);
+    }
+
+    /**
+     * Adds the fingerprint of the given url unless it is already contained.
+     * 
+     * @param url
+     *            the url
+     * @return true when the url was not yet contained
+     */
+    public boolean addIfAbsent(final URL url) {
+	return addIfAbsent(Fingerprint.of(url));
+    }
+
+    /**
+     * Adds the given fingerprint unless it is already contained. This method
+     * is thread safe.
+     * 
+     * @param fingerprint
+     *            the fingerprint, 0 is stored as {@link Long#MIN_VALUE}
+     * @return true when the fingerprint was not yet contained
+     */
+    public boolean addIfAbsent(final long fingerprint) {
+	final long key = nonZero(fingerprint);
+	long slot = indexFor(key);
+	for (long probes = 0; probes < this.capacity; probes++) {
+	    final ByteBuffer segment = this.segments[(int) (slot >>> SEGMENT_SHIFT)];
+	    final int offset = (int) (slot & SEGMENT_MASK) << 3;
+	    long current = (long) SLOT.getVolatile(segment, offset);
+	    if (current == 0) {
+		if (this.size.sum() >= this.maxSize) {
+		    throw new IllegalStateException("fingerprint set is full: " + this.capacity + " slots");
+		}
+		current = (long) SLOT.compareAndExchange(segment, offset, 0L, key);
+		if (current == 0) {
+		    this.size.increment();
+		    return true;
+		}
+	    }
+	    if (current == key) {
+		return false;
+	    }
+	    slot = slot + 1 == this.capacity ? 0 : slot + 1;
+	}
+	throw new IllegalStateException("fingerprint set is full: " + this.capacity + " slots");
+    }
+
+    /**
+     * Checks whether the fingerprint of the given url is contained.
+     * 
+     * @param url
+     *            the url
+     * @return true when contained
+     */
+    public boolean contains(final URL url) {
+	return contains(Fingerprint.of(url));
+    }
+
+    /**
+     * Checks whether the given fingerprint is contained.
+     * 
+     * @param fingerprint
+     *            the fingerprint
+     * @return true when contained
+     */
+    public boolean contains(final long fingerprint) {
+	final long key = nonZero(fingerprint);
+	long slot = indexFor(key);
+	for (long probes = 0; probes < this.capacity; probes++) {
+	    final long current = (long) SLOT.getVolatile(this.segments[(int) (slot >>> SEGMENT_SHIFT)], (int) (slot & SEGMENT_MASK) << 3);
+	    if (current == key) {
+		return true;
+	    }
+	    if (current == 0) {
+		return false;
+	    }
+	    slot = slot + 1 == this.capacity ? 0 : slot + 1;
+	}
+	return false;
+    }
+
+    /**
+     * Returns the number of contained fingerprints.
+     * 
+     * @return the size
+     */
+    public long size() {
+	return this.size.sum();
+    }
+
+    /**
+     * Returns the number of slots of the table.
+     * 
+     * @return the capacity
+     */
+    public long capacity() {
+	return this.capacity;
+    }
+
+    /**
+     * Writes the set to the given file, which can be reopened with
+     * {@link #open(File)}. Must not be called concurrently with
+     * {@link #addIfAbsent(long)}.
+     * 
+     * @param file
+     *            the file
+     * @throws IOException
+     *             when the file can not be written
+     */
+    public void save(final File file) throws IOException {
+	writeHeader();
+	final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	try {
+	    final FileChannel out = raf.getChannel();
+	    out.truncate(0);
+	    writeFully(out, this.header.duplicate());
+	    for (final ByteBuffer segment : this.segments) {
+		writeFully(out, segment.duplicate());
+	    }
+	} finally {
+	    raf.close();
+	}
+    }
+
+    private static void writeFully(final FileChannel out, final ByteBuffer buffer) throws IOException {
+	buffer.clear();
+	while (buffer.hasRemaining()) {
+	    out.write(buffer);
+	}
+    }
+
+    /**
+     * Writes the header and forces a memory mapped set to the storage device.
+     * Has no effect on the table of a set in direct memory.
+     */
+    public void flush() {
+	writeHeader();
+	if (null != this.channel) {
+	    ((MappedByteBuffer) this.header).force();
+	    for (final ByteBuffer segment : this.segments) {
+		((MappedByteBuffer) segment).force();
+	    }
+	}
+    }
+
+    @Override
+    public void close() throws IOException {
+	if (null != this.channel) {
+	    flush();
+	    this.channel.close();
+	}
+    }
+
+    private void writeHeader() {
+	final ByteBuffer buffer = this.header.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	buffer.putLong(0, MAGIC);
+	buffer.putInt(8, VERSION);
+	buffer.putLong(16, this.capacity);
+	buffer.putLong(24, this.size.sum());
+    }
+
+    private long indexFor(final long key) {
+	// maps the key uniformly onto [0, capacity) without a modulo
+	return Math.multiplyHigh(key >>> 1, this.capacity << 1);
+    }
+
+    private static long nonZero(final long fingerprint) {
+	return fingerprint == 0 ? Long.MIN_VALUE : fingerprint;
+    }
+}
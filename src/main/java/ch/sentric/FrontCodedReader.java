@@ -0,0 +1,337 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a file written by {@link FrontCodedWriter}. The sparse index of block
+ * first keys is held in memory, the blocks are read through memory mapping.
+ * Point lookups binary search the index and decode one block only.
+ * <p>
+ * The reader is thread safe, iterators are not.
+ * </p>
+ */
+public class FrontCodedReader implements Closeable {
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final long keyCount;
+    private final byte[][] firstKeys;
+    private final long[] blockOffsets;
+    private final int[] blockRegions;
+    private final ByteBuffer[] regions;
+    private final long[] regionOffsets;
+
+    /**
+     * Constructor, opening the given file.
+     * 
+     * @param file
+     *            the file
+     * @throws IOException
+     *             when the file can not be read or is no front coded file
+     */
+    public FrontCodedReader(final File file) throws IOException {
+	this.file = new RandomAccessFile(file, "r");
+	try {
+	    final FileChannel channel = this.file.getChannel();
+	    final long size = channel.size();
+	    if (size < FrontCodedWriter.FOOTER_SIZE) {
+		throw new IOException(file + " is not a front coded file");
+	    }
+	    final ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FrontCodedWriter.FOOTER_SIZE, FrontCodedWriter.FOOTER_SIZE);
+	    final long indexOffset = footer.getLong();
+	    this.keyCount = footer.getLong();
+	    final int blockCount = footer.getInt();
+	    footer.getInt(); // keys per block
+	    if (footer.getInt() != FrontCodedWriter.VERSION || footer.getInt() != FrontCodedWriter.MAGIC) {
+		throw new IOException(file + " is not a front coded file");
+	    }
+
+	    final ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - FrontCodedWriter.FOOTER_SIZE - indexOffset);
+	    this.firstKeys = new byte[blockCount][];
+	    this.blockOffsets = new long[blockCount + 1];
+	    for (int i = 0; i < blockCount; i++) {
+		this.blockOffsets[i] = index.getLong();
+		this.firstKeys[i] = new byte[readVarInt(index)];
+		index.get(this.firstKeys[i]);
+	    }
+	    this.blockOffsets[blockCount] = indexOffset;
+
+	    // map the blocks in regions of at most 1GB, never splitting a block
+	    final List<ByteBuffer> regions = new ArrayList<ByteBuffer>();
+	    final List<Long> regionOffsets = new ArrayList<Long>();
+	    this.blockRegions = new int[blockCount];
+	    int first = 0;
+	    while (first < blockCount) {
+		int last = first + 1;
+		while (last < blockCount && this.blockOffsets[last + 1] - this.blockOffsets[first] <= MAX_REGION_SIZE) {
+		    last++;
+		}
+		regionOffsets.add(this.blockOffsets[first]);
+		regions.add(channel.map(FileChannel.MapMode.READ_ONLY, this.blockOffsets[first], this.blockOffsets[last] - this.blockOffsets[first]));
+		Arrays.fill(this.blockRegions, first, last, regions.size() - 1);
+		first = last;
+	    }
+	    this.regions = regions.toArray(new ByteBuffer[regions.size()]);
+	    this.regionOffsets = new long[regionOffsets.size()];
+	    for (int i = 0; i < this.regionOffsets.length; i++) {
+		this.regionOffsets[i] = regionOffsets.get(i);
+	    }
+	} catch (final IOException e) {
+	    this.file.close();
+	    throw e;
+	} catch (final RuntimeException e) {
+	    this.file.close();
+	    throw new IOException(file + " is corrupt", e);
+	}
+    }
+
+    /**
+     * Returns the number of keys.
+     * 
+     * @return number of keys
+     */
+    public long getKeyCount() {
+	return this.keyCount;
+    }
+
+    /**
+     * Checks whether the given key is contained.
+     * 
+     * @param key
+     *            the key
+     * @return true when contained
+     */
+    public boolean contains(final String key) {
+	final byte[] target = key.getBytes(StandardCharsets.UTF_8);
+	final int block = floorBlock(target);
+	if (block < 0) {
+	    return false;
+	}
+	final Cursor cursor = new Cursor(block, null);
+	while (cursor.advance()) {
+	    final int comparison = cursor.compareTo(target);
+	    if (comparison >= 0) {
+		return comparison == 0;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Iterates all keys in ascending order.
+     * 
+     * @return the keys
+     */
+    public Iterator<String> iterator() {
+	return scan(null, null);
+    }
+
+    /**
+     * Iterates all keys starting with the given prefix in ascending order,
+     * e.g. all urls below ch.sentric/blog/.
+     * 
+     * @param prefix
+     *            the prefix
+     * @return the keys starting with prefix
+     */
+    public Iterator<String> prefix(final String prefix) {
+	final byte[] from = prefix.getBytes(StandardCharsets.UTF_8);
+	return scan(from, successor(from));
+    }
+
+    /**
+     * Iterates the keys between from inclusive and to exclusive in ascending
+     * order.
+     * 
+     * @param from
+     *            the first key, null for the first key of the file
+     * @param to
+     *            the stop key, null for no limit
+     * @return the keys within the range
+     */
+    public Iterator<String> range(final String from, final String to) {
+	return scan(null == from ? null : from.getBytes(StandardCharsets.UTF_8), null == to ? null : to.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Iterator<String> scan(final byte[] from, final byte[] to) {
+	final int block = null == from ? 0 : Math.max(0, floorBlock(from));
+	final Cursor cursor = new Cursor(block, to);
+	if (null != from) {
+	    cursor.seek(from);
+	}
+	return cursor;
+    }
+
+    @Override
+    public void close() throws IOException {
+	this.file.close();
+    }
+
+    /**
+     * Returns the index of the last block with a first key not greater than
+     * the given key, or -1 when the key is smaller than all keys.
+     */
+    private int floorBlock(final byte[] key) {
+	int low = 0;
+	int high = this.firstKeys.length - 1;
+	while (low <= high) {
+	    final int middle = (low + high) >>> 1;
+	    final int comparison = Arrays.compareUnsigned(this.firstKeys[middle], key);
+	    if (comparison < 0) {
+		low = middle + 1;
+	    } else if (comparison > 0) {
+		high = middle - 1;
+	    } else {
+		return middle;
+	    }
+	}
+	return low - 1;
+    }
+
+    /**
+     * Returns the smallest key greater than all keys starting with the given
+     * prefix or null when there is none.
+     */
+    private static byte[] successor(final byte[] prefix) {
+	for (int i = prefix.length - 1; i >= 0; i--) {
+	    if (prefix[i] != (byte) 0xFF) {
+		final byte[] result = Arrays.copyOf(prefix, i + 1);
+		result[i]++;
+		return result;
+	    }
+	}
+	return null;
+    }
+
+    private static int readVarInt(final ByteBuffer buffer) {
+	int result = 0;
+	int shift = 0;
+	byte b;
+	do {
+	    b = buffer.get();
+	    result |= (b & 0x7F) << shift;
+	    shift += 7;
+	} while (b < 0);
+	return result;
+    }
+
+    /**
+     * Decodes the keys block by block into a reused buffer.
+     */
+    private final class Cursor implements Iterator<String> {
+	private final byte[] stop;
+	private int block;
+	private ByteBuffer buffer;
+	private int blockEnd;
+	private byte[] key = new byte[64];
+	private int length;
+	private boolean pending;
+	private boolean exhausted;
+
+	Cursor(final int block, final byte[] stop) {
+	    this.block = block - 1;
+	    this.stop = stop;
+	    nextBlock();
+	}
+
+	private boolean nextBlock() {
+	    this.block++;
+	    if (this.block >= firstKeys.length) {
+		this.exhausted = true;
+		return false;
+	    }
+	    final int region = blockRegions[this.block];
+	    this.buffer = regions[region].duplicate();
+	    this.buffer.position((int) (blockOffsets[this.block] - regionOffsets[region]));
+	    this.blockEnd = (int) (blockOffsets[this.block + 1] - regionOffsets[region]);
+	    return true;
+	}
+
+	/**
+	 * Decodes the next key.
+	 * 
+	 * @return false when there are no more keys within the range
+	 */
+	boolean advance() {
+	    if (this.exhausted) {
+		return false;
+	    }
+	    if (this.buffer.position() >= this.blockEnd && !nextBlock()) {
+		return false;
+	    }
+	    final int shared = readVarInt(this.buffer);
+	    final int suffix = readVarInt(this.buffer);
+	    this.length = shared + suffix;
+	    if (this.length > this.key.length) {
+		this.key = Arrays.copyOf(this.key, Math.max(this.length, this.key.length * 2));
+	    }
+	    this.buffer.get(this.key, shared, suffix);
+	    if (null != this.stop && compareTo(this.stop) >= 0) {
+		this.exhausted = true;
+		return false;
+	    }
+	    return true;
+	}
+
+	int compareTo(final byte[] other) {
+	    return Arrays.compareUnsigned(this.key, 0, this.length, other, 0, other.length);
+	}
+
+	void seek(final byte[] from) {
+	    while (advance()) {
+		if (compareTo(from) >= 0) {
+		    this.pending = true;
+		    return;
+		}
+	    }
+	}
+
+	@Override
+	public boolean hasNext() {
+	    if (!this.pending) {
+		this.pending = advance();
+	    }
+	    return this.pending;
+	}
+
+	@Override
+	public String next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    this.pending = false;
+	    return new String(this.key, 0, this.length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Writes sorted normalized urls, as returned by {@link URL#getNormalizedUrl()},
+ * front coded into a file readable by {@link FrontCodedReader}. Normalized urls
+ * sort with long shared prefixes, e.g. <i>ch.sentric/blog/...</i>, so every
+ * key is stored as the length of the prefix shared with its predecessor plus
+ * the remaining suffix.
+ * </p>
+ * The keys are grouped into blocks of a fixed number of keys. The first key of
+ * each block is stored completely and also written to a sparse index at the
+ * end of the file, so a lookup decodes a single block only.
+ * 
+ * <pre>
+ * file   := block* index footer
+ * block  := (varint shared, varint suffix-length, suffix)*
+ * index  := (long block-offset, varint key-length, key)*
+ * footer := long index-offset, long key-count, int block-count,
+ *           int keys-per-block, int version, int magic
+ * </pre>
+ * 
+ * Keys are compared by their UTF-8 bytes, unsigned, and must be added in
+ * strictly ascending order.
+ */
+public class FrontCodedWriter implements Closeable {
+    /**
+     * The default number of keys per block.
+     */
+    public static final int DEFAULT_KEYS_PER_BLOCK = 16;
+
+    static final int MAGIC = 0x55524C46; // URLF
+    static final int VERSION = 1;
+    static final int FOOTER_SIZE = 32;
+
+    private final DataOutputStream out;
+    private final int keysPerBlock;
+    private final IndexBuffer index = new IndexBuffer();
+    private byte[] previous = new byte[0];
+    private long keyCount;
+    private int blockCount;
+    private long offset;
+
+    /**
+     * Constructor, creating the given file with the default number of keys per
+     * block.
+     * 
+     * @param file
+     *            the file to write, an existing file is overwritten
+     * @throws IOException
+     *             when the file can not be created
+     */
+    public FrontCodedWriter(final File file) throws IOException {
+	this(file, DEFAULT_KEYS_PER_BLOCK);
+    }
+
+    /**
+     * Constructor, creating the given file.
+     * 
+     * @param file
+     *            the file to write, an existing file is overwritten
+     * @param keysPerBlock
+     *            the number of keys per block
+     * @throws IOException
+     *             when the file can not be created
+     */
+    public FrontCodedWriter(final File file, final int keysPerBlock) throws IOException {
+	if (keysPerBlock < 1) {
+	    throw new IllegalArgumentException("keys per block must be positive: " + keysPerBlock);
+	}
+	this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	this.keysPerBlock = keysPerBlock;
+    }
+
+    /**
+     * Appends the given key.
+     * 
+     * @param key
+     *            the key, greater than the previously added key
+     * @throws IOException
+     *             when the key can not be written
+     */
+    public void add(final String key) throws IOException {
+	final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+	if (this.keyCount > 0 && Arrays.compareUnsigned(this.previous, bytes) >= 0) {
+	    throw new IllegalArgumentException("keys must be strictly ascending: " + key);
+	}
+	int shared = 0;
+	if (this.keyCount % this.keysPerBlock == 0) {
+	    this.index.writeLong(this.offset);
+	    this.index.writeVarInt(bytes.length);
+	    this.index.write(bytes, 0, bytes.length);
+	    this.blockCount++;
+	} else {
+	    shared = Arrays.mismatch(this.previous, bytes);
+	}
+	this.offset += writeVarInt(this.out, shared);
+	this.offset += writeVarInt(this.out, bytes.length - shared);
+	this.out.write(bytes, shared, bytes.length - shared);
+	this.offset += bytes.length - shared;
+	this.previous = bytes;
+	this.keyCount++;
+    }
+
+    /**
+     * Returns the number of keys added so far.
+     * 
+     * @return number of keys
+     */
+    public long getKeyCount() {
+	return this.keyCount;
+    }
+
+    /**
+     * Writes the index and the footer and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+	try {
+	    this.out.write(this.index.array(), 0, this.index.size());
+	    this.out.writeLong(this.offset);
+	    this.out.writeLong(this.keyCount);
+	    this.out.writeInt(this.blockCount);
+	    this.out.writeInt(this.keysPerBlock);
+	    this.out.writeInt(VERSION);
+	    this.out.writeInt(MAGIC);
+	} finally {
+	    this.out.close();
+	}
+    }
+
+    private static int writeVarInt(final OutputStream out, final int value) throws IOException {
+	int remaining = value;
+	int bytes = 1;
+	while ((remaining & ~0x7F) != 0) {
+	    out.write((remaining & 0x7F) | 0x80);
+	    remaining >>>= 7;
+	    bytes++;
+	}
+	out.write(remaining);
+	return bytes;
+    }
+
+    /**
+     * A growable byte array collecting the sparse index.
+     */
+    private static final class IndexBuffer extends ByteArrayOutputStream {
+	IndexBuffer() {
+	    super(1024);
+	}
+
+	byte[] array() {
+	    return this.buf;
+	}
+
+	void writeLong(final long value) {
+	    for (int shift = 56; shift >= 0; shift -= 8) {
+		write((int) (value >>> shift));
+	    }
+	}
+
+	void writeVarInt(final int value) {
+	    try {
+		FrontCodedWriter.writeVarInt(this, value);
+	    } catch (final IOException e) {
+		throw new IllegalStateException("Unexpected exception writing to memory", e);
+	    }
+	}
+    }
+}
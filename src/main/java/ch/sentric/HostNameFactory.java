@@ -15,10 +15,30 @@
  */
 package ch.sentric;
 
+import java.net.IDN;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
- * The {@link HostNameFactory} providing a hostname.
+ * The {@link HostNameFactory} providing a hostname. Internationalized domain
+ * names are converted to their ASCII compatible encoding, so <i>bücher.de</i>
+ * and <i>xn--bcher-kva.de</i> build equal host names.
  */
 public class HostNameFactory {
+    private static final int MAX_CACHED_LABELS = 4096;
+    private static final CharClass NON_ASCII = new CharClass("", 0, 0x80, true);
+
+    /**
+     * The converted non-ASCII labels, least recently used first.
+     */
+    private static final Map<String, String> ACE_LABELS = new LinkedHashMap<String, String>(64, 0.75f, true) {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+	    return size() > MAX_CACHED_LABELS;
+	}
+    };
 
     /**
      * Factory method to create a hostname as {@link IPv4Address} or
@@ -29,10 +49,80 @@ public class HostNameFactory {
      * @return a {@link HostName}
      */
     public HostName build(final String parsable) {
-	final long ipv4 = IPv4Address.parseIPv4String(parsable);
+	return build(parsable, 0, parsable.length());
+    }
+
+    /**
+     * Factory method to create a hostname from a range of a char sequence, e.g.
+     * of a log line, without copying the range first.
+     * 
+     * @param parsable
+     *            the chars holding the hostname
+     * @param start
+     *            the start of the hostname
+     * @param end
+     *            the end of the hostname, exclusive
+     * @return a {@link HostName}
+     */
+    public HostName build(final CharSequence parsable, final int start, final int end) {
+	final String ace = NON_ASCII.indexIn(parsable, start, end) == -1 ? null : toAscii(parsable.subSequence(start, end).toString());
+	final long ipv4 = null == ace ? IPv4Address.parseIPv4(parsable, start, end) : IPv4Address.parseIPv4(ace, 0, ace.length());
 	if (IPv4Address.ILLEGAL_IPV4 != ipv4) {
 	    return new IPv4Address(ipv4);
 	}
-	return new DomainName(parsable);
+	return new DomainName(null == ace ? parsable.subSequence(start, end).toString() : ace);
+    }
+
+    private static boolean isAscii(final String s) {
+	return NON_ASCII.indexIn(s) == -1;
+    }
+
+    /**
+     * Converts the non-ASCII labels of the given host to their ASCII compatible
+     * encoding. Labels that can't be converted are kept as is.
+     */
+    static String toAscii(final String host) {
+	final StringBuilder builder = new StringBuilder(host.length() + 16);
+	int labelStart = 0;
+	for (int i = 0; i <= host.length(); i++) {
+	    if (i == host.length() || isLabelSeparator(host.charAt(i))) {
+		if (i > labelStart) {
+		    builder.append(toAsciiLabel(host.substring(labelStart, i)));
+		}
+		if (i < host.length()) {
+		    builder.append('.');
+		}
+		labelStart = i + 1;
+	    }
+	}
+	return builder.toString();
+    }
+
+    private static boolean isLabelSeparator(final char c) {
+	// the full stop and the ideographic, fullwidth and halfwidth ideographic
+	// full stops
+	return c == '.' || c == '\u3002' || c == '\uFF0E' || c == '\uFF61';
+    }
+
+    private static String toAsciiLabel(final String label) {
+	if (isAscii(label)) {
+	    return label;
+	}
+	synchronized (ACE_LABELS) {
+	    final String cached = ACE_LABELS.get(label);
+	    if (null != cached) {
+		return cached;
+	    }
+	}
+	String converted;
+	try {
+	    converted = IDN.toASCII(label, IDN.ALLOW_UNASSIGNED);
+	} catch (final IllegalArgumentException e) {
+	    converted = label;
+	}
+	synchronized (ACE_LABELS) {
+	    ACE_LABELS.put(label, converted);
+	}
+	return converted;
     }
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * The {@link HostResolver} interface, resolving host names to addresses. See
+ * {@link JdkHostResolver} for the default implementation and
+ * {@link StaticHostResolver} for an in-memory stand-in.
+ */
+public interface HostResolver {
+    /**
+     * Resolves the given host name, blocking until done.
+     * 
+     * @param host
+     *            the host name without port or user info
+     * @return the addresses, at least one
+     * @throws UnknownHostException
+     *             when the host can not be resolved
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException;
+}
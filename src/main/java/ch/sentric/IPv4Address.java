@@ -83,6 +83,42 @@ public class IPv4Address implements HostName {
 	return result;
     }
 
+    /**
+     * Parses the given range of a char sequence to long, like
+     * {@link #parseIPv4String(String)} but without copying the range.
+     * 
+     * @param parsable
+     *            the chars to parse
+     * @param start
+     *            the start of the address
+     * @param end
+     *            the end of the address, exclusive
+     * @return the long representation or {@link #ILLEGAL_IPV4}
+     */
+    public static long parseIPv4(final CharSequence parsable, final int start, final int end) {
+	long result = 0;
+	int numbers = 0;
+	int value = 0;
+	int digits = 0;
+	for (int i = start; i <= end; i++) {
+	    final char c = i == end ? '.' : parsable.charAt(i);
+	    if (c == '.') {
+		if (digits == 0 || value > 255 || ++numbers > 4) {
+		    return ILLEGAL_IPV4;
+		}
+		result = result * 256 + value;
+		value = 0;
+		digits = 0;
+	    } else if (c >= '0' && c <= '9' && digits < 3) {
+		value = value * 10 + c - '0';
+		digits++;
+	    } else {
+		return ILLEGAL_IPV4;
+	    }
+	}
+	return numbers == 4 ? result : ILLEGAL_IPV4;
+    }
+
     @Override
     public String getOptimizedForProximityOrder() {
 	return getAsString();
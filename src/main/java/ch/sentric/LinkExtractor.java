@@ -0,0 +1,845 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * Extracts the links of a html page in one pass over its characters or bytes,
+ * without building a DOM, e.g. for the link extraction stage of a crawler.
+ * The links are the <i>href</i> of <i>a</i>, of <i>link rel=canonical</i> and
+ * the <i>src</i> of <i>frame</i> and <i>iframe</i>. They are resolved against
+ * the page url, or against the first <i>base href</i> from where it appears,
+ * as specified by RFC 3986 section 5.2, normalized by a {@link UrlParser} and
+ * passed to the {@link Listener} once per normalized key and page.
+ * </p>
+ * <p>
+ * Tags are found by a tokenizer following the states of the html syntax:
+ * comments, doctypes and processing instructions are skipped, as is the text
+ * of <i>script</i>, <i>style</i>, <i>title</i> and <i>textarea</i>. Attribute
+ * values are collected for the tags above only, and character references in
+ * them are decoded. Links other than http and https, fragment only and empty
+ * references, and references that do not normalize are skipped.
+ * </p>
+ * This class is not thread safe.
+ */
+public class LinkExtractor {
+    /**
+     * The kinds of links.
+     */
+    public enum Kind {
+	/** the href of a */
+	ANCHOR,
+	/** the href of link rel=canonical */
+	CANONICAL,
+	/** the src of frame or iframe */
+	FRAME
+    }
+
+    /**
+     * Receives the links of a page.
+     */
+    public interface Listener {
+	/**
+	 * Called once per normalized key of a page, for the first link with the
+	 * key.
+	 * 
+	 * @param kind
+	 *            the kind of the link
+	 * @param url
+	 *            the resolved url, without fragment
+	 * @param key
+	 *            the normalized key
+	 */
+	void link(Kind kind, String url, String key);
+    }
+
+    private static final int MAX_NAME_LENGTH = 16;
+    private static final int MAX_VALUE_LENGTH = 8192;
+    private static final byte[] ASCII_SYNTAX = "<a href='/'>".getBytes(StandardCharsets.US_ASCII);
+
+    // the tokenizer states
+    private static final int DATA = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int END_TAG_OPEN = 2;
+    private static final int TAG_NAME = 3;
+    private static final int BEFORE_ATTRIBUTE = 4;
+    private static final int ATTRIBUTE_NAME = 5;
+    private static final int AFTER_ATTRIBUTE_NAME = 6;
+    private static final int BEFORE_VALUE = 7;
+    private static final int DOUBLE_QUOTED_VALUE = 8;
+    private static final int SINGLE_QUOTED_VALUE = 9;
+    private static final int UNQUOTED_VALUE = 10;
+    private static final int MARKUP = 11;
+    private static final int COMMENT = 12;
+    private static final int BOGUS_COMMENT = 13;
+    private static final int RAW_TEXT = 14;
+
+    // the components of a reference, see components
+    private static final int SCHEME_END = 0;
+    private static final int AUTHORITY_START = 1;
+    private static final int PATH_START = 2;
+    private static final int PATH_END = 3;
+    private static final int QUERY_END = 4;
+
+    private final UrlParser parser;
+    private final StringBuilder tagName = new StringBuilder(MAX_NAME_LENGTH);
+    private final StringBuilder attributeName = new StringBuilder(MAX_NAME_LENGTH);
+    private final StringBuilder value = new StringBuilder(256);
+    private final StringBuilder url = new StringBuilder(256);
+    private final StringBuilder key = new StringBuilder(256);
+    private final Set<String> keys = new HashSet<String>();
+
+    // the state of the current page
+    private Listener listener;
+    private Charset charset;
+    private String base;
+    private boolean baseSeen;
+    private int links;
+    private int state;
+    private boolean endTag;
+    private boolean collect;
+    private int dashes;
+    private String rawText;
+    private int rawTextMatched;
+    private String href;
+    private String src;
+    private String rel;
+
+    /**
+     * Constructor, normalizing with the {@link NormalizationPipeline#standard()}
+     * pipeline.
+     */
+    public LinkExtractor() {
+	this(new UrlParser());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param parser
+     *            the parser normalizing the links
+     */
+    public LinkExtractor(final UrlParser parser) {
+	this.parser = parser;
+    }
+
+    /**
+     * Extracts the links of a page.
+     * 
+     * @param html
+     *            the page, read to its end but not closed
+     * @param pageUrl
+     *            the url of the page
+     * @param listener
+     *            receives the links
+     * @return the number of links passed to the listener
+     * @throws IOException
+     *             when the page can not be read
+     * @throws MalformedURLException
+     *             when the page url is not absolute
+     */
+    public int extract(final Reader html, final String pageUrl, final Listener listener) throws IOException {
+	start(pageUrl, listener, null);
+	final char[] buffer = new char[4096];
+	int read;
+	while ((read = html.read(buffer)) != -1) {
+	    for (int i = 0; i < read; i++) {
+		process(buffer[i]);
+	    }
+	}
+	return end();
+    }
+
+    /**
+     * Extracts the links of a page. The bytes of ASCII compatible charsets,
+     * e.g. UTF-8 or windows-1252, are tokenized as they are and only attribute
+     * values are decoded, others are decoded first.
+     * 
+     * @param html
+     *            the page, from its position to its limit, the position is not
+     *            changed
+     * @param charset
+     *            the charset of the page
+     * @param pageUrl
+     *            the url of the page
+     * @param listener
+     *            receives the links
+     * @return the number of links passed to the listener
+     * @throws MalformedURLException
+     *             when the page url is not absolute
+     */
+    public int extract(final ByteBuffer html, final Charset charset, final String pageUrl, final Listener listener) throws MalformedURLException {
+	if (!Arrays.equals(ASCII_SYNTAX, "<a href='/'>".getBytes(charset))) {
+	    start(pageUrl, listener, null);
+	    final CharBuffer chars = charset.decode(html.duplicate());
+	    while (chars.hasRemaining()) {
+		process(chars.get());
+	    }
+	    return end();
+	}
+	start(pageUrl, listener, charset);
+	for (int i = html.position(); i < html.limit(); i++) {
+	    process((char) (html.get(i) & 0xFF));
+	}
+	return end();
+    }
+
+    private void start(final String pageUrl, final Listener listener, final Charset charset) throws MalformedURLException {
+	final int[] components = new int[5];
+	components(pageUrl, 0, pageUrl.length(), components);
+	if (components[SCHEME_END] == -1) {
+	    throw new MalformedURLException("no protocol: " + pageUrl);
+	}
+	this.listener = listener;
+	this.charset = charset;
+	this.base = pageUrl;
+	this.baseSeen = false;
+	this.links = 0;
+	this.keys.clear();
+	this.state = DATA;
+	this.rawText = null;
+	resetTag();
+    }
+
+    private int end() {
+	this.listener = null;
+	this.keys.clear();
+	return this.links;
+    }
+
+    private void resetTag() {
+	this.tagName.setLength(0);
+	this.attributeName.setLength(0);
+	this.endTag = false;
+	this.collect = false;
+	this.href = null;
+	this.src = null;
+	this.rel = null;
+    }
+
+    /**
+     * Advances the tokenizer by one character.
+     */
+    private void process(final char c) {
+	switch (this.state) {
+	case DATA:
+	    if (c == '<') {
+		this.state = TAG_OPEN;
+	    }
+	    break;
+
+	case TAG_OPEN:
+	    if (isLetter(c)) {
+		resetTag();
+		this.tagName.append(toLowerCase(c));
+		this.state = TAG_NAME;
+	    } else if (c == '/') {
+		this.state = END_TAG_OPEN;
+	    } else if (c == '!') {
+		this.dashes = 0;
+		this.state = MARKUP;
+	    } else if (c == '?') {
+		this.state = BOGUS_COMMENT;
+	    } else if (c != '<') {
+		this.state = DATA;
+	    }
+	    break;
+
+	case END_TAG_OPEN:
+	    if (isLetter(c)) {
+		resetTag();
+		this.endTag = true;
+		this.tagName.append(toLowerCase(c));
+		this.state = TAG_NAME;
+	    } else {
+		this.state = c == '>' ? DATA : BOGUS_COMMENT;
+	    }
+	    break;
+
+	case TAG_NAME:
+	    if (isWhitespace(c) || c == '/') {
+		startAttributes();
+		this.state = BEFORE_ATTRIBUTE;
+	    } else if (c == '>') {
+		startAttributes();
+		endOfTag();
+	    } else if (this.tagName.length() < MAX_NAME_LENGTH) {
+		this.tagName.append(toLowerCase(c));
+	    }
+	    break;
+
+	case BEFORE_ATTRIBUTE:
+	    if (c == '>') {
+		endOfTag();
+	    } else if (!isWhitespace(c) && c != '/') {
+		startAttribute(c);
+	    }
+	    break;
+
+	case ATTRIBUTE_NAME:
+	    if (isWhitespace(c)) {
+		this.state = AFTER_ATTRIBUTE_NAME;
+	    } else if (c == '=') {
+		this.state = BEFORE_VALUE;
+	    } else if (c == '/') {
+		endOfAttribute(false);
+		this.state = BEFORE_ATTRIBUTE;
+	    } else if (c == '>') {
+		endOfAttribute(false);
+		endOfTag();
+	    } else if (this.attributeName.length() < MAX_NAME_LENGTH) {
+		this.attributeName.append(toLowerCase(c));
+	    }
+	    break;
+
+	case AFTER_ATTRIBUTE_NAME:
+	    if (c == '=') {
+		this.state = BEFORE_VALUE;
+	    } else if (c == '/') {
+		endOfAttribute(false);
+		this.state = BEFORE_ATTRIBUTE;
+	    } else if (c == '>') {
+		endOfAttribute(false);
+		endOfTag();
+	    } else if (!isWhitespace(c)) {
+		endOfAttribute(false);
+		startAttribute(c);
+	    }
+	    break;
+
+	case BEFORE_VALUE:
+	    this.value.setLength(0);
+	    if (c == '"') {
+		this.state = DOUBLE_QUOTED_VALUE;
+	    } else if (c == '\'') {
+		this.state = SINGLE_QUOTED_VALUE;
+	    } else if (c == '>') {
+		endOfAttribute(true);
+		endOfTag();
+	    } else if (!isWhitespace(c)) {
+		appendValue(c);
+		this.state = UNQUOTED_VALUE;
+	    }
+	    break;
+
+	case DOUBLE_QUOTED_VALUE:
+	case SINGLE_QUOTED_VALUE:
+	    if (c == (this.state == DOUBLE_QUOTED_VALUE ? '"' : '\'')) {
+		endOfAttribute(true);
+		this.state = BEFORE_ATTRIBUTE;
+	    } else {
+		appendValue(c);
+	    }
+	    break;
+
+	case UNQUOTED_VALUE:
+	    if (isWhitespace(c)) {
+		endOfAttribute(true);
+		this.state = BEFORE_ATTRIBUTE;
+	    } else if (c == '>') {
+		endOfAttribute(true);
+		endOfTag();
+	    } else {
+		appendValue(c);
+	    }
+	    break;
+
+	case MARKUP:
+	    // <!-- starts a comment, anything else up to > is skipped
+	    if (c == '-' && this.dashes < 2) {
+		if (++this.dashes == 2) {
+		    this.dashes = 0;
+		    this.state = COMMENT;
+		}
+	    } else {
+		this.state = c == '>' ? DATA : BOGUS_COMMENT;
+	    }
+	    break;
+
+	case COMMENT:
+	    if (c == '-') {
+		this.dashes++;
+	    } else if (c == '>' && this.dashes >= 2) {
+		this.state = DATA;
+	    } else {
+		this.dashes = 0;
+	    }
+	    break;
+
+	case BOGUS_COMMENT:
+	    if (c == '>') {
+		this.state = DATA;
+	    }
+	    break;
+
+	case RAW_TEXT:
+	    rawText(c);
+	    break;
+
+	default:
+	    break;
+	}
+    }
+
+    /**
+     * Skips the text of an element up to its end tag, e.g. &lt;/script&gt;.
+     */
+    private void rawText(final char c) {
+	final int matched = this.rawTextMatched;
+	if (matched == this.rawText.length() + 2) {
+	    if (isWhitespace(c) || c == '/' || c == '>') {
+		resetTag();
+		this.endTag = true;
+		this.rawText = null;
+		this.state = c == '>' ? DATA : BEFORE_ATTRIBUTE;
+		return;
+	    }
+	} else if (matched == 0 && c == '<' || matched == 1 && c == '/' || matched >= 2 && toLowerCase(c) == this.rawText.charAt(matched - 2)) {
+	    this.rawTextMatched++;
+	    return;
+	}
+	this.rawTextMatched = c == '<' ? 1 : 0;
+    }
+
+    private void startAttributes() {
+	this.collect = !this.endTag && (equals(this.tagName, "a") || equals(this.tagName, "link") || equals(this.tagName, "base")
+		|| equals(this.tagName, "frame") || equals(this.tagName, "iframe"));
+    }
+
+    private void startAttribute(final char c) {
+	this.attributeName.setLength(0);
+	this.attributeName.append(toLowerCase(c));
+	this.value.setLength(0);
+	this.state = ATTRIBUTE_NAME;
+    }
+
+    private void appendValue(final char c) {
+	if (this.collect && this.value.length() <= MAX_VALUE_LENGTH) {
+	    this.value.append(c);
+	}
+    }
+
+    /**
+     * Keeps the first href, src and rel of the tags of interest.
+     */
+    private void endOfAttribute(final boolean hasValue) {
+	if (this.collect) {
+	    if (!hasValue) {
+		this.value.setLength(0);
+	    }
+	    if (equals(this.attributeName, "href")) {
+		if (null == this.href) {
+		    this.href = attributeValue();
+		}
+	    } else if (equals(this.attributeName, "src")) {
+		if (null == this.src) {
+		    this.src = attributeValue();
+		}
+	    } else if (equals(this.attributeName, "rel")) {
+		if (null == this.rel) {
+		    this.rel = attributeValue();
+		}
+	    }
+	}
+	this.attributeName.setLength(0);
+    }
+
+    /**
+     * Returns the decoded value, or an empty one when it was too long.
+     */
+    private String attributeValue() {
+	if (this.value.length() > MAX_VALUE_LENGTH) {
+	    return "";
+	}
+	String decoded = this.value.toString();
+	if (null != this.charset) {
+	    for (int i = 0; i < decoded.length(); i++) {
+		if (decoded.charAt(i) >= 0x80) {
+		    decoded = new String(decoded.getBytes(StandardCharsets.ISO_8859_1), this.charset);
+		    break;
+		}
+	    }
+	}
+	return decoded.indexOf('&') == -1 ? decoded : decodeCharacterReferences(decoded);
+    }
+
+    private void endOfTag() {
+	if (this.collect) {
+	    if (equals(this.tagName, "a")) {
+		link(Kind.ANCHOR, this.href);
+	    } else if (equals(this.tagName, "link")) {
+		if (null != this.rel && hasToken(this.rel, "canonical")) {
+		    link(Kind.CANONICAL, this.href);
+		}
+	    } else if (equals(this.tagName, "base")) {
+		if (null != this.href && !this.baseSeen) {
+		    // the first base with href applies, when it resolves
+		    this.baseSeen = true;
+		    this.url.setLength(0);
+		    if (resolve(this.base, this.href, this.url) && isHttp(this.url)) {
+			this.base = this.url.toString();
+		    }
+		}
+	    } else {
+		link(Kind.FRAME, this.src);
+	    }
+	}
+	this.state = DATA;
+	if (!this.endTag
+		&& (equals(this.tagName, "script") || equals(this.tagName, "style") || equals(this.tagName, "title") || equals(this.tagName, "textarea"))) {
+	    this.rawText = this.tagName.toString();
+	    this.rawTextMatched = 0;
+	    this.state = RAW_TEXT;
+	}
+    }
+
+    private void link(final Kind kind, final String reference) {
+	if (null == reference) {
+	    return;
+	}
+	this.url.setLength(0);
+	if (!resolve(this.base, reference, this.url) || !isHttp(this.url)) {
+	    return;
+	}
+	this.key.setLength(0);
+	try {
+	    this.parser.reset(this.url).normalizeInto(this.key);
+	} catch (final MalformedURLException e) {
+	    return;
+	}
+	final String normalized = this.key.toString();
+	if (this.keys.add(normalized)) {
+	    this.links++;
+	    this.listener.link(kind, this.url.toString(), normalized);
+	}
+    }
+
+    /**
+     * Resolves a reference against a base url as specified by RFC 3986 section
+     * 5.2, e.g. ../b?x against http://example.com/a/c to
+     * http://example.com/b?x. Like browsers, surrounding white space and tabs
+     * and line breaks within the reference are ignored.
+     * 
+     * @param base
+     *            the absolute base url
+     * @param reference
+     *            the reference, e.g. a href
+     * @return the resolved url without fragment, or null when the base is not
+     *         absolute or the reference is empty or a fragment only
+     */
+    public static String resolve(final String base, final String reference) {
+	final StringBuilder target = new StringBuilder(base.length() + reference.length());
+	return resolve(base, reference, target) ? target.toString() : null;
+    }
+
+    /**
+     * Appends the resolved reference without fragment to the given builder.
+     * 
+     * @return false when nothing was appended, i.e. the base is not absolute or
+     *         the reference is empty or a fragment only
+     */
+    static boolean resolve(final String base, final String reference, final StringBuilder target) {
+	final String ref = clean(reference);
+	if (ref.isEmpty() || ref.charAt(0) == '#') {
+	    return false;
+	}
+	final int[] b = new int[5];
+	components(base, 0, base.length(), b);
+	if (b[SCHEME_END] == -1) {
+	    return false;
+	}
+	final int[] r = new int[5];
+	components(ref, 0, ref.length(), r);
+
+	if (r[SCHEME_END] != -1) {
+	    target.append(ref, 0, r[PATH_START]);
+	    appendPath(target, ref, r[PATH_START], r[PATH_END]);
+	    appendQuery(target, ref, r);
+	    return true;
+	}
+	target.append(base, 0, b[SCHEME_END] + 1);
+	if (r[AUTHORITY_START] != -1) {
+	    target.append(ref, 0, r[PATH_START]);
+	    appendPath(target, ref, r[PATH_START], r[PATH_END]);
+	    appendQuery(target, ref, r);
+	    return true;
+	}
+	target.append(base, b[SCHEME_END] + 1, b[PATH_START]);
+	if (r[PATH_START] == r[PATH_END]) {
+	    // a query only
+	    target.append(base, b[PATH_START], b[PATH_END]);
+	    if (r[PATH_END] < r[QUERY_END]) {
+		appendQuery(target, ref, r);
+	    } else {
+		appendQuery(target, base, b);
+	    }
+	    return true;
+	}
+	final int pathStart = target.length();
+	if (ref.charAt(0) != '/') {
+	    // merge with the directory of the base path
+	    if (b[AUTHORITY_START] != -1 && b[PATH_START] == b[PATH_END]) {
+		target.append('/');
+	    } else {
+		target.append(base, b[PATH_START], Math.max(b[PATH_START], base.lastIndexOf('/', b[PATH_END] - 1) + 1));
+	    }
+	}
+	target.append(ref, r[PATH_START], r[PATH_END]);
+	removeDotSegments(target, pathStart);
+	appendQuery(target, ref, r);
+	return true;
+    }
+
+    private static void appendPath(final StringBuilder target, final String s, final int start, final int end) {
+	final int pathStart = target.length();
+	target.append(s, start, end);
+	removeDotSegments(target, pathStart);
+    }
+
+    private static void appendQuery(final StringBuilder target, final String s, final int[] components) {
+	target.append(s, components[PATH_END], components[QUERY_END]);
+    }
+
+    /**
+     * Splits a reference into its components, like the regular expression of
+     * RFC 3986 appendix B. The query, when present, starts at the path end with
+     * '?'.
+     */
+    private static void components(final String s, final int start, final int end, final int[] components) {
+	int i = start;
+	components[SCHEME_END] = -1;
+	for (int j = start; j < end; j++) {
+	    final char c = s.charAt(j);
+	    if (c == ':') {
+		if (j > start) {
+		    components[SCHEME_END] = j;
+		    i = j + 1;
+		}
+		break;
+	    }
+	    if (!(isLetter(c) || j > start && (c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.'))) {
+		break;
+	    }
+	}
+	components[AUTHORITY_START] = -1;
+	if (i + 1 < end && s.charAt(i) == '/' && s.charAt(i + 1) == '/') {
+	    components[AUTHORITY_START] = i + 2;
+	    i += 2;
+	    while (i < end && s.charAt(i) != '/' && s.charAt(i) != '?' && s.charAt(i) != '#') {
+		i++;
+	    }
+	}
+	components[PATH_START] = i;
+	while (i < end && s.charAt(i) != '?' && s.charAt(i) != '#') {
+	    i++;
+	}
+	components[PATH_END] = i;
+	while (i < end && s.charAt(i) != '#') {
+	    i++;
+	}
+	components[QUERY_END] = i;
+    }
+
+    /**
+     * Removes the . and .. segments of the path from the given start to the
+     * end of the builder, in place, see RFC 3986 section 5.2.4.
+     */
+    static void removeDotSegments(final StringBuilder s, final int start) {
+	final int end = s.length();
+	int read = start;
+	int write = start;
+	while (read < end) {
+	    if (startsWith(s, read, end, "../")) {
+		read += 3;
+	    } else if (startsWith(s, read, end, "./") || startsWith(s, read, end, "/./")) {
+		read += 2;
+	    } else if (read + 2 == end && startsWith(s, read, end, "/.")) {
+		s.setCharAt(write++, '/');
+		read = end;
+	    } else if (startsWith(s, read, end, "/../")) {
+		write = lastSegment(s, start, write);
+		read += 3;
+	    } else if (read + 3 == end && startsWith(s, read, end, "/..")) {
+		write = lastSegment(s, start, write);
+		s.setCharAt(write++, '/');
+		read = end;
+	    } else if (read + 1 == end && s.charAt(read) == '.' || read + 2 == end && startsWith(s, read, end, "..")) {
+		read = end;
+	    } else {
+		// move the first segment with its leading '/'
+		do {
+		    s.setCharAt(write++, s.charAt(read++));
+		} while (read < end && s.charAt(read) != '/');
+	    }
+	}
+	s.setLength(write);
+    }
+
+    private static int lastSegment(final StringBuilder s, final int start, final int end) {
+	int i = end - 1;
+	while (i >= start && s.charAt(i) != '/') {
+	    i--;
+	}
+	return Math.max(start, i);
+    }
+
+    private static boolean startsWith(final StringBuilder s, final int start, final int end, final String prefix) {
+	if (end - start < prefix.length()) {
+	    return false;
+	}
+	for (int i = 0; i < prefix.length(); i++) {
+	    if (s.charAt(start + i) != prefix.charAt(i)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Strips surrounding white space and removes tabs and line breaks.
+     */
+    private static String clean(final String reference) {
+	int start = 0;
+	int end = reference.length();
+	while (start < end && reference.charAt(start) <= ' ') {
+	    start++;
+	}
+	while (end > start && reference.charAt(end - 1) <= ' ') {
+	    end--;
+	}
+	StringBuilder cleaned = null;
+	for (int i = start; i < end; i++) {
+	    final char c = reference.charAt(i);
+	    if (c == '\t' || c == '\n' || c == '\r') {
+		if (null == cleaned) {
+		    cleaned = new StringBuilder(end - start).append(reference, start, i);
+		}
+	    } else if (null != cleaned) {
+		cleaned.append(c);
+	    }
+	}
+	return null != cleaned ? cleaned.toString() : reference.substring(start, end);
+    }
+
+    /**
+     * Decodes the character references of an attribute value, e.g. &amp;amp;
+     * or &amp;#38;. Unknown references are kept.
+     */
+    static String decodeCharacterReferences(final String s) {
+	final StringBuilder decoded = new StringBuilder(s.length());
+	int i = 0;
+	while (i < s.length()) {
+	    final char c = s.charAt(i);
+	    final int semicolon = c == '&' ? s.indexOf(';', i + 1) : -1;
+	    if (semicolon == -1 || semicolon - i > 10) {
+		decoded.append(c);
+		i++;
+		continue;
+	    }
+	    final String name = s.substring(i + 1, semicolon);
+	    int codePoint = -1;
+	    if (name.startsWith("#x") || name.startsWith("#X")) {
+		codePoint = parseCodePoint(name, 2, 16);
+	    } else if (name.startsWith("#")) {
+		codePoint = parseCodePoint(name, 1, 10);
+	    } else if (name.equals("amp")) {
+		codePoint = '&';
+	    } else if (name.equals("lt")) {
+		codePoint = '<';
+	    } else if (name.equals("gt")) {
+		codePoint = '>';
+	    } else if (name.equals("quot")) {
+		codePoint = '"';
+	    } else if (name.equals("apos")) {
+		codePoint = '\'';
+	    } else if (name.equals("nbsp")) {
+		codePoint = 0xA0;
+	    }
+	    if (codePoint == -1) {
+		decoded.append(c);
+		i++;
+	    } else {
+		decoded.appendCodePoint(codePoint);
+		i = semicolon + 1;
+	    }
+	}
+	return decoded.toString();
+    }
+
+    private static int parseCodePoint(final String s, final int start, final int radix) {
+	if (start == s.length()) {
+	    return -1;
+	}
+	int codePoint = 0;
+	for (int i = start; i < s.length(); i++) {
+	    final int digit = Character.digit(s.charAt(i), radix);
+	    if (digit == -1 || s.charAt(i) >= 0x80) {
+		return -1;
+	    }
+	    codePoint = codePoint * radix + digit;
+	}
+	return codePoint == 0 || codePoint > Character.MAX_CODE_POINT ? 0xFFFD : codePoint;
+    }
+
+    private static boolean hasToken(final String s, final String token) {
+	int i = 0;
+	while (i < s.length()) {
+	    while (i < s.length() && isWhitespace(s.charAt(i))) {
+		i++;
+	    }
+	    final int start = i;
+	    while (i < s.length() && !isWhitespace(s.charAt(i))) {
+		i++;
+	    }
+	    if (i - start == token.length() && s.regionMatches(true, start, token, 0, token.length())) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private static boolean isHttp(final StringBuilder url) {
+	final int colon = url.indexOf(":");
+	return colon == 4 && url.substring(0, 4).equalsIgnoreCase("http") || colon == 5 && url.substring(0, 5).equalsIgnoreCase("https");
+    }
+
+    private static boolean equals(final StringBuilder s, final String name) {
+	return name.contentEquals(s);
+    }
+
+    private static boolean isLetter(final char c) {
+	return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWhitespace(final char c) {
+	return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static char toLowerCase(final char c) {
+	return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Optional metrics of the normalization: how often each {@link Rule} fires,
+ * parse failures by cause, and sampled timings of each {@link Stage}. Metrics
+ * are disabled by default; while disabled each instrumentation point costs a
+ * single static field read.
+ * </p>
+ * While enabled, counters are striped {@link LongAdder}s and only one out of
+ * {@link #getSampleRate()} stage invocations is timed, so threads normalizing
+ * concurrently don't contend. The metrics can be exposed via JMX with
+ * {@link #registerMBean()}.
+ */
+public final class NormalizationMetrics implements NormalizationMetricsMXBean {
+    /**
+     * The default sample rate of stage timings.
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 64;
+
+    private static final String OBJECT_NAME = "ch.sentric:type=NormalizationMetrics";
+    private static final int MAX_FAILURE_CAUSES = 64;
+    private static volatile NormalizationMetrics instance;
+
+    /**
+     * The timed stages of the normalization.
+     */
+    public enum Stage {
+	/** parsing the url into its components */
+	PARSE,
+	/** building the host name */
+	HOST,
+	/** re-encoding the path */
+	PATH_REENCODE,
+	/** building the query */
+	QUERY_BUILD,
+	/** sorting the query */
+	QUERY_SORT,
+	/** looking up the public suffix of a host */
+	SUFFIX_LOOKUP
+    }
+
+    /**
+     * The counted normalization rules.
+     */
+    public enum Rule {
+	/** a leading www label was stripped */
+	WWW_STRIPPED,
+	/** a session id was removed from path or query */
+	SESSION_ID_REMOVED,
+	/** a tracking parameter was filtered from the query */
+	TRACKING_PARAMETER_FILTERED
+    }
+
+    private final int sampleRate;
+    private final LongAdder urls = new LongAdder();
+    private final LongAdder[] rules = newAdders(Rule.values().length);
+    private final LongAdder[] samples = newAdders(Stage.values().length);
+    private final LongAdder[] nanos = newAdders(Stage.values().length);
+    private final ConcurrentHashMap<String, LongAdder> failures = new ConcurrentHashMap<String, LongAdder>();
+
+    private NormalizationMetrics(final int sampleRate) {
+	this.sampleRate = sampleRate;
+    }
+
+    private static LongAdder[] newAdders(final int count) {
+	final LongAdder[] adders = new LongAdder[count];
+	for (int i = 0; i < count; i++) {
+	    adders[i] = new LongAdder();
+	}
+	return adders;
+    }
+
+    /**
+     * Enables the metrics with the default sample rate, keeping already
+     * enabled metrics.
+     * 
+     * @return the enabled metrics
+     */
+    public static NormalizationMetrics enable() {
+	return enable(DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Enables the metrics, keeping already enabled metrics.
+     * 
+     * @param sampleRate
+     *            one out of sampleRate stage invocations is timed
+     * @return the enabled metrics
+     */
+    public static synchronized NormalizationMetrics enable(final int sampleRate) {
+	if (sampleRate < 1) {
+	    throw new IllegalArgumentException("sample rate must be positive: " + sampleRate);
+	}
+	if (null == instance) {
+	    instance = new NormalizationMetrics(sampleRate);
+	}
+	return instance;
+    }
+
+    /**
+     * Disables the metrics and discards the collected values.
+     */
+    public static synchronized void disable() {
+	instance = null;
+    }
+
+    /**
+     * Returns the enabled metrics.
+     * 
+     * @return the metrics or null when disabled
+     */
+    public static NormalizationMetrics get() {
+	return instance;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     * 
+     * @throws JMException
+     *             when the registration fails
+     */
+    public void registerMBean() throws JMException {
+	ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     * 
+     * @throws JMException
+     *             when the metrics are not registered
+     */
+    public void unregisterMBean() throws JMException {
+	ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    }
+
+    static void countUrl() {
+	final NormalizationMetrics metrics = instance;
+	if (null != metrics) {
+	    metrics.urls.increment();
+	}
+    }
+
+    static void count(final Rule rule) {
+	final NormalizationMetrics metrics = instance;
+	if (null != metrics) {
+	    metrics.rules[rule.ordinal()].increment();
+	}
+    }
+
+    static void countFailure(final Exception e) {
+	final NormalizationMetrics metrics = instance;
+	if (null != metrics) {
+	    metrics.failure(e);
+	}
+    }
+
+    /**
+     * Starts a sampled timer.
+     * 
+     * @return the start time or 0 when this invocation is not sampled
+     */
+    static long start() {
+	final NormalizationMetrics metrics = instance;
+	if (null == metrics || ThreadLocalRandom.current().nextInt(metrics.sampleRate) != 0) {
+	    return 0;
+	}
+	return System.nanoTime();
+    }
+
+    /**
+     * Stops a timer started with {@link #start()}.
+     */
+    static void stop(final Stage stage, final long start) {
+	if (0 != start) {
+	    final NormalizationMetrics metrics = instance;
+	    if (null != metrics) {
+		metrics.samples[stage.ordinal()].increment();
+		metrics.nanos[stage.ordinal()].add(System.nanoTime() - start);
+	    }
+	}
+    }
+
+    private void failure(final Exception e) {
+	String cause = e.getMessage();
+	if (null == cause) {
+	    cause = e.getClass().getSimpleName();
+	} else if (cause.indexOf(':') != -1) {
+	    // strip the offending input, e.g. "no protocol: foo"
+	    cause = cause.substring(0, cause.indexOf(':')).trim();
+	}
+	LongAdder adder = this.failures.get(cause);
+	if (null == adder) {
+	    if (this.failures.size() >= MAX_FAILURE_CAUSES) {
+		cause = "other";
+	    }
+	    final LongAdder created = new LongAdder();
+	    adder = this.failures.putIfAbsent(cause, created);
+	    if (null == adder) {
+		adder = created;
+	    }
+	}
+	adder.increment();
+    }
+
+    /**
+     * Returns how often the given rule fired.
+     * 
+     * @param rule
+     *            the rule
+     * @return the count
+     */
+    public long getCount(final Rule rule) {
+	return this.rules[rule.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of timed invocations of the given stage.
+     * 
+     * @param stage
+     *            the stage
+     * @return the number of samples
+     */
+    public long getSamples(final Stage stage) {
+	return this.samples[stage.ordinal()].sum();
+    }
+
+    /**
+     * Returns the mean duration of the given stage in nanoseconds.
+     * 
+     * @param stage
+     *            the stage
+     * @return the mean duration or 0 when not sampled yet
+     */
+    public double getMeanNanos(final Stage stage) {
+	final long count = getSamples(stage);
+	return count == 0 ? 0 : (double) this.nanos[stage.ordinal()].sum() / count;
+    }
+
+    @Override
+    public long getUrlsParsed() {
+	return this.urls.sum();
+    }
+
+    @Override
+    public int getSampleRate() {
+	return this.sampleRate;
+    }
+
+    @Override
+    public Map<String, Long> getRuleCounts() {
+	final Map<String, Long> result = new LinkedHashMap<String, Long>();
+	for (final Rule rule : Rule.values()) {
+	    result.put(rule.name(), getCount(rule));
+	}
+	return result;
+    }
+
+    @Override
+    public Map<String, Long> getParseFailures() {
+	final Map<String, Long> result = new LinkedHashMap<String, Long>();
+	for (final Map.Entry<String, LongAdder> entry : this.failures.entrySet()) {
+	    result.put(entry.getKey(), entry.getValue().sum());
+	}
+	return result;
+    }
+
+    @Override
+    public Map<String, Long> getStageSamples() {
+	final Map<String, Long> result = new LinkedHashMap<String, Long>();
+	for (final Stage stage : Stage.values()) {
+	    result.put(stage.name(), getSamples(stage));
+	}
+	return result;
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanNanos() {
+	final Map<String, Double> result = new LinkedHashMap<String, Double>();
+	for (final Stage stage : Stage.values()) {
+	    result.put(stage.name(), getMeanNanos(stage));
+	}
+	return result;
+    }
+
+    @Override
+    public void reset() {
+	this.urls.reset();
+	for (int i = 0; i < this.rules.length; i++) {
+	    this.rules[i].reset();
+	}
+	for (int i = 0; i < this.samples.length; i++) {
+	    this.samples[i].reset();
+	    this.nanos[i].reset();
+	}
+	this.failures.clear();
+    }
+}
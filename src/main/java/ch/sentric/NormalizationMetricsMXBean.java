@@ -0,0 +1,70 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link NormalizationMetrics}.
+ */
+public interface NormalizationMetricsMXBean {
+    /**
+     * Returns the number of urls parsed while the metrics were enabled.
+     * 
+     * @return number of urls
+     */
+    public long getUrlsParsed();
+
+    /**
+     * Returns one out of how many stage invocations is timed.
+     * 
+     * @return the sample rate
+     */
+    public int getSampleRate();
+
+    /**
+     * Returns how often each normalization rule fired.
+     * 
+     * @return count by rule name
+     */
+    public Map<String, Long> getRuleCounts();
+
+    /**
+     * Returns the number of parse failures by cause.
+     * 
+     * @return count by cause
+     */
+    public Map<String, Long> getParseFailures();
+
+    /**
+     * Returns the number of timed invocations per stage.
+     * 
+     * @return samples by stage name
+     */
+    public Map<String, Long> getStageSamples();
+
+    /**
+     * Returns the mean duration per stage in nanoseconds.
+     * 
+     * @return mean nanoseconds by stage name
+     */
+    public Map<String, Double> getStageMeanNanos();
+
+    /**
+     * Resets all counters and timers.
+     */
+    public void reset();
+}
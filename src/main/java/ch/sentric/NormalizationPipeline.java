@@ -0,0 +1,132 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.sentric.NormalizationMetrics.Stage;
+
+/**
+ * <p>
+ * Normalizes urls by applying a fixed sequence of {@link NormalizationStep}s to
+ * a {@link UrlBuffer}, assembled once and shared by all threads. The standard
+ * pipeline produces the same normalized urls as {@link URL#getNormalizedUrl()}
+ * without creating the intermediate components and strings. Custom rules are
+ * added as steps, e.g.
+ * </p>
+ * 
+ * <pre>
+ * final List&lt;NormalizationStep&gt; steps = StandardStep.standardSteps();
+ * steps.add(steps.indexOf(StandardStep.REENCODE_PATH), StandardStep.REMOVE_DOT_SEGMENTS);
+ * final NormalizationPipeline pipeline = new NormalizationPipeline(steps);
+ * </pre>
+ */
+public final class NormalizationPipeline {
+    private static final NormalizationPipeline STANDARD = new NormalizationPipeline(StandardStep.standardSteps());
+
+    private final NormalizationStep[] steps;
+
+    /**
+     * Constructor.
+     * 
+     * @param steps
+     *            the steps, in order
+     */
+    public NormalizationPipeline(final List<? extends NormalizationStep> steps) {
+	this.steps = steps.toArray(new NormalizationStep[steps.size()]);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param steps
+     *            the steps, in order
+     */
+    public NormalizationPipeline(final NormalizationStep... steps) {
+	this(Arrays.asList(steps));
+    }
+
+    /**
+     * Returns the pipeline of the {@link StandardStep#standardSteps()}.
+     * 
+     * @return the standard pipeline
+     */
+    public static NormalizationPipeline standard() {
+	return STANDARD;
+    }
+
+    /**
+     * Normalizes a url.
+     * 
+     * @param url
+     *            the raw url
+     * @return the normalized url
+     * @throws MalformedURLException
+     *             when the url can not be parsed or normalized
+     */
+    public String normalize(final String url) throws MalformedURLException {
+	final UrlBuffer buffer = new UrlBuffer();
+	normalize(url, buffer);
+	return buffer.toString();
+    }
+
+    /**
+     * Normalizes a url into the given buffer, e.g. to reuse the buffer.
+     * 
+     * @param url
+     *            the raw url
+     * @param buffer
+     *            the buffer, reset to the components of the url
+     * @throws MalformedURLException
+     *             when the url can not be parsed or normalized
+     */
+    public void normalize(final String url, final UrlBuffer buffer) throws MalformedURLException {
+	NormalizationMetrics.countUrl();
+	final long start = NormalizationMetrics.start();
+	final java.net.URL parsed;
+	try {
+	    parsed = new java.net.URL(url);
+	} catch (final MalformedURLException e) {
+	    NormalizationMetrics.countFailure(e);
+	    throw e;
+	}
+	NormalizationMetrics.stop(Stage.PARSE, start);
+	buffer.reset(parsed.getProtocol(), parsed.getHost(), parsed.getPort(), parsed.getPath(), parsed.getQuery());
+	apply(buffer);
+    }
+
+    /**
+     * Applies the steps to a loaded buffer.
+     * 
+     * @param buffer
+     *            the buffer
+     * @throws MalformedURLException
+     *             when a step rejects the url
+     */
+    public void apply(final UrlBuffer buffer) throws MalformedURLException {
+	try {
+	    for (final NormalizationStep step : this.steps) {
+		step.apply(buffer);
+	    }
+	} catch (final IllegalArgumentException e) {
+	    final MalformedURLException malformed = new MalformedURLException("illegal url: " + e.getMessage());
+	    NormalizationMetrics.countFailure(malformed);
+	    throw malformed;
+	}
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+/**
+ * A step of a {@link NormalizationPipeline}, editing a url in place. See
+ * {@link StandardStep} for the built in steps. Steps are shared by all urls a
+ * pipeline normalizes and must be thread safe.
+ */
+public interface NormalizationStep {
+    /**
+     * Applies this step.
+     * 
+     * @param url
+     *            the url to edit
+     * @throws IllegalArgumentException
+     *             when the url can not be normalized
+     */
+    void apply(UrlBuffer url);
+}
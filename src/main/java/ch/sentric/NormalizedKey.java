@@ -0,0 +1,437 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.util.Iterator;
+
+/**
+ * <p>
+ * Checks and re-normalizes stored keys as returned by
+ * {@link URL#getNormalizedUrl()}, e.g. <i>com.example/bar.html?a=1&b=2</i>.
+ * </p>
+ * {@link #isNormalized(CharSequence)} checks in one scan whether a key is in
+ * canonical form: a reversed lowercase host without a trailing www label or an
+ * ip address, a re-encoded path without a trailing '/' or session id and a
+ * sorted query of parameters with values, session ids and tracking parameters
+ * removed. {@link #normalize(String)} returns such keys untouched and parses
+ * only the others as url. The check may reject unusual keys that are canonical
+ * nevertheless, they are normalized to themselves.
+ * <p>
+ * {@link #denormalize(String, String)} rebuilds a fetchable url from a key, so
+ * only the keys need to be stored. The batch variants stream keys to urls
+ * reusing one buffer.
+ * </p>
+ */
+public final class NormalizedKey {
+    private static final String JSESSIONID = ";jsessionid";
+    private static final String JSESSIONID_UPPER = ";JSESSIONID";
+    // all but lowercase letters, digits, '-', '_' and '.'
+    private static final CharClass NON_HOST_CHARS = new CharClass("!\"#$%&'()*+,/:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\\]^`{|}~", 0x21, 0x7F, true);
+    private static final CharClass NON_DIGIT_HOST_CHARS = new CharClass("abcdefghijklmnopqrstuvwxyz-_", 0, 0, false);
+    private static final CharClass PATH_WORK = new CharClass("%?# ", 0x20, 0x7F, true);
+    private static PercentCodec percentCodec = new PercentCodec();
+
+    private NormalizedKey() {
+    }
+
+    /**
+     * Normalizes the given key, returning it untouched when it is in canonical
+     * form already.
+     * 
+     * @param key
+     *            the key, e.g. read from a store
+     * @return the normalized key
+     * @throws MalformedURLException
+     *             when the key can't be parsed as url
+     */
+    public static String normalize(final String key) throws MalformedURLException {
+	return isNormalized(key) ? key : renormalize(key);
+    }
+
+    /**
+     * Normalizes the given key as url, taking its host as reversed.
+     */
+    static String renormalize(final String key) throws MalformedURLException {
+	return new URL(denormalize(key, "http")).getNormalizedUrl();
+    }
+
+    /**
+     * Rebuilds a url from the given key, e.g. <i>com.example/a?b=1</i> becomes
+     * <i>http://example.com/a?b=1</i>. Ip addresses are kept as is.
+     * 
+     * @param key
+     *            the key
+     * @param defaultScheme
+     *            the scheme of the url, e.g. http or https
+     * @return the url
+     */
+    public static String denormalize(final String key, final String defaultScheme) {
+	return denormalize(key, defaultScheme, false, new StringBuilder(defaultScheme.length() + key.length() + 4)).toString();
+    }
+
+    /**
+     * Appends the url rebuilt from the given key. As the www label of the host
+     * has been stripped from the key, it can be prefixed again to hosts that
+     * are registered domains, see {@link UrlUtil#siteToTopLevel(String)}.
+     * 
+     * @param key
+     *            the key
+     * @param defaultScheme
+     *            the scheme of the url, e.g. http or https
+     * @param www
+     *            whether to prefix www to registered domains
+     * @param url
+     *            the builder to append the url to
+     * @return the given builder
+     */
+    public static StringBuilder denormalize(final CharSequence key, final String defaultScheme, final boolean www, final StringBuilder url) {
+	final int hostEnd = hostEnd(key, key.length());
+	return appendUrl(key, hostEnd, key.length(), defaultScheme, www && isDomain(key.subSequence(0, hostEnd).toString()), url);
+    }
+
+    /**
+     * Rebuilds the urls from the keys read line by line, writing a url per
+     * line. Columns following the key, separated by tabs, are kept.
+     * 
+     * @param keys
+     *            the keys, one per line
+     * @param urls
+     *            the writer of the urls
+     * @param defaultScheme
+     *            the scheme of the urls, e.g. http or https
+     * @param www
+     *            whether to prefix www to registered domains
+     * @return the number of urls written
+     * @throws IOException
+     *             when reading or writing fails
+     */
+    public static long denormalize(final BufferedReader keys, final Writer urls, final String defaultScheme, final boolean www) throws IOException {
+	final Denormalizer denormalizer = new Denormalizer(defaultScheme, www);
+	long count = 0;
+	String line;
+	while ((line = keys.readLine()) != null) {
+	    final int tab = line.indexOf('\t');
+	    denormalizer.write(line, tab == -1 ? line.length() : tab, urls);
+	    count++;
+	}
+	return count;
+    }
+
+    /**
+     * Rebuilds the urls from the given keys, e.g. of a {@link FrontCodedReader},
+     * writing a url per line.
+     * 
+     * @param keys
+     *            the keys
+     * @param urls
+     *            the writer of the urls
+     * @param defaultScheme
+     *            the scheme of the urls, e.g. http or https
+     * @param www
+     *            whether to prefix www to registered domains
+     * @return the number of urls written
+     * @throws IOException
+     *             when writing fails
+     */
+    public static long denormalize(final Iterator<String> keys, final Writer urls, final String defaultScheme, final boolean www) throws IOException {
+	final Denormalizer denormalizer = new Denormalizer(defaultScheme, www);
+	long count = 0;
+	while (keys.hasNext()) {
+	    final String key = keys.next();
+	    denormalizer.write(key, key.length(), urls);
+	    count++;
+	}
+	return count;
+    }
+
+    private static StringBuilder appendUrl(final CharSequence key, final int hostEnd, final int end, final String scheme, final boolean www, final StringBuilder url) {
+	url.append(scheme).append("://");
+	if (www) {
+	    url.append("www.");
+	}
+	if (isIPv4(key, hostEnd)) {
+	    url.append(key, 0, hostEnd);
+	} else {
+	    // append the labels from the last one, empty labels are dropped
+	    final int hostStart = url.length();
+	    int labelEnd = hostEnd;
+	    for (int i = hostEnd - 1; i >= -1; i--) {
+		if (i == -1 || key.charAt(i) == '.') {
+		    if (labelEnd > i + 1) {
+			if (url.length() > hostStart) {
+			    url.append('.');
+			}
+			url.append(key, i + 1, labelEnd);
+		    }
+		    labelEnd = i;
+		}
+	    }
+	}
+	if (hostEnd == end || key.charAt(hostEnd) == '?') {
+	    url.append('/');
+	}
+	return url.append(key, hostEnd, end);
+    }
+
+    /**
+     * Checks whether the host is an ip address, i.e. four numbers up to 255.
+     */
+    private static boolean isIPv4(final CharSequence key, final int end) {
+	return IPv4Address.ILLEGAL_IPV4 != IPv4Address.parseIPv4(key, 0, end);
+    }
+
+    /**
+     * Checks whether the given reversed host is a registered domain, where the
+     * www label may have been stripped.
+     */
+    private static boolean isDomain(final String host) {
+	return host.indexOf('.') != -1 && !isIPv4(host, host.length()) && UrlUtil.siteToTopLevel(host).equals(host);
+    }
+
+    /**
+     * Rebuilds urls into one buffer, remembering whether the last host is a
+     * registered domain as sorted keys share their hosts.
+     */
+    private static final class Denormalizer {
+	private final String scheme;
+	private final boolean www;
+	private final StringBuilder url = new StringBuilder(256);
+	private String host;
+	private boolean domain;
+
+	Denormalizer(final String scheme, final boolean www) {
+	    this.scheme = scheme;
+	    this.www = www;
+	}
+
+	void write(final String line, final int keyEnd, final Writer urls) throws IOException {
+	    final int hostEnd = hostEnd(line, keyEnd);
+	    if (this.www && (null == this.host || hostEnd != this.host.length() || !line.startsWith(this.host))) {
+		this.host = line.substring(0, hostEnd);
+		this.domain = isDomain(this.host);
+	    }
+	    this.url.setLength(0);
+	    appendUrl(line, hostEnd, keyEnd, this.scheme, this.www && this.domain, this.url);
+	    this.url.append(line, keyEnd, line.length()).append('\n');
+	    urls.append(this.url);
+	}
+    }
+
+    /**
+     * Checks whether the given key is in canonical form, i.e. normalizing it
+     * again returns it unchanged.
+     * 
+     * @param key
+     *            the key
+     * @return true when the key is canonical
+     */
+    public static boolean isNormalized(final CharSequence key) {
+	final int hostEnd = hostEnd(key, key.length());
+	if (!isNormalizedHost(key, hostEnd)) {
+	    return false;
+	}
+	int queryStart = key.length();
+	for (int i = hostEnd; i < key.length(); i++) {
+	    if (key.charAt(i) == '?') {
+		queryStart = i;
+		break;
+	    }
+	}
+	return isNormalizedPath(key, hostEnd, queryStart) && isNormalizedQuery(key, queryStart);
+    }
+
+    private static int hostEnd(final CharSequence key, final int end) {
+	for (int i = 0; i < end; i++) {
+	    final char c = key.charAt(i);
+	    if (c == '/' || c == '?') {
+		return i;
+	    }
+	}
+	return end;
+    }
+
+    private static boolean isNormalizedHost(final CharSequence key, final int end) {
+	if (end == 0 || NON_HOST_CHARS.indexIn(key, 0, end) != -1) {
+	    return false;
+	}
+	if (NON_DIGIT_HOST_CHARS.indexIn(key, 0, end) == -1) {
+	    // only an ip address in its usual notation, the reversed domains of
+	    // such hosts are normalized again
+	    final String host = key.subSequence(0, end).toString();
+	    final long address = IPv4Address.parseIPv4String(host);
+	    return IPv4Address.ILLEGAL_IPV4 != address && new IPv4Address(address).getAsString().equals(host);
+	}
+	if (key.charAt(0) == '.' || key.charAt(end - 1) == '.') {
+	    return false;
+	}
+	for (int i = 1; i < end; i++) {
+	    if (key.charAt(i) == '.' && key.charAt(i - 1) == '.') {
+		return false;
+	    }
+	}
+	// the leading www label is stripped
+	return !(end == 3 || end > 3 && key.charAt(end - 4) == '.') || !regionMatches(key, end - 3, "www");
+    }
+
+    private static boolean isNormalizedPath(final CharSequence key, final int start, final int end) {
+	if (start == end) {
+	    return true;
+	}
+	// trailing empty parts are dropped
+	if (key.charAt(end - 1) == '/') {
+	    return false;
+	}
+	int partStart = start + 1;
+	for (int i = partStart; i <= end; i++) {
+	    if (i == end || key.charAt(i) == '/') {
+		if (!isNormalizedPathPart(key, partStart, i)) {
+		    return false;
+		}
+		partStart = i + 1;
+	    } else if (key.charAt(i) == ';' && (regionMatches(key, i, JSESSIONID) || regionMatches(key, i, JSESSIONID_UPPER))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static boolean isNormalizedPathPart(final CharSequence key, final int start, final int end) {
+	final int work = PATH_WORK.indexIn(key, start, end);
+	if (work == -1) {
+	    return true;
+	}
+	if (key.charAt(work) != '%') {
+	    return false;
+	}
+	// escapes are canonical when decoding and encoding keeps them
+	final String part = key.subSequence(start, end).toString();
+	try {
+	    return percentCodec.encodePathPart(percentCodec.decode(part)).equals(part);
+	} catch (final IllegalArgumentException e) {
+	    return false;
+	}
+    }
+
+    private static boolean isNormalizedQuery(final CharSequence key, final int start) {
+	if (start == key.length()) {
+	    return true;
+	}
+	// trailing white space is trimmed off the url
+	if (key.charAt(key.length() - 1) <= ' ') {
+	    return false;
+	}
+	int previousStart = -1;
+	int previousEquals = -1;
+	int previousEnd = -1;
+	int parameterStart = start + 1;
+	int equals = -1;
+	for (int i = parameterStart; i <= key.length(); i++) {
+	    final char c = i == key.length() ? '&' : key.charAt(i);
+	    if (c == '&') {
+		if (!isNormalizedParameter(key, parameterStart, equals, i)) {
+		    return false;
+		}
+		// a last parameter with empty value is dropped
+		if (i == key.length() && equals == i - 1) {
+		    return false;
+		}
+		if (previousStart != -1 && compare(key, previousStart, previousEquals, previousEnd, parameterStart, equals, i) > 0) {
+		    return false;
+		}
+		previousStart = parameterStart;
+		previousEquals = equals;
+		previousEnd = i;
+		parameterStart = i + 1;
+		equals = -1;
+	    } else if (c == '=') {
+		if (equals != -1) {
+		    return false;
+		}
+		equals = i;
+	    } else if (c == '#') {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Checks a parameter, equals is -1 when it has none. Parameters without
+     * value are written with an empty one.
+     */
+    private static boolean isNormalizedParameter(final CharSequence key, final int start, final int equals, final int end) {
+	if (equals == -1 || equals == start) {
+	    return false;
+	}
+	if (QueryFactory.isFiltered(key, start, equals) || isSessionId(key, start, equals)) {
+	    return false;
+	}
+	for (int i = equals + 1; i < end; i++) {
+	    if (key.charAt(i) == ';' && (regionMatches(key, i, JSESSIONID) || regionMatches(key, i, JSESSIONID_UPPER))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static boolean isSessionId(final CharSequence key, final int start, final int end) {
+	if (end - start != 9 && end - start != 10) {
+	    return false;
+	}
+	final String token = key.subSequence(start, end).toString();
+	return token.equalsIgnoreCase("PHPSESSID") || token.equalsIgnoreCase("JSESSIONID");
+    }
+
+    /**
+     * Compares two parameters like {@link QueryKeyValuePair}.
+     */
+    private static int compare(final CharSequence key, final int start, final int equals, final int end, final int otherStart, final int otherEquals,
+	    final int otherEnd) {
+	final int keyComparison = compare(key, start, equals, otherStart, otherEquals);
+	if (keyComparison != 0) {
+	    return keyComparison;
+	}
+	return compare(key, equals + 1, end, otherEquals + 1, otherEnd);
+    }
+
+    private static int compare(final CharSequence key, final int start, final int end, final int otherStart, final int otherEnd) {
+	final int length = Math.min(end - start, otherEnd - otherStart);
+	for (int i = 0; i < length; i++) {
+	    final char c = key.charAt(start + i);
+	    final char other = key.charAt(otherStart + i);
+	    if (c != other) {
+		return c - other;
+	    }
+	}
+	return (end - start) - (otherEnd - otherStart);
+    }
+
+    private static boolean regionMatches(final CharSequence s, final int start, final String prefix) {
+	if (start + prefix.length() > s.length()) {
+	    return false;
+	}
+	for (int i = 0; i < prefix.length(); i++) {
+	    if (s.charAt(start + i) != prefix.charAt(i)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+}
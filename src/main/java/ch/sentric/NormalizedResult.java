@@ -0,0 +1,102 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+
+/**
+ * The outcome of normalizing one raw url: its normalized url as returned by
+ * {@link URL#getNormalizedUrl()}, or the reason it could not be parsed.
+ */
+public final class NormalizedResult {
+    private final String input;
+    private final String normalizedUrl;
+    private final MalformedURLException error;
+
+    /**
+     * Constructor, initializing a successful result.
+     * 
+     * @param input
+     *            the raw url
+     * @param normalizedUrl
+     *            the normalized url
+     */
+    public NormalizedResult(final String input, final String normalizedUrl) {
+	this.input = input;
+	this.normalizedUrl = normalizedUrl;
+	this.error = null;
+    }
+
+    /**
+     * Constructor, initializing the result of a malformed url.
+     * 
+     * @param input
+     *            the raw url
+     * @param error
+     *            the reason the url could not be parsed
+     */
+    public NormalizedResult(final String input, final MalformedURLException error) {
+	this.input = input;
+	this.normalizedUrl = null;
+	this.error = error;
+    }
+
+    /**
+     * Normalizes the given raw url.
+     * 
+     * @param input
+     *            the raw url
+     * @return the result, malformed urls included
+     */
+    public static NormalizedResult of(final String input) {
+	try {
+	    return new NormalizedResult(input, new URL(input).getNormalizedUrl());
+	} catch (final MalformedURLException e) {
+	    return new NormalizedResult(input, e);
+	}
+    }
+
+    public String getInput() {
+	return this.input;
+    }
+
+    /**
+     * Returns the normalized url.
+     * 
+     * @return the normalized url or null when malformed
+     */
+    public String getNormalizedUrl() {
+	return this.normalizedUrl;
+    }
+
+    /**
+     * Returns the reason the url could not be parsed.
+     * 
+     * @return the error or null when not malformed
+     */
+    public MalformedURLException getError() {
+	return this.error;
+    }
+
+    public boolean isMalformed() {
+	return null != this.error;
+    }
+
+    @Override
+    public String toString() {
+	return this.input + " -> " + (isMalformed() ? this.error.getMessage() : this.normalizedUrl);
+    }
+}
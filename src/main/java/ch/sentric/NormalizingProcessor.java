@@ -0,0 +1,310 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link Flow.Processor} normalizing raw urls into {@link NormalizedResult}s
+ * for a single subscriber. Malformed urls are passed on as results, so one bad
+ * url does not terminate the stream.
+ * </p>
+ * <p>
+ * Raw urls are requested from upstream up to the buffer size and requested
+ * again once half of them were consumed, so at most buffer size urls are held.
+ * They are normalized on the given executor in batches of at most the batch
+ * size, and only as many as the subscriber requested. Normalizing and
+ * signalling run in one task at a time, so the subscriber is signalled
+ * serially. An upstream error is signalled after the buffered urls.
+ * </p>
+ */
+public class NormalizingProcessor implements Flow.Processor<String, NormalizedResult> {
+    /**
+     * The default number of urls normalized per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The default number of buffered urls.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final Executor executor;
+    private final int batchSize;
+    private final int bufferSize;
+    private final int replenish;
+
+    private final Queue<String> queue = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final Runnable drain = new Runnable() {
+	@Override
+	public void run() {
+	    drain();
+	}
+    };
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super NormalizedResult> downstream;
+    private volatile boolean done;
+    private volatile Throwable error;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+
+    // only accessed by the drain task
+    private final String[] batch;
+    private int consumed;
+    private boolean terminated;
+
+    /**
+     * Constructor, normalizing on the common pool with the default sizes.
+     */
+    public NormalizingProcessor() {
+	this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param executor
+     *            the executor normalizing the urls
+     * @param batchSize
+     *            the maximum number of urls normalized per batch
+     * @param bufferSize
+     *            the maximum number of urls requested but not yet normalized
+     */
+    public NormalizingProcessor(final Executor executor, final int batchSize, final int bufferSize) {
+	if (batchSize < 1 || bufferSize < 1) {
+	    throw new IllegalArgumentException("batch and buffer size must be positive: " + batchSize + ", " + bufferSize);
+	}
+	this.executor = executor;
+	this.batchSize = batchSize;
+	this.bufferSize = bufferSize;
+	this.replenish = Math.max(1, bufferSize / 2);
+	this.batch = new String[batchSize];
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+	if (null != this.upstream) {
+	    subscription.cancel();
+	    return;
+	}
+	this.upstream = subscription;
+	if (this.cancelled) {
+	    subscription.cancel();
+	} else {
+	    subscription.request(this.bufferSize);
+	}
+    }
+
+    @Override
+    public void onNext(final String url) {
+	if (null == url) {
+	    throw new NullPointerException("url");
+	}
+	if (this.done) {
+	    return;
+	}
+	if (this.queued.incrementAndGet() > this.bufferSize) {
+	    fail(new IllegalStateException("more urls than requested"));
+	    return;
+	}
+	this.queue.offer(url);
+	schedule();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+	if (null == throwable) {
+	    throw new NullPointerException("throwable");
+	}
+	if (this.done) {
+	    return;
+	}
+	this.error = throwable;
+	this.done = true;
+	schedule();
+    }
+
+    @Override
+    public void onComplete() {
+	this.done = true;
+	schedule();
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super NormalizedResult> subscriber) {
+	if (!this.subscribed.compareAndSet(false, true)) {
+	    subscriber.onSubscribe(new Flow.Subscription() {
+		@Override
+		public void request(final long n) {
+		    // rejected
+		}
+
+		@Override
+		public void cancel() {
+		    // rejected
+		}
+	    });
+	    subscriber.onError(new IllegalStateException("only one subscriber allowed"));
+	    return;
+	}
+	subscriber.onSubscribe(new Flow.Subscription() {
+	    @Override
+	    public void request(final long n) {
+		if (n <= 0) {
+		    fail(new IllegalArgumentException("non-positive request: " + n));
+		} else {
+		    long current;
+		    long next;
+		    do {
+			current = NormalizingProcessor.this.demand.get();
+			next = current + n < 0 ? Long.MAX_VALUE : current + n;
+		    } while (!NormalizingProcessor.this.demand.compareAndSet(current, next));
+		}
+		schedule();
+	    }
+
+	    @Override
+	    public void cancel() {
+		NormalizingProcessor.this.cancelled = true;
+		cancelUpstream();
+		schedule();
+	    }
+	});
+	// signals start only once onSubscribe returned
+	this.downstream = subscriber;
+	schedule();
+    }
+
+    /**
+     * Cancels upstream and signals the given error without waiting for the
+     * buffered urls.
+     */
+    private void fail(final Throwable throwable) {
+	this.failure = throwable;
+	this.done = true;
+	cancelUpstream();
+	schedule();
+    }
+
+    private void cancelUpstream() {
+	final Flow.Subscription subscription = this.upstream;
+	if (null != subscription) {
+	    subscription.cancel();
+	}
+    }
+
+    private void schedule() {
+	if (this.wip.getAndIncrement() == 0) {
+	    try {
+		this.executor.execute(this.drain);
+	    } catch (final RejectedExecutionException e) {
+		// nothing is draining, so signal on the calling thread
+		this.wip.set(0);
+		cancelUpstream();
+		final Flow.Subscriber<? super NormalizedResult> subscriber = this.downstream;
+		if (null != subscriber && !this.cancelled && !this.terminated) {
+		    this.cancelled = true;
+		    subscriber.onError(e);
+		}
+	    }
+	}
+    }
+
+    private void drain() {
+	int missed = 1;
+	do {
+	    final Flow.Subscriber<? super NormalizedResult> subscriber = this.downstream;
+	    if (this.cancelled || this.terminated) {
+		this.queue.clear();
+	    } else if (null != subscriber) {
+		final long requested = this.demand.get();
+		long emitted = 0;
+		while (emitted != requested && !this.cancelled && null == this.failure) {
+		    final int count = poll((int) Math.min(this.batchSize, requested - emitted));
+		    if (count == 0) {
+			break;
+		    }
+		    final NormalizedResult[] results = new NormalizedResult[count];
+		    for (int i = 0; i < count; i++) {
+			results[i] = NormalizedResult.of(this.batch[i]);
+			this.batch[i] = null;
+		    }
+		    for (int i = 0; i < count && !this.cancelled; i++) {
+			subscriber.onNext(results[i]);
+		    }
+		    emitted += count;
+		    replenish(count);
+		}
+		if (requested != Long.MAX_VALUE && emitted != 0) {
+		    this.demand.addAndGet(-emitted);
+		}
+		if (this.cancelled) {
+		    this.queue.clear();
+		} else if (null != this.failure) {
+		    terminate(subscriber, this.failure);
+		} else if (this.done && this.queued.get() == 0) {
+		    terminate(subscriber, this.error);
+		}
+	    }
+	    missed = this.wip.addAndGet(-missed);
+	} while (missed != 0);
+    }
+
+    private int poll(final int max) {
+	int count = 0;
+	String url;
+	while (count < max && (url = this.queue.poll()) != null) {
+	    this.batch[count++] = url;
+	}
+	this.queued.addAndGet(-count);
+	return count;
+    }
+
+    private void replenish(final int count) {
+	this.consumed += count;
+	if (this.consumed >= this.replenish && !this.done) {
+	    final Flow.Subscription subscription = this.upstream;
+	    if (null != subscription) {
+		subscription.request(this.consumed);
+		this.consumed = 0;
+	    }
+	}
+    }
+
+    private void terminate(final Flow.Subscriber<? super NormalizedResult> subscriber, final Throwable throwable) {
+	this.terminated = true;
+	this.queue.clear();
+	if (null == throwable) {
+	    subscriber.onComplete();
+	} else {
+	    subscriber.onError(throwable);
+	}
+    }
+}
@@ -17,6 +17,9 @@ package ch.sentric;
 
 import java.util.Arrays;
 
+import ch.sentric.NormalizationMetrics.Rule;
+import ch.sentric.NormalizationMetrics.Stage;
+
 /**
  * The {@link Path} representing a path delimited by '/'.
  */
@@ -51,10 +54,12 @@ public class Path {
      * @return endocoded path
      */
     public Path getReEncoded() {
+	final long start = NormalizationMetrics.start();
 	final String[] newPathParts = new String[getPathParts().length];
 	for (int i = 0; i < getPathParts().length; i++) {
 	    newPathParts[i] = percentCodec.encodePathPart(percentCodec.decode(getPathParts()[i]));
 	}
+	NormalizationMetrics.stop(Stage.PATH_REENCODE, start);
 	return new Path(newPathParts);
     }
 
@@ -103,12 +108,13 @@ public class Path {
 	return builder.toString();
     }
 
-    private String[] getPathParts() {
+    String[] getPathParts() {
 	return this.pathParts;
     }
 
     private String validate(final String path) {
-	if (path.contains(";jsessionid") || path.contains(";JSESSIONID")) {
+	if (path.indexOf(';') != -1 && (path.contains(";jsessionid") || path.contains(";JSESSIONID"))) {
+	    NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
 	    return path.substring(0, path.lastIndexOf(";"));
 	}
 	return path;
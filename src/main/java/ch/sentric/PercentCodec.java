@@ -15,8 +15,6 @@
  */
 package ch.sentric;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
 import java.nio.charset.Charset;
 
 /**
@@ -48,25 +46,51 @@ public class PercentCodec {
     private static final String RESERVED_QUERY_CHARS = "%&;=:?#";
     private static final String RESERVED_PATH_CHARS = "%/?#";
     private static final String HEX_CODES = "0123456789abcdefABCDEF";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // the characters changed by encode, i.e. reserved, space, control and
+    // non-ASCII characters
+    private static final CharClass PATH_WORK = new CharClass(RESERVED_PATH_CHARS + " ", 0x20, 0x7F, true);
+    private static final CharClass QUERY_WORK = new CharClass(RESERVED_QUERY_CHARS + " ", 0x20, 0x7F, true);
 
     public String encodePathPart(final String pathPart) {
-	return encode(pathPart, RESERVED_PATH_CHARS);
+	return encode(pathPart, RESERVED_PATH_CHARS, PATH_WORK.indexIn(pathPart));
+    }
+
+    /**
+     * Checks whether re-encoding the given path part, i.e. decoding and
+     * encoding it, leaves it unchanged.
+     */
+    static boolean isReEncodedPathPart(final CharSequence s, final int start, final int end) {
+	return PATH_WORK.indexIn(s, start, end) == -1;
     }
 
     public String encodeQueryComponent(final String queryComponent) {
-	return encode(queryComponent, RESERVED_QUERY_CHARS);
+	return encode(queryComponent, RESERVED_QUERY_CHARS, QUERY_WORK.indexIn(queryComponent));
     }
 
     public String encode(final String component, final String reservedChars) {
-	final StringBuilder result = new StringBuilder();
-	for (int i = 0; i < component.length();) {
+	return encode(component, reservedChars, 0);
+    }
+
+    /**
+     * Encodes the component, starting at the first character that may need
+     * encoding.
+     */
+    private static String encode(final String component, final String reservedChars, final int first) {
+	if (first == -1) {
+	    return component;
+	}
+	final StringBuilder result = new StringBuilder(component.length() + 16);
+	result.append(component, 0, first);
+	for (int i = first; i < component.length();) {
 	    final int codePoint = component.codePointAt(i);
 	    if (codePoint == 0x0020) {
 		result.append('+');
 	    } else if (codePoint >= 0x007F) {
-		result.append(encodeCodePoint(codePoint));
+		encodeCodePoint(result, codePoint);
 	    } else if ((codePoint < 0x0020) || (reservedChars.indexOf((char) codePoint) != -1)) {
-		result.append(String.format("%%%02x", codePoint));
+		appendEscaped(result, codePoint);
 	    } else {
 		result.append((char) codePoint);
 	    }
@@ -78,57 +102,82 @@ public class PercentCodec {
     }
 
     public String decode(final String url) {
+	return decode(url, 0, url.length());
+    }
+
+    /**
+     * Decodes a range of a char sequence, e.g. of a log line, without copying
+     * the range first. Like {@link java.net.URLDecoder} with the default charset, '+'
+     * decodes to a space, but a '%' not followed by two hex digits is kept.
+     * 
+     * @param s
+     *            the chars to decode
+     * @param start
+     *            the start of the range
+     * @param end
+     *            the end of the range, exclusive
+     * @return the decoded string
+     */
+    public String decode(final CharSequence s, final int start, final int end) {
 	// FUTURE - handle unsupported %uHHHH sequences for Unicode code points.
 	// FUTURE - detect & handle incorrectly encoded URLs
 
-	// First, try to catch unescaped '%' characters.
-	final String result = escapeIsolatedPercentSigns(url);
-
-	try {
-	    return URLDecoder.decode(result, Charset.defaultCharset().toString());
-	} catch (final UnsupportedEncodingException e) {
-	    throw new IllegalStateException("Unexpected exception during URL decoding", e);
+	int first = start;
+	while (first < end && s.charAt(first) != '%' && s.charAt(first) != '+') {
+	    first++;
 	}
-    }
-
-    private static String encodeCodePoint(final int codepoint) {
-	try {
-	    final int[] codepoints = { codepoint };
-	    final byte[] bytes = new String(codepoints, 0, 1).getBytes(Charset.defaultCharset().toString());
-
-	    final StringBuilder result = new StringBuilder();
-	    for (final byte value : bytes) {
-		result.append(String.format("%%%02x", value));
-	    }
-
-	    return result.toString();
-	} catch (final UnsupportedEncodingException e) {
-	    throw new IllegalStateException("Unexpected exception during URL encoding", e);
+	if (first == end) {
+	    // nothing to decode
+	    return s.subSequence(start, end).toString();
 	}
-    }
-
-    private static String escapeIsolatedPercentSigns(final String in) {
-	StringBuilder builder = null;
-	int offset = 0;
-	int lastOffset = 0;
-	while ((offset = in.indexOf('%', offset)) != -1) {
-
-	    offset += 1;
-
-	    if (offset > in.length() - 2 || HEX_CODES.indexOf(in.charAt(offset)) == -1 || HEX_CODES.indexOf(in.charAt(offset + 1)) == -1) {
-		if (null == builder) {
-		    builder = new StringBuilder();
+	final StringBuilder result = new StringBuilder(end - start);
+	result.append(s, start, first);
+	byte[] bytes = null;
+	for (int i = first; i < end;) {
+	    final char c = s.charAt(i);
+	    if (c == '+') {
+		result.append(' ');
+		i++;
+	    } else if (c == '%') {
+		// decode a run of escaped bytes at once, an isolated '%' is one
+		if (null == bytes) {
+		    bytes = new byte[end - i];
+		}
+		int length = 0;
+		while (i < end && s.charAt(i) == '%') {
+		    final int high = i + 2 < end ? hexValue(s.charAt(i + 1)) : -1;
+		    final int low = high == -1 ? -1 : hexValue(s.charAt(i + 2));
+		    if (low == -1) {
+			bytes[length++] = '%';
+			i++;
+		    } else {
+			bytes[length++] = (byte) (high << 4 | low);
+			i += 3;
+		    }
 		}
-		builder.append(in.substring(lastOffset, offset));
-		builder.append("25");
-		lastOffset = offset;
+		result.append(new String(bytes, 0, length, Charset.defaultCharset()));
+	    } else {
+		result.append(c);
+		i++;
 	    }
 	}
-	if (null != builder) {
-	    builder.append(in.substring(lastOffset));
-	    return builder.toString();
+	return result.toString();
+    }
+
+    private static void encodeCodePoint(final StringBuilder result, final int codepoint) {
+	final int[] codepoints = { codepoint };
+	final byte[] bytes = new String(codepoints, 0, 1).getBytes(Charset.defaultCharset());
+	for (final byte value : bytes) {
+	    appendEscaped(result, value);
 	}
+    }
+
+    private static void appendEscaped(final StringBuilder result, final int value) {
+	result.append('%').append(HEX[(value >> 4) & 0xF]).append(HEX[value & 0xF]);
+    }
 
-	return in;
+    private static int hexValue(final char c) {
+	final int index = HEX_CODES.indexOf(c);
+	return index < 16 ? index : index - 6;
     }
 }
\ No newline at end of file
@@ -19,6 +19,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import ch.sentric.NormalizationMetrics.Stage;
+
 /**
  * The {@link Query} representing a query path.
  */
@@ -70,15 +72,25 @@ public class Query {
 	if (this.list.size() == 0) {
 	    return "";
 	}
-	List<QueryKeyValuePair> list;
-	if (sort) {
-	    list = new ArrayList<QueryKeyValuePair>(this.list);
-	    Collections.sort(list);
-	} else {
-	    list = this.list;
-	}
+	return (prefixQuestionMark ? "?" : "") + listToString(getKeyValuePairs(sort));
+    }
 
-	return (prefixQuestionMark ? "?" : "") + listToString(list);
+    /**
+     * Returns the key value pairs of this query, sorted when requested.
+     * 
+     * @param sort
+     *            true when sorting is requested
+     * @return the key value pairs, must not be modified
+     */
+    List<QueryKeyValuePair> getKeyValuePairs(final boolean sort) {
+	if (!sort || this.list.size() < 2) {
+	    return this.list;
+	}
+	final long start = NormalizationMetrics.start();
+	final List<QueryKeyValuePair> list = new ArrayList<QueryKeyValuePair>(this.list);
+	Collections.sort(list);
+	NormalizationMetrics.stop(Stage.QUERY_SORT, start);
+	return list;
     }
 
     /**
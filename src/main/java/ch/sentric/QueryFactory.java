@@ -17,11 +17,13 @@ package ch.sentric;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.StringTokenizer;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Predicate;
 
+import ch.sentric.NormalizationMetrics.Rule;
+import ch.sentric.NormalizationMetrics.Stage;
+
 /**
  * <p>
  * The QueryFactory parses the in order to assemble a list of key and value
@@ -49,57 +51,143 @@ public class QueryFactory {
 	    "OVADID", "YSMADID", "OVKWID", "YSMKWID", "OVCAMPGID", "YSMCAMPGID", "OVADGRPID", "YSMADGRPID"));
 
     public Query build(final String q) {
-	if (null == q || "".equalsIgnoreCase(q)) {
-	    return new Query();
+	return build(q, SiteRules.DEFAULT);
+    }
+
+    /**
+     * Builds the query of a site with its own rules, i.e. query delimiter and
+     * session id parameters. The session id parameters of the site are removed
+     * with their values.
+     * 
+     * @param q
+     *            the query, may be null
+     * @param rules
+     *            the rules of the site
+     * @return the query
+     */
+    public Query build(final String q, final SiteRules rules) {
+	if (null == q) {
+	    return new Query(null, rules.getQueryDelimiter());
 	}
+	return build(q, 0, q.length(), rules);
+    }
+
+    /**
+     * Builds the query from a range of a char sequence, e.g. of a log line,
+     * without copying the range first.
+     * 
+     * @param q
+     *            the chars holding the query
+     * @param start
+     *            the start of the query, after '?'
+     * @param end
+     *            the end of the query, exclusive
+     * @return the query
+     */
+    public Query build(final CharSequence q, final int start, final int end) {
+	return build(q, start, end, SiteRules.DEFAULT);
+    }
+
+    /**
+     * Builds the query of a site from a range of a char sequence, see
+     * {@link #build(String, SiteRules)}.
+     * 
+     * @param q
+     *            the chars holding the query
+     * @param start
+     *            the start of the query, after '?'
+     * @param end
+     *            the end of the query, exclusive
+     * @param rules
+     *            the rules of the site
+     * @return the query
+     */
+    public Query build(final CharSequence q, final int start, final int end, final SiteRules rules) {
+	final char delimiter = rules.getQueryDelimiter();
+	if (start == end) {
+	    return new Query(null, delimiter);
+	}
+	final long begin = NormalizationMetrics.start();
 	final ArrayList<QueryKeyValuePair> list = new ArrayList<QueryKeyValuePair>(0);
 
 	ParserState state = ParserState.START;
-	final StringTokenizer tokenizer = new StringTokenizer(q, "=&", true);
 	String key = null;
-	while (tokenizer.hasMoreTokens()) {
-	    final String token = tokenizer.nextToken();
+	int i = start;
+	while (i < end) {
+	    // the tokens are '=', the delimiter and the runs between them
+	    final int tokenStart = i;
+	    final char first = q.charAt(i++);
+	    final boolean equal = first == '=';
+	    final boolean delimiterToken = first == delimiter;
+	    if (!equal && !delimiterToken) {
+		while (i < end && q.charAt(i) != '=' && q.charAt(i) != delimiter) {
+		    i++;
+		}
+	    }
 
 	    switch (state) {
 	    case DELIMITER:
-		if (token.equals("&")) {
+		if (delimiterToken) {
 		    state = ParserState.KEY;
 		}
 		break;
 
 	    case KEY:
-		if (!token.equals("=") && !token.equals("&") && !token.equalsIgnoreCase("PHPSESSID") && !token.equalsIgnoreCase("JSESSIONID")) {
+		if (equal || delimiterToken) {
+		    break;
+		}
+		final String token = q.subSequence(tokenStart, i).toString();
+		if (rules.isSessionIdParameter(token)) {
+		    NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		    state = ParserState.SKIP_VALUE;
+		} else if (isSessionId(token)) {
+		    NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		} else {
 		    key = token;
 		    state = ParserState.EQUAL;
 		}
 		break;
 
 	    case EQUAL:
-		if (token.equals("=")) {
+		if (equal) {
 		    state = ParserState.VALUE;
-		} else if (token.equals("&")) {
+		} else if (delimiterToken) {
 		    list.add(new QueryKeyValuePair(key, null));
 		    state = ParserState.KEY;
 		}
 		break;
 
 	    case VALUE:
-		if (!token.equals("=") && !token.equals("&")) {
-		    if (token.contains(";jsessionid") || token.contains(";JSESSIONID")) {
-			list.add(new QueryKeyValuePair(key, token.substring(0, token.lastIndexOf(";"))));
+		if (!equal && !delimiterToken) {
+		    final String value = q.subSequence(tokenStart, i).toString();
+		    if (value.contains(";jsessionid") || value.contains(";JSESSIONID")) {
+			NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+			list.add(new QueryKeyValuePair(key, value.substring(0, value.lastIndexOf(";"))));
 		    } else {
-			list.add(new QueryKeyValuePair(key, token));
+			list.add(new QueryKeyValuePair(key, value));
 		    }
 		    state = ParserState.DELIMITER;
-		} else if (token.equals("&")) {
+		} else if (delimiterToken) {
 		    list.add(new QueryKeyValuePair(key, null));
 		    state = ParserState.KEY;
 		}
 		break;
 
+	    case SKIP_VALUE:
+		if (delimiterToken) {
+		    state = ParserState.KEY;
+		}
+		break;
+
 	    case START:
-		if (!token.equalsIgnoreCase("PHPSESSID") && !token.equalsIgnoreCase("JSESSIONID")) {
-		    key = token;
+		final String startToken = q.subSequence(tokenStart, i).toString();
+		if (rules.isSessionIdParameter(startToken)) {
+		    NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		    state = ParserState.SKIP_VALUE;
+		} else if (isSessionId(startToken)) {
+		    NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		} else {
+		    key = startToken;
 		    state = ParserState.EQUAL;
 		}
 		break;
@@ -119,14 +207,44 @@ public class QueryFactory {
 			allowedQueryParameter = false;
 		    }
 		}
+		if (!allowedQueryParameter) {
+		    NormalizationMetrics.count(Rule.TRACKING_PARAMETER_FILTERED);
+		}
 		return allowedQueryParameter;
 	    }
 	});
 
-	return new Query(list, '&');
+	NormalizationMetrics.stop(Stage.QUERY_BUILD, begin);
+	return new Query(list, delimiter);
+    }
+
+    /**
+     * Checks whether the given key is filtered as tracking parameter.
+     */
+    static boolean isFiltered(final CharSequence s, final int start, final int end) {
+	for (int i = 0; i < filters.size(); i++) {
+	    final String filter = filters.get(i);
+	    if (end - start >= filter.length() && regionMatches(s, start, filter)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private static boolean regionMatches(final CharSequence s, final int start, final String prefix) {
+	for (int i = 0; i < prefix.length(); i++) {
+	    if (s.charAt(start + i) != prefix.charAt(i)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static boolean isSessionId(final String token) {
+	return token.equalsIgnoreCase("PHPSESSID") || token.equalsIgnoreCase("JSESSIONID");
     }
 
     private enum ParserState {
-	KEY, VALUE, DELIMITER, EQUAL, START
+	KEY, VALUE, DELIMITER, EQUAL, START, SKIP_VALUE
     }
 }
@@ -0,0 +1,298 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * <p>
+ * Computes hierarchical counts over sorted normalized urls, as returned by
+ * {@link URL#getNormalizedUrl()}, in a single streaming pass: per top level
+ * domain, registrable domain as computed by
+ * {@link UrlUtil#siteToTopLevel(String)}, host, and the first path segments.
+ * </p>
+ * <p>
+ * Each group is identified by a prefix of its keys, e.g.
+ * <i>com.example.www/blog</i> for the first path segment of
+ * http://www.example.com/blog/2012. In any lexicographic order the keys
+ * starting with a prefix are contiguous, so a group is finished and passed to
+ * the {@link Listener} as soon as a key arrives that does not start with its
+ * prefix, subgroups before their parents. Only the groups that are prefixes of
+ * the current key are kept open, as primitive counters.
+ * </p>
+ * Note that groups are not strictly nested: the bare key <i>com.example</i>
+ * sorts before the keys of <i>com.example-foo</i>, so the host com.example is
+ * finished only after com.example-foo. This class is not thread safe.
+ */
+public class RollupAggregator {
+    /**
+     * The levels of the hierarchy.
+     */
+    public enum Level {
+	/** the top level domain, e.g. uk */
+	TLD,
+	/** the registrable domain, e.g. uk.co.bbc */
+	DOMAIN,
+	/** the host, e.g. uk.co.bbc.www */
+	HOST,
+	/** the host with the first path segments, e.g. uk.co.bbc.www/news */
+	PATH
+    }
+
+    /**
+     * Receives the finished groups.
+     */
+    public interface Listener {
+	/**
+	 * Called once per group when its last key was added.
+	 * 
+	 * @param level
+	 *            the level of the group
+	 * @param depth
+	 *            the number of path segments for {@link Level#PATH}, 0
+	 *            otherwise
+	 * @param prefix
+	 *            the prefix of the keys of the group
+	 * @param keys
+	 *            the number of keys of the group
+	 * @param count
+	 *            the sum of the counts of the keys of the group
+	 */
+	void rollup(Level level, int depth, String prefix, long keys, long count);
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final boolean[] enabled = new boolean[LEVELS.length];
+    private final int pathSegments;
+    private final Listener listener;
+
+    // the open groups, ordered by prefix length, all prefixes of the last key
+    private int size;
+    private int[] levels = new int[8];
+    private int[] depths = new int[8];
+    private int[] ends = new int[8];
+    private long[] keys = new long[8];
+    private long[] counts = new long[8];
+
+    // the groups of the current key, ordered by prefix length
+    private int groups;
+    private int[] groupLevels = new int[8];
+    private int[] groupDepths = new int[8];
+    private int[] groupEnds = new int[8];
+
+    private String lastKey;
+    private String lastHost;
+    private int lastDomainEnd;
+    private boolean lastIp;
+
+    /**
+     * Constructor.
+     * 
+     * @param levels
+     *            the levels to count
+     * @param pathSegments
+     *            the number of path segments counted for {@link Level#PATH},
+     *            each depth from 1 to pathSegments is a level of its own
+     * @param listener
+     *            receives the finished groups
+     */
+    public RollupAggregator(final Set<Level> levels, final int pathSegments, final Listener listener) {
+	if (levels.contains(Level.PATH) && pathSegments < 1) {
+	    throw new IllegalArgumentException("path segments must be positive: " + pathSegments);
+	}
+	for (final Level level : levels) {
+	    this.enabled[level.ordinal()] = true;
+	}
+	this.pathSegments = levels.contains(Level.PATH) ? pathSegments : 0;
+	this.listener = listener;
+    }
+
+    /**
+     * Adds a key counted once.
+     * 
+     * @param key
+     *            the normalized url, not smaller than the previous key
+     */
+    public void add(final String key) {
+	add(key, 1);
+    }
+
+    /**
+     * Adds a key, e.g. as written by {@link ExternalUrlSorter} with counts.
+     * 
+     * @param key
+     *            the normalized url, not smaller than the previous key
+     * @param count
+     *            the number of occurrences of the key
+     */
+    public void add(final String key, final long count) {
+	if (null != this.lastKey) {
+	    // finish the groups whose prefix ended
+	    final int common = commonPrefixLength(this.lastKey, key);
+	    while (this.size > 0 && this.ends[this.size - 1] > common) {
+		pop();
+	    }
+	}
+	computeGroups(key);
+	this.lastKey = key;
+
+	// merge the groups of the key into the open groups, both are ordered
+	int open = 0;
+	for (int g = 0; g < this.groups; g++) {
+	    while (open < this.size && compare(open, g) < 0) {
+		open++;
+	    }
+	    if (open == this.size || compare(open, g) != 0) {
+		insert(open, g);
+	    }
+	    this.keys[open]++;
+	    this.counts[open] += count;
+	    open++;
+	}
+    }
+
+    /**
+     * Finishes all open groups. Further keys start new groups.
+     */
+    public void finish() {
+	while (this.size > 0) {
+	    pop();
+	}
+	this.lastKey = null;
+    }
+
+    private void computeGroups(final String key) {
+	this.groups = 0;
+	int hostEnd = key.length();
+	for (int i = 0; i < key.length(); i++) {
+	    final char c = key.charAt(i);
+	    if (c == '/' || c == '?') {
+		hostEnd = i;
+		break;
+	    }
+	}
+	if (this.enabled[Level.TLD.ordinal()] || this.enabled[Level.DOMAIN.ordinal()]) {
+	    final int domainEnd = domainEnd(key, hostEnd);
+	    if (this.enabled[Level.TLD.ordinal()]) {
+		final int dot = key.indexOf('.');
+		addGroup(Level.TLD, 0, this.lastIp || dot == -1 || dot > domainEnd ? domainEnd : dot);
+	    }
+	    if (this.enabled[Level.DOMAIN.ordinal()]) {
+		addGroup(Level.DOMAIN, 0, domainEnd);
+	    }
+	}
+	if (this.enabled[Level.HOST.ordinal()]) {
+	    addGroup(Level.HOST, 0, hostEnd);
+	}
+	int end = hostEnd;
+	for (int depth = 1; depth <= this.pathSegments && end < key.length() && key.charAt(end) == '/'; depth++) {
+	    end++;
+	    while (end < key.length() && key.charAt(end) != '/' && key.charAt(end) != '?') {
+		end++;
+	    }
+	    addGroup(Level.PATH, depth, end);
+	}
+    }
+
+    /**
+     * Returns the end of the registrable domain within the host of the key,
+     * the whole host for ip addresses, which are their own top level domain.
+     */
+    private int domainEnd(final String key, final int hostEnd) {
+	if (null != this.lastHost && this.lastHost.length() == hostEnd && key.startsWith(this.lastHost)) {
+	    return this.lastDomainEnd;
+	}
+	final String host = key.substring(0, hostEnd);
+	int domainEnd = hostEnd;
+	this.lastIp = hostEnd > 0 && Character.isDigit(key.charAt(hostEnd - 1)) && IPv4Address.parseIPv4String(host) > -1;
+	if (hostEnd > 0 && !this.lastIp) {
+	    final String domain = UrlUtil.siteToTopLevel(host);
+	    if (host.startsWith(domain)) {
+		domainEnd = domain.length();
+	    }
+	}
+	this.lastHost = host;
+	this.lastDomainEnd = domainEnd;
+	return domainEnd;
+    }
+
+    private void addGroup(final Level level, final int depth, final int end) {
+	if (this.groups == this.groupEnds.length) {
+	    this.groupLevels = Arrays.copyOf(this.groupLevels, this.groups * 2);
+	    this.groupDepths = Arrays.copyOf(this.groupDepths, this.groups * 2);
+	    this.groupEnds = Arrays.copyOf(this.groupEnds, this.groups * 2);
+	}
+	this.groupLevels[this.groups] = level.ordinal();
+	this.groupDepths[this.groups] = depth;
+	this.groupEnds[this.groups] = end;
+	this.groups++;
+    }
+
+    /**
+     * Compares the open group at the given index with the group of the
+     * current key: by prefix length, then coarser levels first.
+     */
+    private int compare(final int open, final int group) {
+	if (this.ends[open] != this.groupEnds[group]) {
+	    return this.ends[open] < this.groupEnds[group] ? -1 : 1;
+	}
+	if (this.levels[open] != this.groupLevels[group]) {
+	    return this.levels[open] < this.groupLevels[group] ? -1 : 1;
+	}
+	return this.depths[open] - this.groupDepths[group];
+    }
+
+    private void insert(final int index, final int group) {
+	if (this.size == this.ends.length) {
+	    final int capacity = this.size * 2;
+	    this.levels = Arrays.copyOf(this.levels, capacity);
+	    this.depths = Arrays.copyOf(this.depths, capacity);
+	    this.ends = Arrays.copyOf(this.ends, capacity);
+	    this.keys = Arrays.copyOf(this.keys, capacity);
+	    this.counts = Arrays.copyOf(this.counts, capacity);
+	}
+	final int moved = this.size - index;
+	System.arraycopy(this.levels, index, this.levels, index + 1, moved);
+	System.arraycopy(this.depths, index, this.depths, index + 1, moved);
+	System.arraycopy(this.ends, index, this.ends, index + 1, moved);
+	System.arraycopy(this.keys, index, this.keys, index + 1, moved);
+	System.arraycopy(this.counts, index, this.counts, index + 1, moved);
+	this.levels[index] = this.groupLevels[group];
+	this.depths[index] = this.groupDepths[group];
+	this.ends[index] = this.groupEnds[group];
+	this.keys[index] = 0;
+	this.counts[index] = 0;
+	this.size++;
+    }
+
+    private void pop() {
+	this.size--;
+	this.listener.rollup(LEVELS[this.levels[this.size]], this.depths[this.size], this.lastKey.substring(0, this.ends[this.size]), this.keys[this.size],
+		this.counts[this.size]);
+    }
+
+    private static int commonPrefixLength(final String a, final String b) {
+	final int length = Math.min(a.length(), b.length());
+	for (int i = 0; i < length; i++) {
+	    if (a.charAt(i) != b.charAt(i)) {
+		return i;
+	    }
+	}
+	return length;
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ * <p>
+ * Binary, byte comparable row key of a {@link URL}, e.g. for HBase. Like
+ * {@link URL#getNormalizedUrl()} the key starts with the reversed host labels,
+ * but terminates labels and path segments with bytes that sort before all
+ * characters. Hence unsigned byte comparison of two keys matches their
+ * semantic order: a domain is followed by its own paths, then by its
+ * subdomains and only then by domains like <i>example-foo.com</i>, and a path
+ * segment is directly followed by its children.
+ * </p>
+ * Layout:
+ * 
+ * <pre>
+ * host   := (label 0x01)+ 0x00 | 0x02 ipv4-bytes[4] 0x00
+ * path   := (segment 0x01)* 0x00
+ * query  := (key 0x02 value 0x01)* 0x00
+ * tag    := scheme-byte [scheme 0x00] [port[2]]
+ * key    := host path query tag
+ * </pre>
+ * 
+ * The scheme and the port are kept in a compact trailing tag, so they don't
+ * separate urls of the same path. Bytes below 0x20 within labels, segments and
+ * query components are percent-encoded.
+ */
+public final class RowKey {
+    private static final int END = 0x00;
+    private static final int LABEL_END = 0x01;
+    private static final int SEGMENT_END = 0x01;
+    private static final int PAIR_END = 0x01;
+    private static final int KEY_END = 0x02;
+    private static final int IPV4 = 0x02;
+    private static final int TAG_HTTP = 0x10;
+    private static final int TAG_HTTPS = 0x20;
+    private static final int TAG_OTHER = 0x30;
+    private static final int TAG_PORT = 0x01;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private RowKey() {
+    }
+
+    /**
+     * Returns the row key of the given url.
+     * 
+     * @param url
+     *            the url
+     * @return the row key
+     */
+    public static byte[] encode(final URL url) {
+	final ByteArrayOutputStream out = new ByteArrayOutputStream(url.getGivenInputUrl().length() + 8);
+	writeHost(out, url.getAuthority().getHostName());
+	out.write(END);
+	for (final String segment : url.getPath().getReEncoded().getPathParts()) {
+	    if (segment.length() > 0) {
+		writeComponent(out, segment);
+		out.write(SEGMENT_END);
+	    }
+	}
+	out.write(END);
+	for (final QueryKeyValuePair pair : url.getQuery().getKeyValuePairs(true)) {
+	    writeComponent(out, pair.getKey());
+	    out.write(KEY_END);
+	    writeComponent(out, pair.getValue());
+	    out.write(PAIR_END);
+	}
+	out.write(END);
+	writeTag(out, url.getScheme(), url.getAuthority().getPort());
+	return out.toByteArray();
+    }
+
+    /**
+     * Compares two row keys the way HBase does, i.e. byte by byte unsigned.
+     * 
+     * @param a
+     *            the first key
+     * @param b
+     *            the second key
+     * @return negative, zero or positive when a is smaller, equal or greater
+     */
+    public static int compare(final byte[] a, final byte[] b) {
+	return Arrays.compareUnsigned(a, b);
+    }
+
+    /**
+     * Returns the scan range covering a domain including all its subdomains,
+     * e.g. example.com covers www.example.com and shop.example.com but not
+     * example-foo.com.
+     * 
+     * @param host
+     *            the host in normal order, e.g. example.com
+     * @return the scan range
+     */
+    public static Range domainRange(final String host) {
+	final HostName hostName = new HostNameFactory().build(host);
+	final ByteArrayOutputStream out = new ByteArrayOutputStream(host.length() + 8);
+	writeHost(out, hostName);
+	if (out.size() == 0) {
+	    throw new IllegalArgumentException("no valid host: " + host);
+	}
+	if (hostName instanceof IPv4Address) {
+	    // ip addresses have no subdomains
+	    out.write(END);
+	}
+	return Range.prefix(out.toByteArray());
+    }
+
+    /**
+     * Returns the scan range covering the path of the given url and all paths
+     * below, on this host only. The query, scheme and port of the url are
+     * ignored. Example: http://example.com/blog covers /blog and /blog/post,
+     * but neither /blog-archive nor blog.example.com.
+     * 
+     * @param url
+     *            the url naming host and path prefix
+     * @return the scan range
+     */
+    public static Range pathRange(final URL url) {
+	final ByteArrayOutputStream out = new ByteArrayOutputStream(url.getGivenInputUrl().length() + 8);
+	writeHost(out, url.getAuthority().getHostName());
+	out.write(END);
+	for (final String segment : url.getPath().getReEncoded().getPathParts()) {
+	    if (segment.length() > 0) {
+		writeComponent(out, segment);
+		out.write(SEGMENT_END);
+	    }
+	}
+	return Range.prefix(out.toByteArray());
+    }
+
+    private static void writeHost(final ByteArrayOutputStream out, final HostName hostName) {
+	if (hostName instanceof IPv4Address) {
+	    final long address = ((IPv4Address) hostName).getAddress();
+	    out.write(IPV4);
+	    out.write((int) (address >>> 24));
+	    out.write((int) (address >>> 16));
+	    out.write((int) (address >>> 8));
+	    out.write((int) address);
+	    return;
+	}
+	final StringTokenizer tokenizer = new StringTokenizer(hostName.getOptimizedForProximityOrder(), ".");
+	while (tokenizer.hasMoreTokens()) {
+	    writeComponent(out, tokenizer.nextToken());
+	    out.write(LABEL_END);
+	}
+    }
+
+    private static void writeComponent(final ByteArrayOutputStream out, final String component) {
+	final byte[] bytes = component.getBytes(StandardCharsets.UTF_8);
+	for (final byte b : bytes) {
+	    if ((b & 0xFF) < 0x20) {
+		out.write('%');
+		out.write(HEX[(b >> 4) & 0xF]);
+		out.write(HEX[b & 0xF]);
+	    } else {
+		out.write(b);
+	    }
+	}
+    }
+
+    private static void writeTag(final ByteArrayOutputStream out, final String scheme, final int port) {
+	final String lowerCaseScheme = scheme.toLowerCase(Locale.ENGLISH);
+	final boolean explicitPort;
+	if ("http".equals(lowerCaseScheme)) {
+	    explicitPort = port != -1 && port != 80;
+	    out.write(TAG_HTTP | (explicitPort ? TAG_PORT : 0));
+	} else if ("https".equals(lowerCaseScheme)) {
+	    explicitPort = port != -1 && port != 443;
+	    out.write(TAG_HTTPS | (explicitPort ? TAG_PORT : 0));
+	} else {
+	    explicitPort = port != -1;
+	    out.write(TAG_OTHER | (explicitPort ? TAG_PORT : 0));
+	    writeComponent(out, lowerCaseScheme);
+	    out.write(END);
+	}
+	if (explicitPort) {
+	    out.write(port >>> 8);
+	    out.write(port);
+	}
+    }
+
+    /**
+     * A scan range with an inclusive start and an exclusive stop key.
+     */
+    public static final class Range {
+	private final byte[] startKey;
+	private final byte[] stopKey;
+
+	private Range(final byte[] startKey, final byte[] stopKey) {
+	    this.startKey = startKey;
+	    this.stopKey = stopKey;
+	}
+
+	private static Range prefix(final byte[] prefix) {
+	    // the prefix always ends with a terminator below 0xFF
+	    final byte[] stop = prefix.clone();
+	    stop[stop.length - 1]++;
+	    return new Range(prefix, stop);
+	}
+
+	public byte[] getStartKey() {
+	    return this.startKey.clone();
+	}
+
+	public byte[] getStopKey() {
+	    return this.stopKey.clone();
+	}
+
+	/**
+	 * Checks whether the given row key is within this range.
+	 * 
+	 * @param rowKey
+	 *            the row key
+	 * @return true when start &lt;= rowKey &lt; stop
+	 */
+	public boolean contains(final byte[] rowKey) {
+	    return compare(this.startKey, rowKey) <= 0 && compare(rowKey, this.stopKey) < 0;
+	}
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+/**
+ * <p>
+ * Per site {@link SiteRules}, stored in a trie over the labels of the reversed
+ * host, e.g. com, example, www for www.example.com. Rules are added for a
+ * domain, applying to the domain and all its subdomains, or for a single host.
+ * Finding the rules of a host walks the trie once, at most one step per label,
+ * without allocating: the rules of the host win over the rules of its
+ * innermost domain, which win over {@link SiteRules#DEFAULT}.
+ * </p>
+ * Adding rules is not thread safe, finding rules is once all rules were added.
+ */
+public class SiteRuleTrie {
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Adds the rules of a domain and all its subdomains, e.g. of example.co.uk,
+     * replacing previous rules of the domain.
+     * 
+     * @param domain
+     *            the domain in normal order
+     * @param rules
+     *            the rules
+     */
+    public void putDomain(final String domain, final SiteRules rules) {
+	final Node node = insert(domain);
+	if (null == node.domainRules) {
+	    this.size++;
+	}
+	node.domainRules = rules;
+    }
+
+    /**
+     * Adds the rules of a single host, replacing previous rules of the host.
+     * 
+     * @param host
+     *            the host in normal order
+     * @param rules
+     *            the rules
+     */
+    public void putHost(final String host, final SiteRules rules) {
+	final Node node = insert(host);
+	if (null == node.hostRules) {
+	    this.size++;
+	}
+	node.hostRules = rules;
+    }
+
+    /**
+     * Returns the number of domains and hosts with rules.
+     * 
+     * @return the number of rules
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns the rules of a host.
+     * 
+     * @param host
+     *            the host
+     * @return the rules, {@link SiteRules#DEFAULT} when there are none
+     */
+    public SiteRules find(final HostName host) {
+	return findReversed(key(host));
+    }
+
+    /**
+     * Returns the rules of a host in reversed order, e.g. com.example.www, as
+     * returned by {@link DomainName#getAsReversedString()}.
+     * 
+     * @param reversedHost
+     *            the reversed host
+     * @return the rules, {@link SiteRules#DEFAULT} when there are none
+     */
+    public SiteRules findReversed(final String reversedHost) {
+	SiteRules result = SiteRules.DEFAULT;
+	Node node = this.root;
+	int labelStart = 0;
+	for (int i = 0; i <= reversedHost.length(); i++) {
+	    if (i == reversedHost.length() || reversedHost.charAt(i) == '.') {
+		node = node.child(reversedHost, labelStart, i);
+		if (null == node) {
+		    return result;
+		}
+		if (null != node.domainRules) {
+		    result = node.domainRules;
+		}
+		labelStart = i + 1;
+	    }
+	}
+	return null == node.hostRules ? result : node.hostRules;
+    }
+
+    private Node insert(final String host) {
+	final String key = key(new HostNameFactory().build(host));
+	Node node = this.root;
+	int labelStart = 0;
+	for (int i = 0; i <= key.length(); i++) {
+	    if (i == key.length() || key.charAt(i) == '.') {
+		Node child = node.child(key, labelStart, i);
+		if (null == child) {
+		    child = node.add(key.substring(labelStart, i));
+		}
+		node = child;
+		labelStart = i + 1;
+	    }
+	}
+	return node;
+    }
+
+    /**
+     * Returns the trie key of a host: the reversed domain name, or the ip
+     * address as is like {@link UrlUtil#reverseUrlOrder(String)} does.
+     */
+    private static String key(final HostName host) {
+	if (host instanceof DomainName) {
+	    return ((DomainName) host).getAsReversedString();
+	}
+	return host.getAsString();
+    }
+
+    /**
+     * A node with its children in an open addressing table keyed by label, so
+     * a label is found by its range without creating a string.
+     */
+    private static final class Node {
+	private String[] labels = new String[2];
+	private Node[] children = new Node[2];
+	private int childCount;
+	private SiteRules domainRules;
+	private SiteRules hostRules;
+
+	Node child(final String s, final int start, final int end) {
+	    if (this.childCount == 0) {
+		return null;
+	    }
+	    final int mask = this.labels.length - 1;
+	    for (int i = hash(s, start, end) & mask;; i = (i + 1) & mask) {
+		final String label = this.labels[i];
+		if (null == label) {
+		    return null;
+		}
+		if (label.length() == end - start && label.regionMatches(0, s, start, end - start)) {
+		    return this.children[i];
+		}
+	    }
+	}
+
+	Node add(final String label) {
+	    if ((this.childCount + 1) * 2 > this.labels.length) {
+		final String[] labels = this.labels;
+		final Node[] children = this.children;
+		this.labels = new String[labels.length * 2];
+		this.children = new Node[labels.length * 2];
+		for (int i = 0; i < labels.length; i++) {
+		    if (null != labels[i]) {
+			put(labels[i], children[i]);
+		    }
+		}
+	    }
+	    final Node child = new Node();
+	    put(label, child);
+	    this.childCount++;
+	    return child;
+	}
+
+	private void put(final String label, final Node child) {
+	    final int mask = this.labels.length - 1;
+	    int i = hash(label, 0, label.length()) & mask;
+	    while (null != this.labels[i]) {
+		i = (i + 1) & mask;
+	    }
+	    this.labels[i] = label;
+	    this.children[i] = child;
+	}
+
+	private static int hash(final String s, final int start, final int end) {
+	    int h = 0;
+	    for (int i = start; i < end; i++) {
+		h = 31 * h + s.charAt(i);
+	    }
+	    return h ^ (h >>> 16);
+	}
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The normalization rules of a site, see {@link SiteRuleTrie}: additional
+ * query parameters holding session ids, whether the path is case insensitive
+ * and the query delimiter. Instances are immutable.
+ */
+public final class SiteRules {
+    /**
+     * The rules of sites without rules of their own.
+     */
+    public static final SiteRules DEFAULT = new SiteRules(Collections.<String> emptyList(), false, '&');
+
+    private final List<String> sessionIdParameters;
+    private final boolean caseInsensitivePath;
+    private final char queryDelimiter;
+
+    /**
+     * Constructor.
+     * 
+     * @param sessionIdParameters
+     *            the names of query parameters removed with their values as
+     *            session ids, compared ignoring case, in addition to PHPSESSID
+     *            and JSESSIONID
+     * @param caseInsensitivePath
+     *            true to lowercase the path
+     * @param queryDelimiter
+     *            the delimiter of the query parameters, e.g. '&' or ';'
+     */
+    public SiteRules(final Collection<String> sessionIdParameters, final boolean caseInsensitivePath, final char queryDelimiter) {
+	if (queryDelimiter == '=') {
+	    throw new IllegalArgumentException("illegal query delimiter: " + queryDelimiter);
+	}
+	this.sessionIdParameters = Collections.unmodifiableList(new ArrayList<String>(sessionIdParameters));
+	this.caseInsensitivePath = caseInsensitivePath;
+	this.queryDelimiter = queryDelimiter;
+    }
+
+    public List<String> getSessionIdParameters() {
+	return this.sessionIdParameters;
+    }
+
+    public boolean isCaseInsensitivePath() {
+	return this.caseInsensitivePath;
+    }
+
+    public char getQueryDelimiter() {
+	return this.queryDelimiter;
+    }
+
+    /**
+     * Checks whether the given query parameter name is a session id of this
+     * site.
+     * 
+     * @param name
+     *            the parameter name
+     * @return true for a session id
+     */
+    public boolean isSessionIdParameter(final String name) {
+	for (final String sessionId : this.sessionIdParameters) {
+	    if (sessionId.equalsIgnoreCase(name)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    @Override
+    public String toString() {
+	return "SiteRules [sessionIdParameters=" + this.sessionIdParameters + ", caseInsensitivePath=" + this.caseInsensitivePath + ", queryDelimiter="
+		+ this.queryDelimiter + "]";
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>
+ * Computes split points for range partitioned stores, e.g. to pre-split an
+ * HBase table or for a total order partitioner, keyed by
+ * {@link URL#getNormalizedUrl()}. Raw urls are reservoir sampled from a stream
+ * of any length, the sample is normalized and sorted, and the split points are
+ * picked at equal distances from the sorted sample.
+ * </p>
+ * Optionally the split points are snapped to registrable domain boundaries as
+ * computed by {@link UrlUtil#siteToTopLevel(String)}, so all urls of one site
+ * end up in the same partition. This class is not thread safe.
+ */
+public class SplitPointCalculator {
+    private static final Comparator<byte[]> UTF8_ORDER = new Comparator<byte[]>() {
+	@Override
+	public int compare(final byte[] a, final byte[] b) {
+	    return Arrays.compareUnsigned(a, b);
+	}
+    };
+
+    private final String[] reservoir;
+    private final Random random;
+    private long seen;
+    private long next;
+    private double weight;
+
+    /**
+     * Constructor, initializing a calculator keeping the given number of
+     * samples.
+     * 
+     * @param sampleSize
+     *            the number of urls to sample
+     */
+    public SplitPointCalculator(final int sampleSize) {
+	this(sampleSize, new Random());
+    }
+
+    /**
+     * Constructor, initializing a calculator keeping the given number of
+     * samples.
+     * 
+     * @param sampleSize
+     *            the number of urls to sample
+     * @param random
+     *            the random number generator used for sampling
+     */
+    public SplitPointCalculator(final int sampleSize, final Random random) {
+	if (sampleSize < 1) {
+	    throw new IllegalArgumentException("sample size must be positive: " + sampleSize);
+	}
+	this.reservoir = new String[sampleSize];
+	this.random = random;
+    }
+
+    /**
+     * Offers the given raw url to the sample. Uses reservoir sampling with
+     * geometric skips (algorithm L), so most urls cost a counter increment
+     * only.
+     * 
+     * @param url
+     *            the raw url
+     */
+    public void add(final String url) {
+	final int k = this.reservoir.length;
+	if (this.seen < k) {
+	    this.reservoir[(int) this.seen] = url;
+	    if (this.seen == k - 1) {
+		this.weight = Math.exp(Math.log(nextRandom()) / k);
+		this.next = this.seen + skip() + 1;
+	    }
+	} else if (this.seen == this.next) {
+	    this.reservoir[this.random.nextInt(k)] = url;
+	    this.weight *= Math.exp(Math.log(nextRandom()) / k);
+	    this.next += skip() + 1;
+	}
+	this.seen++;
+    }
+
+    /**
+     * Returns the number of urls offered to the sample.
+     * 
+     * @return the number of urls seen
+     */
+    public long getSeen() {
+	return this.seen;
+    }
+
+    /**
+     * Computes the split points for the given number of partitions.
+     * 
+     * @param partitions
+     *            the number of partitions
+     * @param snapToSites
+     *            true to move split points to registrable domain boundaries
+     * @return the split points and the expected partition sizes
+     */
+    public Splits compute(final int partitions, final boolean snapToSites) {
+	if (partitions < 1) {
+	    throw new IllegalArgumentException("partitions must be positive: " + partitions);
+	}
+	final int size = (int) Math.min(this.seen, this.reservoir.length);
+	final List<byte[]> keys = new ArrayList<byte[]>(size);
+	for (int i = 0; i < size; i++) {
+	    try {
+		keys.add(new URL(this.reservoir[i]).getNormalizedUrl().getBytes(StandardCharsets.UTF_8));
+	    } catch (final MalformedURLException e) {
+		// malformed urls are not stored, hence not partitioned
+	    }
+	}
+	// the order of the stores, i.e. by unsigned utf-8 bytes
+	Collections.sort(keys, UTF8_ORDER);
+
+	final List<byte[]> splitPoints = new ArrayList<byte[]>(partitions - 1);
+	for (int i = 1; i < partitions && !keys.isEmpty(); i++) {
+	    byte[] splitPoint = keys.get((int) ((long) i * keys.size() / partitions));
+	    if (snapToSites) {
+		splitPoint = siteBoundary(new String(splitPoint, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+	    }
+	    if (splitPoints.isEmpty() || UTF8_ORDER.compare(splitPoints.get(splitPoints.size() - 1), splitPoint) < 0) {
+		splitPoints.add(splitPoint);
+	    }
+	}
+	if (!splitPoints.isEmpty() && UTF8_ORDER.compare(keys.get(0), splitPoints.get(0)) >= 0) {
+	    // the first partition would be empty
+	    splitPoints.remove(0);
+	}
+
+	final long[] expectedSizes = new long[splitPoints.size() + 1];
+	final double scale = keys.isEmpty() ? 0 : (double) this.seen / size;
+	int partition = 0;
+	int count = 0;
+	for (final byte[] key : keys) {
+	    while (partition < splitPoints.size() && UTF8_ORDER.compare(key, splitPoints.get(partition)) >= 0) {
+		expectedSizes[partition++] = Math.round(count * scale);
+		count = 0;
+	    }
+	    count++;
+	}
+	expectedSizes[partition] = Math.round(count * scale);
+	final List<String> points = new ArrayList<String>(splitPoints.size());
+	for (final byte[] splitPoint : splitPoints) {
+	    points.add(new String(splitPoint, StandardCharsets.UTF_8));
+	}
+	return new Splits(points, expectedSizes);
+    }
+
+    /**
+     * Returns the smallest key of the registrable domain of the given
+     * normalized url. A site like <i>com.example-foo</i> sorts within the keys
+     * of <i>com.example</i>, i.e. between com.example and com.example.www, in
+     * that case the boundary of com.example is returned.
+     */
+    static String siteBoundary(final String normalizedUrl) {
+	int end = normalizedUrl.length();
+	for (int i = 0; i < normalizedUrl.length(); i++) {
+	    final char c = normalizedUrl.charAt(i);
+	    if (c == '/' || c == '?') {
+		end = i;
+		break;
+	    }
+	}
+	final String site = UrlUtil.siteToTopLevel(normalizedUrl.substring(0, end));
+	final int labelStart = site.lastIndexOf('.') + 1;
+	for (int i = site.indexOf('-', labelStart + 1); i != -1; i = site.indexOf('-', i + 1)) {
+	    final String prefix = site.substring(0, i);
+	    if (UrlUtil.siteToTopLevel(prefix).equals(prefix)) {
+		return prefix;
+	    }
+	}
+	return site;
+    }
+
+    private double nextRandom() {
+	return 1.0 - this.random.nextDouble();
+    }
+
+    private long skip() {
+	return (long) Math.floor(Math.log(nextRandom()) / Math.log(1 - this.weight));
+    }
+
+    /**
+     * The computed split points and the expected number of urls per partition.
+     */
+    public static final class Splits {
+	private final List<String> splitPoints;
+	private final long[] expectedSizes;
+
+	Splits(final List<String> splitPoints, final long[] expectedSizes) {
+	    this.splitPoints = Collections.unmodifiableList(splitPoints);
+	    this.expectedSizes = expectedSizes;
+	}
+
+	/**
+	 * Returns the ascending split points, each one being the first key of
+	 * a partition. There may be less split points than requested when the
+	 * sample is small or snapping merged partitions.
+	 * 
+	 * @return the split points
+	 */
+	public List<String> getSplitPoints() {
+	    return this.splitPoints;
+	}
+
+	/**
+	 * Returns the expected number of urls per partition, extrapolated from
+	 * the sample.
+	 * 
+	 * @return one size per partition
+	 */
+	public long[] getExpectedSizes() {
+	    return this.expectedSizes.clone();
+	}
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The command line tool of the {@link SplitPointCalculator}. Reads raw urls
+ * line by line from standard input and writes one line per partition to
+ * standard output, its first key and the tab separated expected number of
+ * urls. The first key of the first partition is empty.
+ * 
+ * <pre>
+ * java ch.sentric.SplitPointTool partitions [sample-size] [--snap] &lt; urls
+ * </pre>
+ */
+public final class SplitPointTool {
+    private static final int DEFAULT_SAMPLE_SIZE = 100000;
+
+    private SplitPointTool() {
+	// tool
+    }
+
+    /**
+     * Runs the tool.
+     * 
+     * @param args
+     *            partitions [sample-size] [--snap]
+     * @throws IOException
+     *             when standard input can not be read
+     */
+    public static void main(final String[] args) throws IOException {
+	final Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+	try {
+	    run(args, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out);
+	} catch (final IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    System.err.println("usage: SplitPointTool partitions [sample-size] [--snap] < urls");
+	    System.exit(1);
+	}
+	out.flush();
+    }
+
+    /**
+     * Computes the split points of the urls read and writes the partitions.
+     */
+    static void run(final String[] args, final BufferedReader in, final Writer out) throws IOException {
+	if (args.length < 1) {
+	    throw new IllegalArgumentException("missing number of partitions");
+	}
+	final int partitions = Integer.parseInt(args[0]);
+	final int sampleSize = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : DEFAULT_SAMPLE_SIZE;
+	final boolean snap = "--snap".equals(args[args.length - 1]);
+	final SplitPointCalculator calculator = new SplitPointCalculator(sampleSize);
+	String line;
+	while ((line = in.readLine()) != null) {
+	    calculator.add(line.trim());
+	}
+	final SplitPointCalculator.Splits splits = calculator.compute(partitions, snap);
+	final List<String> splitPoints = splits.getSplitPoints();
+	final long[] expectedSizes = splits.getExpectedSizes();
+	for (int i = 0; i < expectedSizes.length; i++) {
+	    out.write(i == 0 ? "" : splitPoints.get(i - 1));
+	    out.write('\t');
+	    out.write(Long.toString(expectedSizes[i]));
+	    out.write('\n');
+	}
+    }
+}
@@ -0,0 +1,426 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.sentric.NormalizationMetrics.Rule;
+import ch.sentric.NormalizationMetrics.Stage;
+
+/**
+ * The built in {@link NormalizationStep}s. Applied in the order of
+ * {@link #standardSteps()} they produce the same normalized url as
+ * {@link URL#getNormalizedUrl()}. The host steps after {@link #IPV4_ADDRESS}
+ * leave ip addresses alone, {@link #STRIP_WWW} expects a lowercased host.
+ */
+public enum StandardStep implements NormalizationStep {
+    /** converts internationalized host names to ASCII, see {@link HostNameFactory} */
+    HOST_TO_ASCII {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    if (NON_ASCII.indexIn(url, 0, url.getHostEnd()) != -1) {
+		url.replace(0, url.getHostEnd(), HostNameFactory.toAscii(url.substring(0, url.getHostEnd())));
+	    }
+	}
+    },
+
+    /** detects an ip v4 host and writes it in canonical form */
+    IPV4_ADDRESS {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final int end = url.getHostEnd();
+	    if (end == 0 || !isDigit(url.charAt(0)) || !isDigit(url.charAt(end - 1))) {
+		return;
+	    }
+	    // four numbers up to 255 of at most three digits, as parsed by
+	    // IPv4Address, checked in place
+	    int numbers = 0;
+	    int value = 0;
+	    int digits = 0;
+	    boolean canonical = true;
+	    for (int i = 0; i <= end; i++) {
+		final char c = i == end ? '.' : url.charAt(i);
+		if (c == '.') {
+		    if (digits == 0 || value > 255 || ++numbers > 4) {
+			return;
+		    }
+		    value = 0;
+		    digits = 0;
+		} else if (isDigit(c) && digits < 3) {
+		    if (digits == 1 && value == 0) {
+			// a leading zero
+			canonical = false;
+		    }
+		    value = value * 10 + c - '0';
+		    digits++;
+		} else {
+		    return;
+		}
+	    }
+	    if (numbers != 4) {
+		return;
+	    }
+	    url.setIpAddress(true);
+	    if (!canonical) {
+		url.replace(0, end, new IPv4Address(IPv4Address.parseIPv4String(url.substring(0, end))).getAsString());
+	    }
+	}
+    },
+
+    /** lowercases the host and drops empty labels */
+    LOWERCASE_HOST {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final int end = url.getHostEnd();
+	    if (url.isIpAddress()) {
+		return;
+	    }
+	    if (end > MAX_HOST_LENGTH) {
+		throw new IllegalArgumentException("domain name too long: " + end);
+	    }
+	    for (int i = 0; i < end; i++) {
+		final char c = url.charAt(i);
+		if (c >= 0x80 || c == '.' && (i == 0 || i == end - 1 || url.charAt(i - 1) == '.')) {
+		    url.replace(0, end, DomainName.toLowerCase(url.substring(0, end)));
+		    return;
+		}
+	    }
+	    for (int i = 0; i < end; i++) {
+		final char c = url.charAt(i);
+		if (c >= 'A' && c <= 'Z') {
+		    url.setCharAt(i, (char) (c + ('a' - 'A')));
+		}
+	    }
+	}
+    },
+
+    /** strips all leading www labels from the host */
+    STRIP_WWW {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    if (url.isIpAddress()) {
+		return;
+	    }
+	    while (url.getHostEnd() >= 3 && url.regionEquals(0, 3, "www") && (url.getHostEnd() == 3 || url.charAt(3) == '.')) {
+		NormalizationMetrics.count(Rule.WWW_STRIPPED);
+		url.delete(0, Math.min(4, url.getHostEnd()));
+	    }
+	}
+    },
+
+    /** reverses the labels of the host, e.g. com.example.www */
+    REVERSE_HOST {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    if (url.isIpAddress()) {
+		return;
+	    }
+	    final int end = url.getHostEnd();
+	    reverse(url, 0, end);
+	    int labelStart = 0;
+	    for (int i = 0; i <= end; i++) {
+		if (i == end || url.charAt(i) == '.') {
+		    reverse(url, labelStart, i);
+		    labelStart = i + 1;
+		}
+	    }
+	}
+    },
+
+    /** removes the port, normalized urls don't contain ports */
+    REMOVE_PORT {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    url.delete(url.getPortStart(), url.getPortEnd());
+	}
+    },
+
+    /** removes the port when it is the default port of the scheme */
+    REMOVE_DEFAULT_PORT {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final int port = url.getPort();
+	    final String scheme = url.getScheme();
+	    if (port == 80 && "http".equals(scheme) || port == 443 && "https".equals(scheme) || port == 21 && "ftp".equals(scheme)) {
+		url.delete(url.getPortStart(), url.getPortEnd());
+	    }
+	}
+    },
+
+    /** removes a trailing jsessionid path parameter */
+    REMOVE_PATH_SESSION_ID {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final int start = url.getPathStart();
+	    final int end = url.getPathEnd();
+	    if (indexOf(url, start, end, ";jsessionid") != -1 || indexOf(url, start, end, ";JSESSIONID") != -1) {
+		NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		int last = end - 1;
+		while (url.charAt(last) != ';') {
+		    last--;
+		}
+		url.delete(last, end);
+	    }
+	}
+    },
+
+    /**
+     * removes . and .. segments from the path as in RFC 3986, section 5.2.4,
+     * not part of the standard steps
+     */
+    REMOVE_DOT_SEGMENTS {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final int start = url.getPathStart();
+	    final int end = url.getPathEnd();
+	    if (start == end || url.charAt(start) != '/') {
+		return;
+	    }
+	    // the output before w always ends with '/' and is never longer than
+	    // the input read so far
+	    int w = start + 1;
+	    for (int r = start + 1; r <= end;) {
+		int segmentEnd = r;
+		while (segmentEnd < end && url.charAt(segmentEnd) != '/') {
+		    segmentEnd++;
+		}
+		final int length = segmentEnd - r;
+		if (length == 2 && url.charAt(r) == '.' && url.charAt(r + 1) == '.') {
+		    if (w > start + 1) {
+			w--;
+			while (url.charAt(w - 1) != '/') {
+			    w--;
+			}
+		    }
+		} else if (length != 1 || url.charAt(r) != '.') {
+		    for (int i = r; i < segmentEnd; i++) {
+			url.setCharAt(w++, url.charAt(i));
+		    }
+		    if (segmentEnd < end) {
+			url.setCharAt(w++, '/');
+		    }
+		}
+		r = segmentEnd + 1;
+	    }
+	    url.delete(w, end);
+	}
+    },
+
+    /** decodes and encodes each path segment and drops trailing slashes */
+    REENCODE_PATH {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final long time = NormalizationMetrics.start();
+	    final int start = url.getPathStart();
+	    int end = url.getPathEnd();
+	    int trimmed = end;
+	    while (trimmed > start && url.charAt(trimmed - 1) == '/') {
+		trimmed--;
+	    }
+	    url.delete(trimmed, end);
+	    end = trimmed;
+	    int segmentStart = start;
+	    for (int i = start; i <= end; i++) {
+		if (i == end || url.charAt(i) == '/') {
+		    if (!PercentCodec.isReEncodedPathPart(url, segmentStart, i)) {
+			final String segment = PERCENT_CODEC.encodePathPart(PERCENT_CODEC.decode(url.substring(segmentStart, i)));
+			url.replace(segmentStart, i, segment);
+			end += segment.length() - (i - segmentStart);
+			i = segmentStart + segment.length();
+		    }
+		    segmentStart = i + 1;
+		}
+	    }
+	    NormalizationMetrics.stop(Stage.PATH_REENCODE, time);
+	}
+    },
+
+    /**
+     * parses the query into parameters like {@link QueryFactory}, dropping
+     * session ids
+     */
+    PARSE_QUERY {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    final long time = NormalizationMetrics.start();
+	    url.clearParameters();
+	    final int end = url.getQueryEnd();
+	    int state = START;
+	    int keyStart = -1;
+	    int keyEnd = -1;
+	    for (int i = url.getQueryStart(); i < end;) {
+		// a token is '=', '&' or a run of other characters
+		final char delimiter = url.charAt(i);
+		final int tokenStart = i;
+		if (delimiter == '=' || delimiter == '&') {
+		    i++;
+		} else {
+		    while (i < end && url.charAt(i) != '=' && url.charAt(i) != '&') {
+			i++;
+		    }
+		}
+		final boolean isDelimiter = i - tokenStart == 1 && (delimiter == '=' || delimiter == '&');
+		switch (state) {
+		case DELIMITER:
+		    if (isDelimiter && delimiter == '&') {
+			state = KEY;
+		    }
+		    break;
+		case KEY:
+		    if (isSessionId(url, tokenStart, i)) {
+			NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		    } else if (!isDelimiter) {
+			keyStart = tokenStart;
+			keyEnd = i;
+			state = EQUAL;
+		    }
+		    break;
+		case EQUAL:
+		    if (isDelimiter && delimiter == '=') {
+			state = VALUE;
+		    } else if (isDelimiter) {
+			url.addParameter(keyStart, keyEnd, keyEnd, keyEnd);
+			state = KEY;
+		    }
+		    break;
+		case VALUE:
+		    if (!isDelimiter) {
+			int valueEnd = i;
+			if (indexOf(url, tokenStart, i, ";jsessionid") != -1 || indexOf(url, tokenStart, i, ";JSESSIONID") != -1) {
+			    NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+			    while (url.charAt(valueEnd - 1) != ';') {
+				valueEnd--;
+			    }
+			    valueEnd--;
+			}
+			url.addParameter(keyStart, keyEnd, tokenStart, valueEnd);
+			state = DELIMITER;
+		    } else if (delimiter == '&') {
+			url.addParameter(keyStart, keyEnd, keyEnd, keyEnd);
+			state = KEY;
+		    }
+		    break;
+		default:
+		    if (isSessionId(url, tokenStart, i)) {
+			NormalizationMetrics.count(Rule.SESSION_ID_REMOVED);
+		    } else {
+			keyStart = tokenStart;
+			keyEnd = i;
+			state = EQUAL;
+		    }
+		    break;
+		}
+	    }
+	    NormalizationMetrics.stop(Stage.QUERY_BUILD, time);
+	}
+    },
+
+    /** removes tracking parameters, see {@link QueryFactory} */
+    FILTER_TRACKING_PARAMETERS {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    for (int i = url.getParameterCount() - 1; i >= 0; i--) {
+		if (QueryFactory.isFiltered(url, url.getKeyStart(i), url.getKeyEnd(i))) {
+		    NormalizationMetrics.count(Rule.TRACKING_PARAMETER_FILTERED);
+		    url.removeParameter(i);
+		}
+	    }
+	}
+    },
+
+    /** sorts the parameters by key and value */
+    SORT_QUERY {
+	@Override
+	public void apply(final UrlBuffer url) {
+	    if (url.getParameterCount() > 1) {
+		final long time = NormalizationMetrics.start();
+		url.sortParameters();
+		NormalizationMetrics.stop(Stage.QUERY_SORT, time);
+	    }
+	}
+    };
+
+    private static final int MAX_HOST_LENGTH = 0xFFFF;
+    private static final CharClass NON_ASCII = new CharClass("", 0, 0x80, true);
+    private static final PercentCodec PERCENT_CODEC = new PercentCodec();
+
+    // the states of the query parser
+    private static final int START = 0;
+    private static final int KEY = 1;
+    private static final int EQUAL = 2;
+    private static final int VALUE = 3;
+    private static final int DELIMITER = 4;
+
+    /**
+     * Returns the steps producing the same normalized url as
+     * {@link URL#getNormalizedUrl()}, in order. The list may be modified to
+     * assemble a custom pipeline.
+     * 
+     * @return the standard steps
+     */
+    public static List<NormalizationStep> standardSteps() {
+	return new ArrayList<NormalizationStep>(Arrays.<NormalizationStep> asList(HOST_TO_ASCII, IPV4_ADDRESS, LOWERCASE_HOST, STRIP_WWW, REVERSE_HOST,
+		REMOVE_PORT, REMOVE_PATH_SESSION_ID, REENCODE_PATH, PARSE_QUERY, FILTER_TRACKING_PARAMETERS, SORT_QUERY));
+    }
+
+    private static boolean isDigit(final char c) {
+	return c >= '0' && c <= '9';
+    }
+
+    private static void reverse(final UrlBuffer url, final int start, final int end) {
+	for (int i = start, j = end - 1; i < j; i++, j--) {
+	    final char c = url.charAt(i);
+	    url.setCharAt(i, url.charAt(j));
+	    url.setCharAt(j, c);
+	}
+    }
+
+    private static int indexOf(final UrlBuffer url, final int start, final int end, final String s) {
+	for (int i = start; i <= end - s.length(); i++) {
+	    if (url.regionEquals(i, i + s.length(), s)) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    private static boolean isSessionId(final UrlBuffer url, final int start, final int end) {
+	return equalsIgnoreCase(url, start, end, "PHPSESSID") || equalsIgnoreCase(url, start, end, "JSESSIONID");
+    }
+
+    /**
+     * Compares like {@link String#equalsIgnoreCase(String)}.
+     */
+    private static boolean equalsIgnoreCase(final UrlBuffer url, final int start, final int end, final String s) {
+	if (end - start != s.length()) {
+	    return false;
+	}
+	for (int i = 0; i < s.length(); i++) {
+	    final char c1 = url.charAt(start + i);
+	    final char c2 = s.charAt(i);
+	    if (c1 != c2) {
+		final char u1 = Character.toUpperCase(c1);
+		final char u2 = Character.toUpperCase(c2);
+		if (u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2)) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+}
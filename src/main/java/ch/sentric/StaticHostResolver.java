@@ -0,0 +1,131 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-memory {@link HostResolver}, e.g. for tests, optionally loaded from a
+ * file in hosts format. Never queries the DNS.
+ */
+public class StaticHostResolver implements HostResolver {
+    private final ConcurrentMap<String, List<InetAddress>> hosts = new ConcurrentHashMap<String, List<InetAddress>>();
+
+    /**
+     * Reads a file in hosts format, i.e. lines of an ip address followed by
+     * host names, '#' starting a comment.
+     * 
+     * @param file
+     *            the hosts file
+     * @return the resolver
+     * @throws IOException
+     *             when the file can not be read
+     */
+    public static StaticHostResolver fromHostsFile(final File file) throws IOException {
+	final StaticHostResolver resolver = new StaticHostResolver();
+	final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+	try {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		final int comment = line.indexOf('#');
+		final StringTokenizer tokenizer = new StringTokenizer(comment == -1 ? line : line.substring(0, comment));
+		if (tokenizer.countTokens() < 2) {
+		    continue;
+		}
+		final String ip = tokenizer.nextToken();
+		while (tokenizer.hasMoreTokens()) {
+		    resolver.add(tokenizer.nextToken(), ip);
+		}
+	    }
+	} finally {
+	    reader.close();
+	}
+	return resolver;
+    }
+
+    /**
+     * Adds an address of the given host.
+     * 
+     * @param host
+     *            the host name
+     * @param ip
+     *            the ip address literal, e.g. 192.168.1.2
+     * @return this resolver
+     * @throws UnknownHostException
+     *             when the ip is no address literal
+     */
+    public StaticHostResolver add(final String host, final String ip) throws UnknownHostException {
+	final InetAddress address = InetAddress.getByAddress(host, parse(ip));
+	final String key = host.toLowerCase(Locale.ENGLISH);
+	List<InetAddress> addresses = this.hosts.get(key);
+	if (null == addresses) {
+	    final List<InetAddress> created = new CopyOnWriteArrayList<InetAddress>();
+	    addresses = this.hosts.putIfAbsent(key, created);
+	    if (null == addresses) {
+		addresses = created;
+	    }
+	}
+	addresses.add(address);
+	return this;
+    }
+
+    /**
+     * Parses an ip v4 or ip v6 address literal without any lookup.
+     */
+    private static byte[] parse(final String ip) throws UnknownHostException {
+	if (ip.indexOf(':') == -1) {
+	    final long address = IPv4Address.parseIPv4(ip, 0, ip.length());
+	    if (address == IPv4Address.ILLEGAL_IPV4) {
+		throw new UnknownHostException("not an ip address: " + ip);
+	    }
+	    return new byte[] { (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address };
+	}
+	// InetAddress parses a value starting with a hex digit or ':' and
+	// containing ':' as ip v6 literal, failing instead of querying the DNS
+	if (Character.digit(ip.charAt(0), 16) == -1 && ip.charAt(0) != ':') {
+	    throw new UnknownHostException("not an ip address: " + ip);
+	}
+	for (int i = 0; i < ip.length(); i++) {
+	    final char c = ip.charAt(i);
+	    if (Character.digit(c, 16) == -1 && c != '.' && c != ':') {
+		throw new UnknownHostException("not an ip address: " + ip);
+	    }
+	}
+	return InetAddress.getByName(ip).getAddress();
+    }
+
+    @Override
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+	final List<InetAddress> addresses = this.hosts.get(host.toLowerCase(Locale.ENGLISH));
+	if (null == addresses) {
+	    throw new UnknownHostException(host);
+	}
+	return addresses.toArray(new InetAddress[0]);
+    }
+}
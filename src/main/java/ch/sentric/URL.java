@@ -20,9 +20,12 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.util.Locale;
 
 import org.apache.commons.lang3.StringUtils;
 
+import ch.sentric.NormalizationMetrics.Stage;
+
 /**
  * The url class.
  */
@@ -45,7 +48,60 @@ public class URL {
      */
     public URL(final String url) throws MalformedURLException {
 	this.givenInputUrl = url;
-	this.parse(url);
+	this.parse(url, null);
+    }
+
+    /**
+     * The constructor, initializing a url from {@link String} with the rules of
+     * its site, e.g. a query delimiter other than '&'.
+     * 
+     * @param url
+     *            as string
+     * @param siteRules
+     *            the rules per site
+     * @throws MalformedURLException
+     *             when url could not be parsed
+     */
+    public URL(final String url, final SiteRuleTrie siteRules) throws MalformedURLException {
+	this.givenInputUrl = url;
+	this.parse(url, siteRules);
+    }
+
+    /**
+     * The constructor, initializing a url from a range of a char sequence, e.g.
+     * a column of a log line. Only the range is copied, to keep it as given
+     * input url.
+     * 
+     * @param src
+     *            the chars holding the url
+     * @param start
+     *            the start of the url
+     * @param end
+     *            the end of the url, exclusive
+     * @throws MalformedURLException
+     *             when url could not be parsed
+     */
+    public URL(final CharSequence src, final int start, final int end) throws MalformedURLException {
+	this(src.subSequence(start, end).toString());
+    }
+
+    /**
+     * The constructor, initializing a url from a range of a char sequence with
+     * the rules of its site, see {@link #URL(CharSequence, int, int)}.
+     * 
+     * @param src
+     *            the chars holding the url
+     * @param start
+     *            the start of the url
+     * @param end
+     *            the end of the url, exclusive
+     * @param siteRules
+     *            the rules per site
+     * @throws MalformedURLException
+     *             when url could not be parsed
+     */
+    public URL(final CharSequence src, final int start, final int end, final SiteRuleTrie siteRules) throws MalformedURLException {
+	this(src.subSequence(start, end).toString(), siteRules);
     }
 
     /**
@@ -58,18 +114,87 @@ public class URL {
      */
     public URL(final URI uri) throws MalformedURLException {
 	this.givenInputUrl = uri.toString();
-	parse(uri.toString());
+	parse(uri.toString(), null);
     }
 
-    private void parse(final String url) throws MalformedURLException {
-	final java.net.URL urlObj = new java.net.URL(url);
+    /**
+     * The constructor, initializing a url from already parsed components. The
+     * given input url must parse to the same components.
+     */
+    URL(final String givenInputUrl, final String scheme, final Authority authority, final Path path, final Query query, final String fragment) {
+	this.givenInputUrl = givenInputUrl;
+	this.scheme = scheme;
+	this.authority = authority;
+	this.path = path;
+	this.query = query;
+	this.fragment = fragment;
+    }
+
+    private void parse(final String url, final SiteRuleTrie siteRules) throws MalformedURLException {
+	NormalizationMetrics.countUrl();
+	final long start = NormalizationMetrics.start();
+	final int[] offsets = new int[UrlView.OFFSETS];
+	final String splitScheme = UrlParser.split(url, offsets);
+	final String host;
+	final int hostStart;
+	final int hostEnd;
+	final int port;
+	final String userInfo;
+	final String path;
+	final String q;
+	final int queryStart;
+	final int queryEnd;
+	if (null == splitScheme) {
+	    final java.net.URL urlObj;
+	    try {
+		urlObj = new java.net.URL(url);
+	    } catch (final MalformedURLException e) {
+		NormalizationMetrics.countFailure(e);
+		throw e;
+	    }
+	    this.scheme = urlObj.getProtocol();
+	    host = urlObj.getHost();
+	    hostStart = 0;
+	    hostEnd = host.length();
+	    port = urlObj.getPort();
+	    userInfo = urlObj.getUserInfo();
+	    path = urlObj.getPath();
+	    q = null == urlObj.getQuery() ? "" : urlObj.getQuery();
+	    queryStart = 0;
+	    queryEnd = q.length();
+	    this.fragment = urlObj.getRef();
+	} else {
+	    // a common url, split in place like java.net.URL splits it
+	    this.scheme = splitScheme;
+	    host = url;
+	    hostStart = offsets[UrlView.HOST_START];
+	    hostEnd = offsets[UrlView.HOST_END];
+	    port = offsets[UrlView.PORT];
+	    final int authorityStart = offsets[UrlView.SCHEME_END] + 3;
+	    userInfo = hostStart == authorityStart ? null : url.substring(authorityStart, hostStart - 1);
+	    final int fragmentStart = offsets[UrlView.FRAGMENT_START];
+	    q = url;
+	    queryEnd = fragmentStart == -1 ? offsets[UrlView.END] : fragmentStart;
+	    queryStart = offsets[UrlView.QUERY_START] == -1 ? queryEnd : offsets[UrlView.QUERY_START] + 1;
+	    path = url.substring(offsets[UrlView.PATH_START], offsets[UrlView.QUERY_START] == -1 ? queryEnd : offsets[UrlView.QUERY_START]);
+	    this.fragment = fragmentStart == -1 ? null : url.substring(fragmentStart + 1, offsets[UrlView.END]);
+	}
+	NormalizationMetrics.stop(Stage.PARSE, start);
 
-	this.scheme = urlObj.getProtocol();
-	final HostName hostName = new HostNameFactory().build(urlObj.getHost());
-	this.authority = new Authority(hostName, urlObj.getPort(), urlObj.getUserInfo());
-	this.query = new QueryFactory().build(urlObj.getQuery());
-	this.path = new Path(urlObj.getPath());
-	this.fragment = urlObj.getRef();
+	final long hostBuildStart = NormalizationMetrics.start();
+	final HostName hostName;
+	try {
+	    hostName = new HostNameFactory().build(host, hostStart, hostEnd);
+	} catch (final IllegalArgumentException e) {
+	    final MalformedURLException malformed = new MalformedURLException("illegal host: " + e.getMessage());
+	    NormalizationMetrics.countFailure(malformed);
+	    throw malformed;
+	}
+	NormalizationMetrics.stop(Stage.HOST, hostBuildStart);
+	this.authority = new Authority(hostName, port, userInfo);
+	final SiteRules rules = null == siteRules ? SiteRules.DEFAULT : siteRules.find(hostName);
+	this.query = new QueryFactory().build(q, queryStart, queryEnd, rules);
+	this.path = new Path(rules.isCaseInsensitivePath() ? path.toLowerCase(Locale.ENGLISH) : path);
     }
 
     /**
@@ -134,14 +259,15 @@ public class URL {
     }
 
     /**
-     * Resolve the ip address from the authority.
+     * Resolve the ip address from the host name of the authority, ignoring
+     * user info and port. See {@link AsyncHostResolver} to resolve many urls.
      * 
      * @return ip address as string
      * @throws UnknownHostException
      *             when ip can not be resolved
      */
     public String resolveIp() throws UnknownHostException {
-	final String ip = InetAddress.getByName(this.getAuthority().getAsString()).getHostAddress();
+	final String ip = InetAddress.getByName(this.getAuthority().getHostName().getAsString()).getHostAddress();
 	if (ip.equals("127.0.0.1")) {
 	    throw new UnknownHostException("IP" + ip + "not valid");
 	}
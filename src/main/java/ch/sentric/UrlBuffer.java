@@ -0,0 +1,499 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The mutable url a {@link NormalizationPipeline} passes through its
+ * {@link NormalizationStep}s. The host, port, path and query are held in one
+ * buffer, in this order, with their offsets, e.g.
+ * <i>www.example.com:8080/a/b?x=1</i>. Steps edit the buffer in place, so no
+ * intermediate strings are created between steps.
+ * </p>
+ * <p>
+ * The query can be parsed into parameters, which are offsets into the buffer.
+ * Parameters can be removed and sorted without touching the buffer and are
+ * rendered by {@link #toString()}. They move along with edits before the query,
+ * changing the length of the query text drops them.
+ * </p>
+ * This class is not thread safe, a buffer can be reused with
+ * {@link #reset(String, String, int, String, String)}. See {@link UrlParser}
+ * to parse urls into a buffer without creating intermediate strings.
+ */
+public final class UrlBuffer implements CharSequence {
+    private final StringBuilder chars = new StringBuilder(128);
+    private String scheme;
+    private boolean ipAddress;
+
+    // the component boundaries, the host starts at 0 and the query ends at the
+    // end of the buffer
+    private int hostEnd;
+    private int pathStart;
+    private int pathEnd;
+
+    // key start, key end, value start, value end per parameter
+    private int[] parameters = new int[32];
+    private int parameterCount = -1;
+
+    /**
+     * Loads the components of a url, replacing the current ones.
+     * 
+     * @param scheme
+     *            the scheme, e.g. http
+     * @param host
+     *            the host
+     * @param port
+     *            the port or -1 when none
+     * @param path
+     *            the path, may be empty
+     * @param query
+     *            the query without '?', may be null
+     */
+    public void reset(final String scheme, final String host, final int port, final String path, final String query) {
+	this.scheme = scheme;
+	this.ipAddress = false;
+	this.parameterCount = -1;
+	this.chars.setLength(0);
+	this.chars.append(host);
+	this.hostEnd = this.chars.length();
+	if (port != -1) {
+	    this.chars.append(':').append(port);
+	}
+	this.pathStart = this.chars.length();
+	this.chars.append(path);
+	this.pathEnd = this.chars.length();
+	if (null != query && !query.isEmpty()) {
+	    this.chars.append('?').append(query);
+	}
+    }
+
+    /**
+     * Loads the components of a url from ranges of the given input, replacing
+     * the current ones without creating strings.
+     * 
+     * @param scheme
+     *            the scheme, e.g. http
+     * @param input
+     *            the input holding the components
+     * @param hostStart
+     *            the start of the host
+     * @param hostEnd
+     *            the end of the host
+     * @param port
+     *            the port or -1 when none
+     * @param pathStart
+     *            the start of the path
+     * @param pathEnd
+     *            the end of the path
+     * @param queryStart
+     *            the start of the query after '?' or -1 when none
+     * @param queryEnd
+     *            the end of the query
+     */
+    public void reset(final String scheme, final CharSequence input, final int hostStart, final int hostEnd, final int port, final int pathStart,
+	    final int pathEnd, final int queryStart, final int queryEnd) {
+	this.scheme = scheme;
+	this.ipAddress = false;
+	this.parameterCount = -1;
+	this.chars.setLength(0);
+	this.chars.append(input, hostStart, hostEnd);
+	this.hostEnd = this.chars.length();
+	if (port != -1) {
+	    this.chars.append(':').append(port);
+	}
+	this.pathStart = this.chars.length();
+	this.chars.append(input, pathStart, pathEnd);
+	this.pathEnd = this.chars.length();
+	if (queryStart != -1 && queryStart < queryEnd) {
+	    this.chars.append('?').append(input, queryStart, queryEnd);
+	}
+    }
+
+    public String getScheme() {
+	return this.scheme;
+    }
+
+    /**
+     * Returns whether a step identified the host as ip address, host steps
+     * leave ip addresses alone.
+     * 
+     * @return true for an ip address
+     */
+    public boolean isIpAddress() {
+	return this.ipAddress;
+    }
+
+    public void setIpAddress(final boolean ipAddress) {
+	this.ipAddress = ipAddress;
+    }
+
+    public int getHostStart() {
+	return 0;
+    }
+
+    public int getHostEnd() {
+	return this.hostEnd;
+    }
+
+    /**
+     * Returns the start of the port, including the ':'.
+     * 
+     * @return the start of the port, equal to its end when there is none
+     */
+    public int getPortStart() {
+	return this.hostEnd;
+    }
+
+    public int getPortEnd() {
+	return this.pathStart;
+    }
+
+    public int getPathStart() {
+	return this.pathStart;
+    }
+
+    public int getPathEnd() {
+	return this.pathEnd;
+    }
+
+    /**
+     * Returns the start of the query, after the '?'.
+     * 
+     * @return the start of the query, equal to its end when there is none
+     */
+    public int getQueryStart() {
+	return this.pathEnd == this.chars.length() ? this.pathEnd : this.pathEnd + 1;
+    }
+
+    public int getQueryEnd() {
+	return this.chars.length();
+    }
+
+    /**
+     * Returns the port.
+     * 
+     * @return the port or -1 when there is none
+     */
+    public int getPort() {
+	if (this.pathStart == this.hostEnd) {
+	    return -1;
+	}
+	int port = 0;
+	for (int i = this.hostEnd + 1; i < this.pathStart; i++) {
+	    port = port * 10 + this.chars.charAt(i) - '0';
+	}
+	return port;
+    }
+
+    @Override
+    public int length() {
+	return this.chars.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+	return this.chars.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+	return this.chars.subSequence(start, end);
+    }
+
+    /**
+     * Returns the given range as string.
+     * 
+     * @param start
+     *            the start, inclusive
+     * @param end
+     *            the end, exclusive
+     * @return the range
+     */
+    public String substring(final int start, final int end) {
+	return this.chars.substring(start, end);
+    }
+
+    /**
+     * Checks whether the given range equals the given string.
+     * 
+     * @param start
+     *            the start of the range
+     * @param end
+     *            the end of the range
+     * @param s
+     *            the string
+     * @return true when equal
+     */
+    public boolean regionEquals(final int start, final int end, final String s) {
+	if (end - start != s.length()) {
+	    return false;
+	}
+	for (int i = start; i < end; i++) {
+	    if (this.chars.charAt(i) != s.charAt(i - start)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Sets a character. Use {@link #replace(int, int, CharSequence)} to change
+     * the length.
+     * 
+     * @param index
+     *            the index
+     * @param c
+     *            the character
+     */
+    public void setCharAt(final int index, final char c) {
+	this.chars.setCharAt(index, c);
+    }
+
+    /**
+     * Replaces a range. Boundaries of components up to the start stay,
+     * boundaries from the end on move with the replaced text, and boundaries
+     * within the range move to the end of the replacement. Text inserted at a
+     * boundary thus belongs to the following component.
+     * 
+     * @param start
+     *            the start, inclusive
+     * @param end
+     *            the end, exclusive
+     * @param replacement
+     *            the replacement
+     */
+    public void replace(final int start, final int end, final CharSequence replacement) {
+	final int length = replacement.length();
+	moveParameters(start, end, length);
+	if (start == end) {
+	    this.chars.insert(start, replacement);
+	} else if (length == end - start) {
+	    for (int i = 0; i < length; i++) {
+		this.chars.setCharAt(start + i, replacement.charAt(i));
+	    }
+	} else {
+	    this.chars.replace(start, end, replacement.toString());
+	}
+	this.hostEnd = move(this.hostEnd, start, end, length);
+	this.pathStart = move(this.pathStart, start, end, length);
+	this.pathEnd = move(this.pathEnd, start, end, length);
+    }
+
+    /**
+     * Deletes a range, see {@link #replace(int, int, CharSequence)}.
+     * 
+     * @param start
+     *            the start, inclusive
+     * @param end
+     *            the end, exclusive
+     */
+    public void delete(final int start, final int end) {
+	if (start == end) {
+	    return;
+	}
+	moveParameters(start, end, 0);
+	this.chars.delete(start, end);
+	this.hostEnd = move(this.hostEnd, start, end, 0);
+	this.pathStart = move(this.pathStart, start, end, 0);
+	this.pathEnd = move(this.pathEnd, start, end, 0);
+    }
+
+    /**
+     * Moves the parsed parameters behind an edit before the query, drops them
+     * when the edit changes the length of the query.
+     */
+    private void moveParameters(final int start, final int end, final int length) {
+	final int delta = length - (end - start);
+	if (this.parameterCount <= 0 || delta == 0) {
+	    return;
+	}
+	if (end > this.pathEnd) {
+	    this.parameterCount = -1;
+	} else {
+	    for (int i = 0; i < this.parameterCount * 4; i++) {
+		this.parameters[i] += delta;
+	    }
+	}
+    }
+
+    private static int move(final int boundary, final int start, final int end, final int length) {
+	if (boundary <= start) {
+	    return boundary;
+	}
+	if (boundary >= end) {
+	    return boundary + length - (end - start);
+	}
+	return start + length;
+    }
+
+    /**
+     * Returns whether the query was parsed into parameters.
+     * 
+     * @return true when parsed
+     */
+    public boolean isQueryParsed() {
+	return this.parameterCount != -1;
+    }
+
+    /**
+     * Starts parsing the query, dropping parsed parameters.
+     */
+    public void clearParameters() {
+	this.parameterCount = 0;
+    }
+
+    /**
+     * Adds a parsed parameter, a key and a value within the query.
+     * 
+     * @param keyStart
+     *            the start of the key
+     * @param keyEnd
+     *            the end of the key
+     * @param valueStart
+     *            the start of the value
+     * @param valueEnd
+     *            the end of the value, equal to its start for none
+     */
+    public void addParameter(final int keyStart, final int keyEnd, final int valueStart, final int valueEnd) {
+	if (this.parameterCount == -1) {
+	    throw new IllegalStateException("query not being parsed");
+	}
+	if (keyStart < this.pathEnd || valueEnd > this.chars.length()) {
+	    throw new IllegalArgumentException("parameter outside of the query: " + keyStart + ", " + valueEnd);
+	}
+	if (this.parameters.length < (this.parameterCount + 1) * 4) {
+	    this.parameters = Arrays.copyOf(this.parameters, this.parameters.length * 2);
+	}
+	final int offset = this.parameterCount * 4;
+	this.parameters[offset] = keyStart;
+	this.parameters[offset + 1] = keyEnd;
+	this.parameters[offset + 2] = valueStart;
+	this.parameters[offset + 3] = valueEnd;
+	this.parameterCount++;
+    }
+
+    /**
+     * Returns the number of parsed parameters.
+     * 
+     * @return the number of parameters, 0 when not parsed
+     */
+    public int getParameterCount() {
+	return Math.max(0, this.parameterCount);
+    }
+
+    public int getKeyStart(final int parameter) {
+	return this.parameters[parameter * 4];
+    }
+
+    public int getKeyEnd(final int parameter) {
+	return this.parameters[parameter * 4 + 1];
+    }
+
+    public int getValueStart(final int parameter) {
+	return this.parameters[parameter * 4 + 2];
+    }
+
+    public int getValueEnd(final int parameter) {
+	return this.parameters[parameter * 4 + 3];
+    }
+
+    /**
+     * Removes a parsed parameter, keeping the order of the others.
+     * 
+     * @param parameter
+     *            the index of the parameter
+     */
+    public void removeParameter(final int parameter) {
+	System.arraycopy(this.parameters, (parameter + 1) * 4, this.parameters, parameter * 4, (this.parameterCount - parameter - 1) * 4);
+	this.parameterCount--;
+    }
+
+    /**
+     * Sorts the parsed parameters by key, then by value, comparing like
+     * {@link String#compareTo(String)}.
+     */
+    public void sortParameters() {
+	// insertion sort, queries are short and mostly sorted
+	for (int i = 1; i < this.parameterCount; i++) {
+	    for (int j = i; j > 0 && compareParameters(j - 1, j) > 0; j--) {
+		swapParameters(j - 1, j);
+	    }
+	}
+    }
+
+    private int compareParameters(final int a, final int b) {
+	final int keys = compare(getKeyStart(a), getKeyEnd(a), getKeyStart(b), getKeyEnd(b));
+	return keys != 0 ? keys : compare(getValueStart(a), getValueEnd(a), getValueStart(b), getValueEnd(b));
+    }
+
+    private int compare(final int start1, final int end1, final int start2, final int end2) {
+	final int length = Math.min(end1 - start1, end2 - start2);
+	for (int i = 0; i < length; i++) {
+	    final char c1 = this.chars.charAt(start1 + i);
+	    final char c2 = this.chars.charAt(start2 + i);
+	    if (c1 != c2) {
+		return c1 - c2;
+	    }
+	}
+	return (end1 - start1) - (end2 - start2);
+    }
+
+    private void swapParameters(final int a, final int b) {
+	for (int i = 0; i < 4; i++) {
+	    final int value = this.parameters[a * 4 + i];
+	    this.parameters[a * 4 + i] = this.parameters[b * 4 + i];
+	    this.parameters[b * 4 + i] = value;
+	}
+    }
+
+    /**
+     * Renders the url, the parsed parameters when the query was parsed.
+     * 
+     * @return the url
+     */
+    @Override
+    public String toString() {
+	if (this.parameterCount == -1) {
+	    return this.chars.toString();
+	}
+	if (this.parameterCount == 0) {
+	    return this.chars.substring(0, this.pathEnd);
+	}
+	return appendTo(new StringBuilder(this.chars.length() + this.parameterCount)).toString();
+    }
+
+    /**
+     * Appends the url as rendered by {@link #toString()} to the given builder.
+     * 
+     * @param builder
+     *            the builder
+     * @return the given builder
+     */
+    public StringBuilder appendTo(final StringBuilder builder) {
+	if (this.parameterCount == -1) {
+	    return builder.append(this.chars);
+	}
+	builder.append(this.chars, 0, this.pathEnd);
+	for (int i = 0; i < this.parameterCount; i++) {
+	    builder.append(i == 0 ? '?' : '&');
+	    builder.append(this.chars, getKeyStart(i), getKeyEnd(i)).append('=');
+	    builder.append(this.chars, getValueStart(i), getValueEnd(i));
+	}
+	return builder;
+    }
+}
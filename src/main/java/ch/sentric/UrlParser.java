@@ -0,0 +1,201 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+
+import ch.sentric.NormalizationMetrics.Stage;
+
+/**
+ * <p>
+ * A reusable parser normalizing urls into one {@link UrlBuffer}, for single
+ * threaded loops over millions of urls. The buffer, its parameter table and
+ * the component offsets are kept between urls, so once they have grown
+ * {@link #normalizeInto(StringBuilder)} creates no objects for common urls.
+ * </p>
+ * 
+ * <pre>
+ * final UrlParser parser = new UrlParser();
+ * final StringBuilder key = new StringBuilder();
+ * for (final CharSequence url : urls) {
+ *     key.setLength(0);
+ *     parser.reset(url).normalizeInto(key);
+ * }
+ * </pre>
+ * <p>
+ * Urls with http, https, ftp or file scheme and a printable ASCII host are
+ * split in place, others, e.g. with an ip v6 or internationalized host, are
+ * parsed by {@link java.net.URL}. The normalized urls are the ones of the
+ * pipeline, by default the ones of {@link URL#getNormalizedUrl()}. Path
+ * segments that need re-encoding still create strings.
+ * </p>
+ * This class is not thread safe.
+ */
+public final class UrlParser {
+    private static final String[] SCHEMES = { "http", "https", "ftp", "file" };
+
+    private final NormalizationPipeline pipeline;
+    private final UrlBuffer buffer = new UrlBuffer();
+    private final int[] offsets = new int[UrlView.OFFSETS];
+    private boolean loaded;
+    private boolean normalized;
+
+    /**
+     * Constructor, normalizing with the {@link NormalizationPipeline#standard()}
+     * pipeline.
+     */
+    public UrlParser() {
+	this(NormalizationPipeline.standard());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param pipeline
+     *            the pipeline normalizing the urls
+     */
+    public UrlParser(final NormalizationPipeline pipeline) {
+	this.pipeline = pipeline;
+    }
+
+    /**
+     * Parses the given url, replacing the current one.
+     * 
+     * @param url
+     *            the raw url
+     * @return this parser
+     * @throws MalformedURLException
+     *             when the url can not be parsed
+     */
+    public UrlParser reset(final CharSequence url) throws MalformedURLException {
+	this.loaded = false;
+	NormalizationMetrics.countUrl();
+	final long start = NormalizationMetrics.start();
+	if (!split(url)) {
+	    final java.net.URL parsed;
+	    try {
+		parsed = new java.net.URL(url.toString());
+	    } catch (final MalformedURLException e) {
+		NormalizationMetrics.countFailure(e);
+		throw e;
+	    }
+	    this.buffer.reset(parsed.getProtocol(), parsed.getHost(), parsed.getPort(), parsed.getPath(), parsed.getQuery());
+	}
+	NormalizationMetrics.stop(Stage.PARSE, start);
+	this.loaded = true;
+	this.normalized = false;
+	return this;
+    }
+
+    /**
+     * Splits the url into the buffer when it is a common one.
+     */
+    private boolean split(final CharSequence url) {
+	final int[] offsets = this.offsets;
+	final String scheme = split(url, offsets);
+	if (null == scheme) {
+	    return false;
+	}
+	final int queryStart = offsets[UrlView.QUERY_START];
+	final int fragmentStart = offsets[UrlView.FRAGMENT_START];
+	final int queryEnd = fragmentStart == -1 ? offsets[UrlView.END] : fragmentStart;
+	this.buffer.reset(scheme, url, offsets[UrlView.HOST_START], offsets[UrlView.HOST_END], offsets[UrlView.PORT], offsets[UrlView.PATH_START],
+		queryStart == -1 ? queryEnd : queryStart, queryStart == -1 ? -1 : queryStart + 1, queryEnd);
+	return true;
+    }
+
+    /**
+     * Splits the given url in place when it is a common one, i.e. one that
+     * {@link java.net.URL} splits the same way, see {@link UrlView#split}.
+     * 
+     * @param url
+     *            the url
+     * @param offsets
+     *            the offsets, at least {@link UrlView#OFFSETS} long
+     * @return the lowercase scheme or null when the url is to be parsed by
+     *         {@link java.net.URL}
+     */
+    static String split(final CharSequence url, final int[] offsets) {
+	try {
+	    UrlView.split(url, offsets);
+	} catch (final MalformedURLException e) {
+	    return null;
+	}
+	final String scheme = scheme(url, offsets[UrlView.START], offsets[UrlView.SCHEME_END]);
+	if (null == scheme) {
+	    return null;
+	}
+	final int hostEnd = offsets[UrlView.HOST_END];
+	for (int i = offsets[UrlView.HOST_START]; i < hostEnd; i++) {
+	    final char c = url.charAt(i);
+	    if (c <= ' ' || c >= 0x7F || c == '[' || c == ']') {
+		return null;
+	    }
+	}
+	return scheme;
+    }
+
+    /**
+     * Returns the lowercase scheme when it is one of {@link #SCHEMES}.
+     */
+    private static String scheme(final CharSequence url, final int start, final int end) {
+	for (final String scheme : SCHEMES) {
+	    if (end - start == scheme.length()) {
+		int i = 0;
+		while (i < scheme.length() && (url.charAt(start + i) | 0x20) == scheme.charAt(i)) {
+		    i++;
+		}
+		if (i == scheme.length()) {
+		    return scheme;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Normalizes the url, once after each {@link #reset(CharSequence)}, and
+     * appends it to the given builder.
+     * 
+     * @param builder
+     *            the builder
+     * @return the given builder
+     * @throws MalformedURLException
+     *             when the url can not be normalized
+     */
+    public StringBuilder normalizeInto(final StringBuilder builder) throws MalformedURLException {
+	if (!this.loaded) {
+	    throw new IllegalStateException("no url parsed");
+	}
+	if (!this.normalized) {
+	    this.loaded = false;
+	    this.pipeline.apply(this.buffer);
+	    this.loaded = true;
+	    this.normalized = true;
+	}
+	return this.buffer.appendTo(builder);
+    }
+
+    /**
+     * Returns the buffer holding the parsed url, normalized after
+     * {@link #normalizeInto(StringBuilder)}. It is reset by the next url.
+     * 
+     * @return the buffer
+     */
+    public UrlBuffer getUrl() {
+	return this.buffer;
+    }
+}
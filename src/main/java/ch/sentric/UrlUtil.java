@@ -21,10 +21,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
-import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import ch.sentric.NormalizationMetrics.Stage;
+
 /**
  * General {@code URL} utility class.
  */
@@ -38,6 +39,8 @@ public class UrlUtil {
     public static String ALL_3LEVEL_TLDs = ".act.edu.au .act.gov.au .bay.livefilestore.com .blog.friendster.com .blu.livefilestore.com .bo.nordland.no .bo.telemark.no .city.chiba.jp .city.fukuoka.jp .city.hiroshima.jp .city.kawasaki.jp .city.kitakyushu.jp .city.kobe.jp .city.kyoto.jp .city.nagoya.jp .city.niigata.jp .city.okayama.jp .city.osaka.jp .city.saitama.jp .city.sapporo.jp .city.sendai.jp .city.shizuoka.jp .city.yokohama.jp .cloud.prohosting.com .co.at.lv .co.at.pn .co.at.tc .co.uk.pn .co.uk.tc .com.au.ms .com.au.pn .com.au.tc .com.sapo.pt .do.sapo.pt .docs.google.com .en.alibaba.com .groups.live.com .gs.aa.no .gs.ah.no .gs.bu.no .gs.fm.no .gs.hl.no .gs.hm.no .gs.jan-mayen.no .gs.mr.no .gs.nl.no .gs.nt.no .gs.of.no .gs.ol.no .gs.oslo.no .gs.rl.no .gs.sf.no .gs.st.no .gs.svalbard.no .gs.tm.no .gs.tr.no .gs.va.no .gs.vf.no .heroy.more-og-romsdal.no .heroy.nordland.no .home.sapo.pt .homepage.t-online.de .lkd.co.im .ltd.co.im .me.uk.tc .metro.tokyo.jp .nes.akershus.no .nes.buskerud.no .no.sapo.pt .nsw.edu.au .nsw.gov.au .nt.edu.au .nt.gov.au .or.at.lv .org.uk.tc .os.hedmark.no .os.hordaland.no .pa.gov.pl .paginas.sapo.pt .perso.sfr.fr .plc.co.im .po.gov.pl .pref.aichi.jp .pref.akita.jp .pref.aomori.jp .pref.chiba.jp .pref.ehime.jp .pref.fukui.jp .pref.fukuoka.jp .pref.fukushima.jp .pref.gifu.jp .pref.gunma.jp .pref.hiroshima.jp .pref.hokkaido.jp .pref.hyogo.jp .pref.ibaraki.jp .pref.ishikawa.jp .pref.iwate.jp .pref.kagawa.jp .pref.kagoshima.jp .pref.kanagawa.jp .pref.kochi.jp .pref.kumamoto.jp .pref.kyoto.jp .pref.mie.jp .pref.miyagi.jp .pref.miyazaki.jp .pref.nagano.jp .pref.nagasaki.jp .pref.nara.jp .pref.niigata.jp .pref.oita.jp .pref.okayama.jp .pref.okinawa.jp .pref.osaka.jp .pref.saga.jp .pref.saitama.jp .pref.shiga.jp .pref.shimane.jp .pref.shizuoka.jp .pref.tochigi.jp .pref.tokushima.jp .pref.tottori.jp .pref.toyama.jp .pref.wakayama.jp .pref.yamagata.jp .pref.yamaguchi.jp .pref.yamanashi.jp .privat.t-online.de .profile.live.com .qld.edu.au .qld.gov.au .sa.edu.au .sa.gov.au .sakura.ne.jp .sande.more-og-romsdal.no .sande.vestfold.no .skydrive.live.com .so.gov.pl .spaces.live.com .spaces.msn.com .sr.gov.pl .starostwo.gov.pl .tas.edu.au .tas.gov.au .ug.gov.pl .um.gov.pl .upow.gov.pl .uw.gov.pl .valer.hedmark.no .valer.ostfold.no .vic.edu.au .vic.gov.au .wa.edu.au .wa.gov.au .web.aplus.net .web.fc2.com .web.officelive.com";
     public static final Pattern REGEXP = Pattern.compile("[^.]*.(" + ALL_TLDs.replace(" ", "|") + ALL_2LEVEL_TLDs.replace(" ", "|") + ALL_3LEVEL_TLDs.replace(" ", "|") + ")$");
 
+    private static final String ESCAPED_FRAGMENT = "_escaped_fragment_=";
+
     /**
      * retrieves the top-level-domain for an optimized-site-url in reversed
      * order.
@@ -62,8 +65,11 @@ public class UrlUtil {
      * @return top level-domain in normal order
      */
     public static String urlToTopLevel(final String url) {
+	final long start = NormalizationMetrics.start();
 	final Matcher matcher = REGEXP.matcher(url);
-	if (matcher.find()) {
+	final boolean found = matcher.find();
+	NormalizationMetrics.stop(Stage.SUFFIX_LOOKUP, start);
+	if (found) {
 	    return url.substring(matcher.start(), matcher.end());
 	} else {
 	    return url;
@@ -134,11 +140,77 @@ public class UrlUtil {
      * @return site in reversed order
      */
     public static String reverseUrlOrder(final String site) {
-	if (IPv4Address.parseIPv4String(site) > -1) {
-	    return site;
-	} else {
-	    return reverseString(site, ".");
+	return reverseUrlOrder(site, 0, site.length());
+    }
+
+    /**
+     * reverses the Order of the URL-Parts within the given range of a longer
+     * key, e.g. the host of a normalized url.
+     * 
+     * Example: the range 0..16 of uk.co.bbc.subdomain/path becomes
+     * subdomain.bbc.co.uk
+     * 
+     * @param key
+     *            the key containing the site
+     * @param start
+     *            the start of the site within key, inclusive
+     * @param end
+     *            the end of the site within key, exclusive
+     * @return site in reversed order
+     */
+    public static String reverseUrlOrder(final String key, final int start, final int end) {
+	if (isIPv4Candidate(key, start, end) && IPv4Address.parseIPv4String(key.substring(start, end)) > -1) {
+	    return key.substring(start, end);
+	}
+	// write the labels from the end, empty labels are dropped
+	final char[] reversed = new char[end - start];
+	int position = reversed.length;
+	int labelStart = start;
+	for (int i = start; i <= end; i++) {
+	    if (i == end || key.charAt(i) == '.') {
+		if (i > labelStart) {
+		    if (position < reversed.length) {
+			reversed[--position] = '.';
+		    }
+		    position -= i - labelStart;
+		    key.getChars(labelStart, i, reversed, position);
+		}
+		labelStart = i + 1;
+	    }
 	}
+	return new String(reversed, position, reversed.length - position);
+    }
+
+    /**
+     * reverses the Order of the URL-Parts of each site.
+     * 
+     * @param sites
+     *            urls without protocol
+     * @return sites in reversed order, at the same indexes
+     */
+    public static String[] reverseUrlOrder(final String[] sites) {
+	final String[] reversed = new String[sites.length];
+	for (int i = 0; i < sites.length; i++) {
+	    reversed[i] = reverseUrlOrder(sites[i]);
+	}
+	return reversed;
+    }
+
+    /**
+     * Checks cheaply whether the range may be an ip v4 address, i.e. starts
+     * with a digit and contains three dots.
+     */
+    private static boolean isIPv4Candidate(final String key, final int start, final int end) {
+	if (start == end || !Character.isDigit(key.charAt(start))) {
+	    return false;
+	}
+	int dots = 0;
+	for (int i = start; i < end; i++) {
+	    if (key.charAt(i) == '.') {
+		dots++;
+	    }
+	}
+	return dots == 3;
     }
 
     /**
@@ -182,7 +254,7 @@ public class UrlUtil {
      * @return true when the url is an escape-fragment url
      */
     public static boolean isEscapeFragmentUrl(final String url) {
-	return url.matches("^.*[?&]_escaped_fragment_=.*$");
+	return escapedFragmentDelimiter(url) != -1;
     }
 
     /**
@@ -204,9 +276,12 @@ public class UrlUtil {
 	    throw new IllegalArgumentException("the given URL is no escape-fragmentable url: " + url);
 	}
 	final String urlWithoutFragment = url.getUrlWithoutFragment();
-	final char delimiter = urlWithoutFragment.contains("?") ? '&' : '?';
+	final int queryStart = urlWithoutFragment.indexOf('?');
 	final String encodedFragment = EscapedFragmentEncoder.encode(url.getFragment().substring(1), Charset.defaultCharset().toString());
-	return new URL(urlWithoutFragment + delimiter + "_escaped_fragment_=" + encodedFragment);
+	final String escapedFragment = ESCAPED_FRAGMENT + encodedFragment;
+	final String query = queryStart == -1 ? escapedFragment : urlWithoutFragment.substring(queryStart + 1) + '&' + escapedFragment;
+	return new URL(urlWithoutFragment + (queryStart == -1 ? '?' : '&') + escapedFragment, url.getScheme(), url.getAuthority(), url.getPath(),
+		new QueryFactory().build(query), null);
     }
 
     /**
@@ -239,20 +314,33 @@ public class UrlUtil {
 	    throw new IllegalArgumentException("the given URL is no escape-fragmented url: " + url);
 	}
 	final String urlAsString = url.getGivenInputUrl();
-	final String encodedFragment = urlAsString.replaceFirst("^.*[?&]_escaped_fragment_=", "");
+	final int delimiter = escapedFragmentDelimiter(urlAsString);
+	final String encodedFragment = urlAsString.substring(delimiter + 1 + ESCAPED_FRAGMENT.length());
 	final String decodedFragment = URLDecoder.decode(encodedFragment, Charset.defaultCharset().toString());
-	return new URL(urlAsString.replaceFirst("[?&]_escaped_fragment_=.*$", "#!" + decodedFragment));
+	final String unescapedUrl = urlAsString.substring(0, delimiter) + "#!" + decodedFragment;
+	final int queryStart = urlAsString.indexOf('?');
+	if (urlAsString.lastIndexOf('#', delimiter) != -1 || queryStart == -1) {
+	    // the parameter is not part of the query, parse as is
+	    return new URL(unescapedUrl);
+	}
+	final Query query = queryStart == delimiter ? new Query() : new QueryFactory().build(urlAsString.substring(queryStart + 1, delimiter));
+	return new URL(unescapedUrl, url.getScheme(), url.getAuthority(), url.getPath(), query, "!" + decodedFragment);
     }
 
-    private static String reverseString(final String input, final String separator) {
-	final StringTokenizer tokenizer = new StringTokenizer(input, separator);
-	final StringBuilder sb = new StringBuilder();
-	boolean first = true;
-	while (tokenizer.hasMoreTokens()) {
-	    sb.insert(0, tokenizer.nextToken() + (first ? "" : separator));
-	    first = false;
+    /**
+     * Returns the index of the '?' or '&' preceding the last
+     * _escaped_fragment_ parameter of the given url or -1 when there is none.
+     */
+    private static int escapedFragmentDelimiter(final String url) {
+	int i = url.lastIndexOf(ESCAPED_FRAGMENT);
+	while (i > 0) {
+	    final char c = url.charAt(i - 1);
+	    if (c == '?' || c == '&') {
+		return i - 1;
+	    }
+	    i = url.lastIndexOf(ESCAPED_FRAGMENT, i - 1);
 	}
-	return sb.toString();
+	return -1;
     }
 
 }
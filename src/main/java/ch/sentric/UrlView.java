@@ -0,0 +1,407 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * A compact, read only view of a url as given, e.g. for large in-memory
+ * frontiers. Where a {@link URL} holds dozens of objects, a view holds the
+ * input and the offsets of its components only. The components are returned
+ * as {@link CharSequence}s sharing the characters of the input.
+ * </p>
+ * <p>
+ * Urls are split like {@link java.net.URL} splits them, but the components are
+ * not normalized and the scheme is not checked against the protocol handlers.
+ * Use {@link #toURL()} to normalize.
+ * </p>
+ * Instances are immutable.
+ */
+public final class UrlView {
+    private final String input;
+    // the offsets into the input, -1 when a component is missing
+    private final int start;
+    private final int schemeEnd;
+    private final int hostStart;
+    private final int hostEnd;
+    private final int port;
+    private final int pathStart;
+    private final int queryStart;
+    private final int fragmentStart;
+    private final int end;
+
+    // the indexes of the offsets written by split
+    static final int START = 0;
+    static final int SCHEME_END = 1;
+    static final int HOST_START = 2;
+    static final int HOST_END = 3;
+    static final int PORT = 4;
+    static final int PATH_START = 5;
+    static final int QUERY_START = 6;
+    static final int FRAGMENT_START = 7;
+    static final int END = 8;
+    static final int OFFSETS = 9;
+
+    /**
+     * The constructor, splitting the given url.
+     * 
+     * @param url
+     *            the url, surrounding white space is ignored
+     * @throws MalformedURLException
+     *             when the url has no scheme or authority or an illegal port
+     */
+    public UrlView(final String url) throws MalformedURLException {
+	final int[] offsets = new int[OFFSETS];
+	split(url, offsets);
+	this.input = url;
+	this.start = offsets[START];
+	this.schemeEnd = offsets[SCHEME_END];
+	this.hostStart = offsets[HOST_START];
+	this.hostEnd = offsets[HOST_END];
+	this.port = offsets[PORT];
+	this.pathStart = offsets[PATH_START];
+	this.queryStart = offsets[QUERY_START];
+	this.fragmentStart = offsets[FRAGMENT_START];
+	this.end = offsets[END];
+    }
+
+    /**
+     * Splits the given url like {@link java.net.URL}, writing the offsets of
+     * its components, see {@link #START} and following. The port is written
+     * as number.
+     * 
+     * @param url
+     *            the url
+     * @param offsets
+     *            the offsets, at least {@link #OFFSETS} long
+     * @throws MalformedURLException
+     *             when the url has no scheme or authority or an illegal port
+     */
+    static void split(final CharSequence url, final int[] offsets) throws MalformedURLException {
+	int start = 0;
+	int end = url.length();
+	while (start < end && url.charAt(start) <= ' ') {
+	    start++;
+	}
+	while (end > start && url.charAt(end - 1) <= ' ') {
+	    end--;
+	}
+	offsets[START] = start;
+	offsets[END] = end;
+
+	final int schemeEnd = schemeEnd(url, start, end);
+	if (schemeEnd == -1) {
+	    throw new MalformedURLException("no protocol: " + url);
+	}
+	offsets[SCHEME_END] = schemeEnd;
+	final int authorityStart = schemeEnd + 3;
+	if (authorityStart > end || url.charAt(schemeEnd + 1) != '/' || url.charAt(schemeEnd + 2) != '/') {
+	    throw new MalformedURLException("no authority: " + url);
+	}
+
+	int fragmentStart = -1;
+	int queryStart = -1;
+	int pathStart = end;
+	// like java.net.URL, a path starting with //// is a UNC name without
+	// authority
+	final boolean unc = authorityStart + 1 < end && url.charAt(authorityStart) == '/' && url.charAt(authorityStart + 1) == '/';
+	for (int i = unc ? schemeEnd + 1 : authorityStart; i < end; i++) {
+	    final char c = url.charAt(i);
+	    if (c == '#') {
+		fragmentStart = i;
+		break;
+	    } else if (c == '?' && queryStart == -1) {
+		queryStart = i;
+	    } else if (c == '/' && queryStart == -1 && pathStart == end) {
+		pathStart = i;
+	    }
+	}
+	if (pathStart == end) {
+	    pathStart = queryStart != -1 ? queryStart : fragmentStart != -1 ? fragmentStart : end;
+	}
+	offsets[PATH_START] = pathStart;
+	offsets[QUERY_START] = queryStart;
+	offsets[FRAGMENT_START] = fragmentStart;
+	offsets[HOST_START] = authorityStart;
+	offsets[HOST_END] = authorityStart;
+	offsets[PORT] = -1;
+	if (unc) {
+	    return;
+	}
+
+	int at = -1;
+	for (int i = authorityStart; i < pathStart; i++) {
+	    if (url.charAt(i) == '@') {
+		if (at != -1) {
+		    // not a server based authority, e.g. a@b@c
+		    return;
+		}
+		at = i;
+	    }
+	}
+	final int hostStart = at == -1 ? authorityStart : at + 1;
+	int hostEnd = pathStart;
+	int portStart = -1;
+	int i = hostStart;
+	if (hostStart < pathStart && url.charAt(hostStart) == '[') {
+	    // skip an ip v6 address
+	    while (i < pathStart && url.charAt(i) != ']') {
+		i++;
+	    }
+	    if (i == pathStart) {
+		i = hostStart;
+	    }
+	}
+	for (; i < pathStart; i++) {
+	    if (url.charAt(i) == ':') {
+		hostEnd = i;
+		portStart = i + 1;
+		break;
+	    }
+	}
+	offsets[HOST_START] = hostStart;
+	offsets[HOST_END] = hostEnd;
+	offsets[PORT] = portStart == -1 ? -1 : parsePort(url, portStart, pathStart);
+    }
+
+    /**
+     * Returns the end of a valid scheme, i.e. the index of its ':'.
+     */
+    private static int schemeEnd(final CharSequence url, final int start, final int end) {
+	for (int i = start; i < end; i++) {
+	    final char c = url.charAt(i);
+	    if (c == ':') {
+		return i > start ? i : -1;
+	    }
+	    final boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	    if (!letter && (i == start || !((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'))) {
+		return -1;
+	    }
+	}
+	return -1;
+    }
+
+    private static int parsePort(final CharSequence url, final int start, final int end) throws MalformedURLException {
+	if (start == end) {
+	    return -1;
+	}
+	long port = 0;
+	for (int i = start; i < end; i++) {
+	    final char c = url.charAt(i);
+	    port = port * 10 + c - '0';
+	    if (c < '0' || c > '9' || port > Integer.MAX_VALUE) {
+		throw new MalformedURLException("Invalid port number :" + url.subSequence(start, end));
+	    }
+	}
+	return (int) port;
+    }
+
+    private CharSequence slice(final int from, final int to) {
+	return CharBuffer.wrap(this.input, from, to);
+    }
+
+    public String getGivenInputUrl() {
+	return this.input;
+    }
+
+    /**
+     * Returns the scheme as given, e.g. HTTP.
+     * 
+     * @return the scheme
+     */
+    public CharSequence getScheme() {
+	return slice(this.start, this.schemeEnd);
+    }
+
+    /**
+     * Returns the user info.
+     * 
+     * @return the user info or null when none
+     */
+    public CharSequence getUserInfo() {
+	return this.hostStart == this.schemeEnd + 3 ? null : slice(this.schemeEnd + 3, this.hostStart - 1);
+    }
+
+    public CharSequence getHost() {
+	return slice(this.hostStart, this.hostEnd);
+    }
+
+    /**
+     * Returns the port.
+     * 
+     * @return the port or -1 when none
+     */
+    public int getPort() {
+	return this.port;
+    }
+
+    /**
+     * Returns the path, e.g. /a/b.
+     * 
+     * @return the path, empty when none
+     */
+    public CharSequence getPath() {
+	return slice(this.pathStart, pathEnd());
+    }
+
+    /**
+     * Returns the query without '?'.
+     * 
+     * @return the query or null when none
+     */
+    public CharSequence getQuery() {
+	return this.queryStart == -1 ? null : slice(this.queryStart + 1, this.fragmentStart == -1 ? this.end : this.fragmentStart);
+    }
+
+    /**
+     * Returns the fragment without '#'.
+     * 
+     * @return the fragment or null when none
+     */
+    public CharSequence getFragment() {
+	return this.fragmentStart == -1 ? null : slice(this.fragmentStart + 1, this.end);
+    }
+
+    private int pathEnd() {
+	return this.queryStart != -1 ? this.queryStart : this.fragmentStart != -1 ? this.fragmentStart : this.end;
+    }
+
+    /**
+     * Returns the segments of the path between '/'s, e.g. <i>a</i>, <i>""</i>
+     * and <i>b</i> of /a//b.
+     * 
+     * @return the path segments
+     */
+    public Iterable<CharSequence> getPathSegments() {
+	final int from = this.pathStart;
+	final int to = pathEnd();
+	return new Iterable<CharSequence>() {
+	    @Override
+	    public Iterator<CharSequence> iterator() {
+		// skip the leading '/'
+		return from == to ? new SliceIterator(to, to, '/', false) : new SliceIterator(from + 1, to, '/', true);
+	    }
+	};
+    }
+
+    /**
+     * Returns the parameters of the query between '&'s, e.g. <i>a=1</i> and
+     * <i>b</i> of a=1&&b. Empty parameters are skipped.
+     * 
+     * @return the query parameters
+     */
+    public Iterable<CharSequence> getQueryParameters() {
+	final int from = this.queryStart == -1 ? this.end : this.queryStart + 1;
+	final int to = this.fragmentStart == -1 ? this.end : this.fragmentStart;
+	return new Iterable<CharSequence>() {
+	    @Override
+	    public Iterator<CharSequence> iterator() {
+		return new SliceIterator(from, Math.max(from, to), '&', false);
+	    }
+	};
+    }
+
+    /**
+     * Parses the given url into a {@link URL}, e.g. to normalize it.
+     * 
+     * @return the url
+     * @throws MalformedURLException
+     *             when the url can't be parsed
+     */
+    public URL toURL() throws MalformedURLException {
+	return new URL(this.input);
+    }
+
+    @Override
+    public int hashCode() {
+	return this.input.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+	if (this == obj) {
+	    return true;
+	}
+	if (obj == null) {
+	    return false;
+	}
+	if (getClass() != obj.getClass()) {
+	    return false;
+	}
+	return this.input.equals(((UrlView) obj).input);
+    }
+
+    @Override
+    public String toString() {
+	return this.input;
+    }
+
+    /**
+     * Iterates the slices of a range between a separator.
+     */
+    private final class SliceIterator implements Iterator<CharSequence> {
+	private final int to;
+	private final char separator;
+	private final boolean keepEmpty;
+	private int next;
+
+	SliceIterator(final int from, final int to, final char separator, final boolean keepEmpty) {
+	    this.to = to;
+	    this.separator = separator;
+	    this.keepEmpty = keepEmpty;
+	    this.next = from;
+	    skipEmpty();
+	}
+
+	private void skipEmpty() {
+	    if (!this.keepEmpty) {
+		while (this.next < this.to && UrlView.this.input.charAt(this.next) == this.separator) {
+		    this.next++;
+		}
+	    }
+	}
+
+	@Override
+	public boolean hasNext() {
+	    // a trailing separator is followed by an empty slice
+	    return this.next < this.to || this.keepEmpty && this.next == this.to && UrlView.this.input.charAt(this.to - 1) == this.separator;
+	}
+
+	@Override
+	public CharSequence next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    int sliceEnd = this.next;
+	    while (sliceEnd < this.to && UrlView.this.input.charAt(sliceEnd) != this.separator) {
+		sliceEnd++;
+	    }
+	    final CharSequence slice = slice(this.next, sliceEnd);
+	    this.next = sliceEnd + 1;
+	    skipEmpty();
+	    return slice;
+	}
+
+	@Override
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
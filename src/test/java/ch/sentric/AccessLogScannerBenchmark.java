@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures scanning a 100000 line combined access log, about 24 MB, with
+ * referrers, on as many threads as processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogScannerBenchmark {
+    private static final String[] PATHS = { "/display/te%7Est?lang=en&utm_source=x&article=fred&PHPSESSID=abc", "/blog/why-hadoop-and-why-now",
+	    "/news/world?b=2&a=1", "/", "/images/logo.png", "/search?q=url+normalization&page=" };
+
+    private File log;
+    private AccessLogScanner scanner;
+
+    @Setup
+    public void setUp() throws IOException {
+	this.log = File.createTempFile("access", ".log");
+	final Random random = new Random(1);
+	final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.log), StandardCharsets.UTF_8));
+	try {
+	    for (int i = 0; i < 100000; i++) {
+		out.write("192.168.1." + random.nextInt(256) + " - - [10/Oct/2012:13:55:36 +0200] \"GET " + PATHS[random.nextInt(PATHS.length)]
+			+ random.nextInt(1000) + " HTTP/1.1\" 200 " + random.nextInt(99999) + " \"http://www.google.com/search?q=" + random.nextInt(100)
+			+ "\" \"Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36\"\n");
+	    }
+	} finally {
+	    out.close();
+	}
+	this.scanner = new AccessLogScanner("http", "www.example.com", false, true, Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+	this.scanner.close();
+	this.log.delete();
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+	return this.scanner.scan(this.log);
+    }
+}
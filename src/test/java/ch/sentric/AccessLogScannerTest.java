@@ -0,0 +1,153 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The {@link AccessLogScanner} test class.
+ */
+public class AccessLogScannerTest {
+    private File log;
+
+    @Before
+    public void setUp() throws IOException {
+	this.log = File.createTempFile("access", ".log");
+    }
+
+    @After
+    public void tearDown() {
+	this.log.delete();
+    }
+
+    @Test
+    public void scanShouldCountRequestTargets() throws IOException {
+	write("1.2.3.4 - - [10/Oct/2012:13:55:36 +0200] \"GET /a/?b=2&a=1 HTTP/1.1\" 200 2326 \"-\" \"Mozilla/5.0\"\n"
+		+ "1.2.3.4 - frank [10/Oct/2012:13:55:37 +0200] \"GET /a?a=1&b=2&utm_source=x HTTP/1.1\" 200 2326 \"http://www.google.com/search?q=a\" \"Mozilla/5.0\"\n"
+		+ "1.2.3.4 - - [10/Oct/2012:13:55:38 +0200] \"GET http://Other.org/x HTTP/1.0\" 200 12 \"-\" \"-\"\n"
+		+ "1.2.3.4 - - [10/Oct/2012:13:55:39 +0200] \"CONNECT other.org:443 HTTP/1.0\" 200 12 \"-\" \"-\"\n"
+		+ "1.2.3.4 - - [10/Oct/2012:13:55:40 +0200] \"-\" 400 0 \"-\" \"-\"\n" + "garbage\n"
+		+ "1.2.3.4 - - [10/Oct/2012:13:55:41 +0200] \"GET /q\\x22%20\\\"x HTTP/1.1\" 200 1 \"-\" \"-\"");
+	final AccessLogScanner scanner = new AccessLogScanner("http", "www.example.com", false, false, 2);
+	try {
+	    Assert.assertEquals(7, scanner.scan(this.log));
+	    Assert.assertEquals(4, scanner.getUrls());
+	    Assert.assertEquals(0, scanner.getMalformed());
+	    Assert.assertEquals(2, scanner.getCount("com.example/a?a=1&b=2"));
+	    Assert.assertEquals(1, scanner.getCount("org.other/x"));
+	    Assert.assertEquals(1, scanner.getCount(new URL("http://example.com/q\"%20\"x").getNormalizedUrl()));
+	    final StringWriter out = new StringWriter();
+	    Assert.assertEquals(3, scanner.writeTo(out));
+	    Assert.assertTrue(out.toString(), out.toString().startsWith("com.example/a?a=1&b=2\t2\n"));
+	} finally {
+	    scanner.close();
+	}
+    }
+
+    @Test
+    public void scanShouldUseHostFieldAndReferrers() throws IOException {
+	write("shop.example.com:80 1.2.3.4 - - [10/Oct/2012:13:55:36 +0200] \"GET /cart HTTP/1.1\" 200 1 \"http://www.example.com/\" \"-\"\n"
+		+ "- 1.2.3.4 - - [10/Oct/2012:13:55:36 +0200] \"GET /cart HTTP/1.1\" 200 1 \"not a url\" \"-\"\n");
+	final AccessLogScanner scanner = new AccessLogScanner("http", "www.example.com", true, true, 1);
+	try {
+	    Assert.assertEquals(2, scanner.scan(this.log));
+	    Assert.assertEquals(4, scanner.getUrls());
+	    Assert.assertEquals(1, scanner.getMalformed());
+	    Assert.assertEquals(1, scanner.getCount("com.example.shop/cart"));
+	    Assert.assertEquals(1, scanner.getCount("com.example/cart"));
+	    Assert.assertEquals(1, scanner.getCount("com.example"));
+	} finally {
+	    scanner.close();
+	}
+    }
+
+    @Test
+    public void scanShouldDecodeUtf8() throws IOException {
+	write("1.2.3.4 - - [10/Oct/2012:13:55:36 +0200] \"GET /bär HTTP/1.1\" 200 1 \"-\" \"-\"\n");
+	final AccessLogScanner scanner = new AccessLogScanner("http", "example.com", false, false, 1);
+	try {
+	    scanner.scan(this.log);
+	    Assert.assertEquals(1, scanner.getCount(new URL("http://example.com/bär").getNormalizedUrl()));
+	} finally {
+	    scanner.close();
+	}
+    }
+
+    @Test
+    public void scanShouldCountAllChunks() throws IOException {
+	final Random random = new Random(5);
+	final Map<String, Long> expected = new HashMap<String, Long>();
+	final StringBuilder lines = new StringBuilder();
+	for (int i = 0; i < 5000; i++) {
+	    final String path = "/p" + random.nextInt(300) + (random.nextBoolean() ? "/" : "?x=" + random.nextInt(3));
+	    lines.append("10.0.0.1 - - [10/Oct/2012:13:55:36 +0200] \"GET ").append(path).append(" HTTP/1.1\" 200 ").append(random.nextInt(9999))
+		    .append(" \"-\" \"Mozilla\"\n");
+	    final String key = new URL("https://example.com" + path).getNormalizedUrl();
+	    expected.put(key, expected.containsKey(key) ? expected.get(key) + 1 : 1L);
+	}
+	write(lines.toString());
+	final AccessLogScanner scanner = new AccessLogScanner("https", "example.com", false, false, 3, 4096);
+	try {
+	    // twice, to merge the counts of several logs
+	    Assert.assertEquals(5000, scanner.scan(this.log));
+	    Assert.assertEquals(5000, scanner.scan(this.log));
+	    Assert.assertEquals(10000, scanner.getLines());
+	    for (final Map.Entry<String, Long> entry : expected.entrySet()) {
+		Assert.assertEquals(entry.getKey(), 2 * entry.getValue(), scanner.getCount(entry.getKey()));
+	    }
+	    Assert.assertEquals(expected.size(), scanner.writeTo(new StringWriter()));
+	} finally {
+	    scanner.close();
+	}
+    }
+
+    @Test
+    public void writeToShouldOrderByUtf8Bytes() throws IOException {
+	// U+FF21 sorts after U+1F600 in utf-16 but before it in utf-8
+	write("1.2.3.4 - - [10/Oct/2012:13:55:36 +0200] \"GET /?q=\uD83D\uDE00 HTTP/1.1\" 200 1 \"-\" \"-\"\n"
+		+ "1.2.3.4 - - [10/Oct/2012:13:55:37 +0200] \"GET /?q=\uFF21 HTTP/1.1\" 200 1 \"-\" \"-\"\n");
+	final AccessLogScanner scanner = new AccessLogScanner("http", "example.com", false, false, 1);
+	try {
+	    scanner.scan(this.log);
+	    final StringWriter out = new StringWriter();
+	    Assert.assertEquals(2, scanner.writeTo(out));
+	    Assert.assertEquals("com.example?q=\uFF21\t1\ncom.example?q=\uD83D\uDE00\t1\n", out.toString());
+	} finally {
+	    scanner.close();
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectNoThreads() {
+	new AccessLogScanner("http", "example.com", false, false, 0);
+    }
+
+    private void write(final String lines) throws IOException {
+	Files.write(this.log.toPath(), lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
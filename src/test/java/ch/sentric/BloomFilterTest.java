@@ -0,0 +1,113 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link BloomFilter} test class.
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void putShouldReportNewUrls() throws MalformedURLException {
+	final BloomFilter filter = BloomFilter.create(1000, 0.01);
+	Assert.assertFalse(filter.mightContain(new URL("http://www.example.com/bar.html")));
+	Assert.assertTrue(filter.put(new URL("http://www.example.com/bar.html")));
+	Assert.assertFalse(filter.put(new URL("http://example.com:80/bar.html")));
+	Assert.assertTrue(filter.mightContain(new URL("http://EXAMPLE.com/bar.html")));
+    }
+
+    @Test
+    public void createShouldSizeForFalsePositiveRate() {
+	final BloomFilter filter = BloomFilter.create(100000, 0.01);
+	Assert.assertEquals(6, filter.getHashes());
+	Assert.assertTrue(filter.getBits() >= 958506);
+	Assert.assertTrue(BloomFilter.falsePositiveRate(filter.getBits() / 100000.0, filter.getHashes()) <= 0.01);
+    }
+
+    @Test
+    public void mightContainShouldRespectFalsePositiveRate() {
+	final BloomFilter filter = BloomFilter.create(100000, 0.001);
+	for (int i = 0; i < 100000; i++) {
+	    filter.put(Fingerprint.of("com.example/" + i));
+	}
+	for (int i = 0; i < 100000; i++) {
+	    Assert.assertTrue(filter.mightContain(Fingerprint.of("com.example/" + i)));
+	}
+	int falsePositives = 0;
+	for (int i = 0; i < 1000000; i++) {
+	    if (filter.mightContain(Fingerprint.of("org.example/" + i))) {
+		falsePositives++;
+	    }
+	}
+	// 1000 expected, with a standard deviation of about 32
+	Assert.assertTrue("false positives: " + falsePositives, falsePositives < 1150);
+    }
+
+    @Test
+    public void loadShouldReturnSavedFilter() throws IOException {
+	final File file = File.createTempFile("filter", ".bloom");
+	file.deleteOnExit();
+	final BloomFilter filter = BloomFilter.create(1000, 0.001);
+	filter.put(Fingerprint.of("ch.sentric/blog"));
+	filter.save(file);
+
+	final BloomFilter loaded = BloomFilter.load(file);
+	Assert.assertEquals(filter.getHashes(), loaded.getHashes());
+	Assert.assertEquals(filter.getBits(), loaded.getBits());
+	Assert.assertTrue(loaded.mightContain(Fingerprint.of("ch.sentric/blog")));
+	Assert.assertFalse(loaded.put(Fingerprint.of("ch.sentric/blog")));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadShouldRejectPartialBlock() throws IOException {
+	load(7, 12);
+    }
+
+    @Test(expected = IOException.class)
+    public void loadShouldRejectEmptyFilter() throws IOException {
+	load(7, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void loadShouldRejectIllegalHashes() throws IOException {
+	load(0, 8);
+    }
+
+    private static BloomFilter load(final int hashes, final int words) throws IOException {
+	final File file = File.createTempFile("filter", ".bloom");
+	file.deleteOnExit();
+	final BloomFilter filter = BloomFilter.create(1000, 0.001);
+	filter.save(file);
+	final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	try {
+	    raf.seek(8);
+	    raf.writeInt(hashes);
+	    raf.writeInt(words);
+	    raf.setLength(16 + words * 8L);
+	} finally {
+	    raf.close();
+	}
+	return BloomFilter.load(file);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link CharClass} scan and the normalization of long, query
+ * heavy urls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharClassBenchmark {
+    private static final CharClass NEED_ENCODING = new CharClass("#%&+", 0x21, 0x7F, false);
+    private static final String QUERY = "/search/results/page/index.html?category=electronics-and-computers&subcategory=laptops-notebooks-ultrabooks"
+	    + "&manufacturer=example-corporation&price_min=100&price_max=2500&sort_order=relevance-descending&items_per_page=48&view_mode=grid"
+	    + "&session_tracking_token=a1b2c3d4e5f6a7b8c9d0e1f2a3b4c5d6e7f8a9b0";
+
+    @Param({ "64", "256", "1024" })
+    public int length;
+
+    private String clean;
+    private String url;
+
+    @Setup
+    public void setUp() {
+	final StringBuilder builder = new StringBuilder();
+	while (builder.length() < this.length) {
+	    builder.append(QUERY.replace('&', '=').replace('?', '/'));
+	}
+	this.clean = builder.substring(0, this.length);
+	final StringBuilder url = new StringBuilder("http://www.example.com").append(QUERY);
+	for (int i = 0; url.length() < this.length; i++) {
+	    url.append("&filter").append(i).append("=value-").append(i);
+	}
+	this.url = url.toString();
+    }
+
+    @Benchmark
+    public int scan() {
+	return NEED_ENCODING.indexIn(this.clean);
+    }
+
+    @Benchmark
+    public String normalizeLongUrl() throws MalformedURLException {
+	return new URL(this.url).getNormalizedUrl();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link CharClass} test class.
+ */
+public class CharClassTest {
+    private static final CharClass RESERVED = new CharClass("%/?#", 0x20, 0x7F, true);
+    private static final CharClass UPPER_CASE = new CharClass("ABCDEFGHIJKLMNOPQRSTUVWXYZ", 0, 0, false);
+
+    @Test
+    public void indexInShouldFindFirstMember() {
+	Assert.assertEquals(3, RESERVED.indexIn("abc/def?"));
+	Assert.assertEquals(-1, RESERVED.indexIn("abcdef"));
+	Assert.assertEquals(-1, RESERVED.indexIn(""));
+	Assert.assertEquals(1, UPPER_CASE.indexIn("aZ"));
+    }
+
+    @Test
+    public void indexInShouldFindBoundaries() {
+	Assert.assertEquals(1, RESERVED.indexIn("a\u001f"));
+	Assert.assertEquals(-1, RESERVED.indexIn("a "));
+	Assert.assertEquals(1, RESERVED.indexIn("a\u007f"));
+	Assert.assertEquals(-1, RESERVED.indexIn("a~"));
+    }
+
+    @Test
+    public void indexInShouldHandleCharactersAboveLatin1() {
+	Assert.assertEquals(1, RESERVED.indexIn("a€"));
+	Assert.assertEquals(1, RESERVED.indexIn("a😀"));
+	Assert.assertEquals(-1, UPPER_CASE.indexIn("a€Ł"));
+	Assert.assertEquals(3, UPPER_CASE.indexIn("😀?Z"));
+    }
+
+    @Test
+    public void indexInShouldRespectRange() {
+	final String s = "/a/b/";
+	Assert.assertEquals(2, RESERVED.indexIn(s, 1, s.length()));
+	Assert.assertEquals(-1, RESERVED.indexIn(s, 1, 2));
+	Assert.assertEquals(4, RESERVED.indexIn(s, 3, s.length()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectMembersAboveLatin1() {
+	new CharClass("€", 0, 0, false);
+    }
+}
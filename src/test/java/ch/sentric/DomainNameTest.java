@@ -59,6 +59,33 @@ public class DomainNameTest {
 	Assert.assertEquals("obscure.www.net", new DomainName("net.www.obscure").getOptimizedForProximityOrder());
     }
 
+    @Test
+    public void emptyLabelsShouldBeDropped() {
+	Assert.assertEquals("koch.ro", new DomainName(".KOCH..ro.").getAsString());
+	Assert.assertEquals("ro.koch", new DomainName(".KOCH..ro.").getAsReversedString());
+	Assert.assertEquals("", new DomainName("..").getAsString());
+	Assert.assertEquals("", new DomainName("www").getOptimizedForProximityOrder());
+    }
+
+    @Test
+    public void getOptimizedForProximityOrderShouldStripAllLeadingWWW() {
+	Assert.assertEquals("ro.www.koch", new DomainName("www.WWW.www.koch.www.ro").getOptimizedForProximityOrder());
+    }
+
+    @Test
+    public void lowerCaseDomainShouldBeKept() {
+	final String domain = "www.koch.ro";
+	Assert.assertSame(domain, new DomainName(domain).getAsString());
+    }
+
+    @Test
+    public void equalsShouldIgnoreCase() {
+	final DomainName domain1 = new DomainName("GameSpot.com");
+	final DomainName domain2 = new DomainName("gamespot.COM");
+	Assert.assertEquals(domain1, domain2);
+	Assert.assertEquals(domain1.hashCode(), domain2.hashCode());
+    }
+
     @Test
     public void equalsShouldReturnTrue() {
 	final DomainName domain1 = new DomainName("gamespot.com");
@@ -62,6 +62,33 @@ public class EscapedFragmentEncoderTest {
 	assertEncoding("key1=value1&key2=value2", "key1=value1%26key2=value2");
     }
 
+    @Test
+    public void encodeShouldReturnUnchangedInstance() throws UnsupportedEncodingException {
+	final String s = "key1=value1/key2=value2";
+	Assert.assertSame(s, EscapedFragmentEncoder.encode(s, "UTF-8"));
+    }
+
+    @Test
+    public void encodeShouldUseUppercaseHex() throws UnsupportedEncodingException {
+	Assert.assertEquals("a%2B%7Fb%0A", EscapedFragmentEncoder.encode("a+\u007fb\n", "UTF-8"));
+    }
+
+    @Test
+    public void encodeShouldEncodeLatinCharactersWithGivenCharset() throws UnsupportedEncodingException {
+	Assert.assertEquals("caf%C3%A9%20%C3%BF", EscapedFragmentEncoder.encode("caf\u00e9 \u00ff", "UTF-8"));
+	Assert.assertEquals("caf%E9%20%FF", EscapedFragmentEncoder.encode("caf\u00e9 \u00ff", "ISO-8859-1"));
+    }
+
+    @Test
+    public void encodeShouldNotChangeCharactersAboveLatin1() throws UnsupportedEncodingException {
+	Assert.assertEquals("\u20ac%26\u0100", EscapedFragmentEncoder.encode("\u20ac&\u0100", "UTF-8"));
+    }
+
+    @Test(expected = UnsupportedEncodingException.class)
+    public void encodeShouldRejectUnknownEncoding() throws UnsupportedEncodingException {
+	EscapedFragmentEncoder.encode("a", "no-such-charset");
+    }
+
     private void assertEncoding(final String from, final String to) throws UnsupportedEncodingException {
 	Assert.assertEquals(to, EscapedFragmentEncoder.encode(from, Charset.defaultCharset().toString()));
     }
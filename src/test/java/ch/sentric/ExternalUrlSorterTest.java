@@ -0,0 +1,166 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The {@link ExternalUrlSorter} test class.
+ */
+public class ExternalUrlSorterTest {
+    private File directory;
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+	this.directory = Files.createTempDirectory("runs").toFile();
+	this.output = new File(this.directory, "keys");
+    }
+
+    @After
+    public void tearDown() {
+	this.output.delete();
+	Assert.assertArrayEquals(new String[0], this.directory.list());
+	this.directory.delete();
+    }
+
+    @Test
+    public void sortShouldWriteUniqueKeysWithCountsAndFirstUrl() throws IOException {
+	final ExternalUrlSorter sorter = new ExternalUrlSorter(this.directory, 1 << 20, 2, true, true);
+	try {
+	    sorter.add("http://www.example.com/b?y=2&x=1");
+	    sorter.add("http://example.com/a");
+	    sorter.add("not a url");
+	    sorter.add("http://example.com/b?x=1&y=2");
+	    sorter.add("http://sentric.ch/");
+	    Assert.assertEquals(3, sorter.sortTo(this.output, ExternalUrlSorter.Format.TEXT));
+	    Assert.assertEquals(5, sorter.getAdded());
+	    Assert.assertEquals(1, sorter.getMalformed());
+	} finally {
+	    sorter.close();
+	}
+	Assert.assertEquals(Arrays.asList("ch.sentric\t1\thttp://sentric.ch/", "com.example/a\t1\thttp://example.com/a",
+		"com.example/b?x=1&y=2\t2\thttp://www.example.com/b?y=2&x=1"), Files.readAllLines(this.output.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sortShouldMergeManyRunsInSeveralPasses() throws IOException {
+	final Random random = new Random(42);
+	final List<String> urls = new ArrayList<String>();
+	for (int i = 0; i < 2000; i++) {
+	    urls.add("http://h" + random.nextInt(50) + ".example.com/p" + random.nextInt(20) + "?q=" + (random.nextBoolean() ? "é" : "z"));
+	}
+	// the order of the utf-8 bytes, which differs from the order of the chars
+	final Map<String, long[]> expected = new TreeMap<String, long[]>(new Comparator<String>() {
+	    @Override
+	    public int compare(final String a, final String b) {
+		return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+	    }
+	});
+	final Map<String, String> first = new TreeMap<String, String>();
+	for (final String url : urls) {
+	    final String key = new URL(url).getNormalizedUrl();
+	    if (!expected.containsKey(key)) {
+		expected.put(key, new long[1]);
+		first.put(key, url);
+	    }
+	    expected.get(key)[0]++;
+	}
+
+	final ExternalUrlSorter sorter = new ExternalUrlSorter(this.directory, 3 * 1024, 2, true, true);
+	try {
+	    for (final String url : urls) {
+		sorter.add(url);
+	    }
+	    Assert.assertTrue(sorter.getRunCount() > ExternalUrlSorter.MAX_FAN_IN);
+	    Assert.assertEquals(expected.size(), sorter.sortTo(this.output, ExternalUrlSorter.Format.TEXT));
+	} finally {
+	    sorter.close();
+	}
+	final List<String> lines = new ArrayList<String>();
+	for (final Map.Entry<String, long[]> entry : expected.entrySet()) {
+	    lines.add(entry.getKey() + "\t" + entry.getValue()[0] + "\t" + first.get(entry.getKey()));
+	}
+	Assert.assertEquals(lines, Files.readAllLines(this.output.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sortShouldWriteFrontCodedKeys() throws IOException {
+	final ExternalUrlSorter sorter = new ExternalUrlSorter(this.directory, 1024, 1, false, false);
+	try {
+	    for (int i = 99; i >= 0; i--) {
+		sorter.add("http://example.com/page" + i % 50);
+	    }
+	    Assert.assertEquals(50, sorter.sortTo(this.output, ExternalUrlSorter.Format.FRONT_CODED));
+	} finally {
+	    sorter.close();
+	}
+	final FrontCodedReader reader = new FrontCodedReader(this.output);
+	try {
+	    Assert.assertEquals(50, reader.getKeyCount());
+	    final Iterator<String> keys = reader.iterator();
+	    Assert.assertEquals("com.example/page0", keys.next());
+	    Assert.assertEquals("com.example/page1", keys.next());
+	    Assert.assertEquals("com.example/page10", keys.next());
+	} finally {
+	    reader.close();
+	}
+    }
+
+    @Test
+    public void sortShouldHandleNoUrls() throws IOException {
+	final ExternalUrlSorter sorter = new ExternalUrlSorter(this.directory, 1024, 1, false, false);
+	try {
+	    Assert.assertEquals(0, sorter.sortTo(this.output, ExternalUrlSorter.Format.TEXT));
+	} finally {
+	    sorter.close();
+	}
+	Assert.assertEquals(0, this.output.length());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addShouldFailAfterSort() throws IOException {
+	final ExternalUrlSorter sorter = new ExternalUrlSorter(this.directory, 1024, 1, false, false);
+	try {
+	    sorter.sortTo(this.output, ExternalUrlSorter.Format.TEXT);
+	    sorter.add("http://example.com/");
+	} finally {
+	    sorter.close();
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectTinyBudget() throws MalformedURLException {
+	new ExternalUrlSorter(this.directory, 10, 1, false, false);
+    }
+}
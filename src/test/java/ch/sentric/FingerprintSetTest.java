@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link FingerprintSet} test class.
+ */
+public class FingerprintSetTest {
+
+    @Test
+    public void addIfAbsentShouldDetectEquivalentUrls() throws MalformedURLException {
+	final FingerprintSet set = FingerprintSet.allocate(100);
+	Assert.assertTrue(set.addIfAbsent(new URL("http://www.example.com:80/bar.html")));
+	Assert.assertFalse(set.addIfAbsent(new URL("http://example.com/bar.html")));
+	Assert.assertTrue(set.contains(new URL("http://EXAMPLE.com/bar.html")));
+	Assert.assertFalse(set.contains(new URL("http://example.com/foo.html")));
+	Assert.assertEquals(1, set.size());
+    }
+
+    @Test
+    public void addIfAbsentShouldAcceptZero() {
+	final FingerprintSet set = FingerprintSet.allocate(10);
+	Assert.assertTrue(set.addIfAbsent(0));
+	Assert.assertFalse(set.addIfAbsent(0));
+	Assert.assertTrue(set.contains(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addIfAbsentShouldFailWhenFull() {
+	final FingerprintSet set = FingerprintSet.allocate(10);
+	for (long i = 1; i <= set.capacity(); i++) {
+	    set.addIfAbsent(Fingerprint.mix(i));
+	}
+    }
+
+    @Test
+    public void addIfAbsentShouldBeThreadSafe() throws InterruptedException {
+	final FingerprintSet set = FingerprintSet.allocate(40000);
+	final AtomicInteger added = new AtomicInteger();
+	final List<Thread> threads = new ArrayList<Thread>();
+	for (int t = 0; t < 4; t++) {
+	    threads.add(new Thread() {
+		@Override
+		public void run() {
+		    for (int i = 0; i < 40000; i++) {
+			if (set.addIfAbsent(Fingerprint.of("com.example/" + i))) {
+			    added.incrementAndGet();
+			}
+		    }
+		}
+	    });
+	}
+	for (final Thread thread : threads) {
+	    thread.start();
+	}
+	for (final Thread thread : threads) {
+	    thread.join();
+	}
+	Assert.assertEquals(40000, added.get());
+	Assert.assertEquals(40000, set.size());
+    }
+
+    @Test
+    public void openShouldReturnPersistedSet() throws IOException {
+	final File file = File.createTempFile("fingerprints", ".set");
+	file.deleteOnExit();
+	final FingerprintSet created = FingerprintSet.create(file, 1000);
+	for (int i = 0; i < 1000; i++) {
+	    created.addIfAbsent(Fingerprint.of("com.example/" + i));
+	}
+	created.close();
+
+	final FingerprintSet opened = FingerprintSet.open(file);
+	Assert.assertEquals(1000, opened.size());
+	Assert.assertEquals(created.capacity(), opened.capacity());
+	Assert.assertTrue(opened.contains(Fingerprint.of("com.example/999")));
+	Assert.assertFalse(opened.addIfAbsent(Fingerprint.of("com.example/0")));
+	Assert.assertTrue(opened.addIfAbsent(Fingerprint.of("com.example/1000")));
+	opened.close();
+    }
+
+    @Test
+    public void saveShouldWriteReopenableFile() throws IOException {
+	final File file = File.createTempFile("fingerprints", ".set");
+	file.deleteOnExit();
+	final FingerprintSet set = FingerprintSet.allocate(100);
+	set.addIfAbsent(Fingerprint.of("ch.sentric/blog"));
+	set.save(file);
+
+	final FingerprintSet opened = FingerprintSet.open(file);
+	Assert.assertEquals(1, opened.size());
+	Assert.assertTrue(opened.contains(Fingerprint.of("ch.sentric/blog")));
+	opened.close();
+    }
+
+    @Test
+    public void fingerprintShouldDependOnRange() {
+	Assert.assertEquals(Fingerprint.of("com.example/bar"), Fingerprint.of("xcom.example/barx", 1, 16));
+	Assert.assertFalse(Fingerprint.of("com.example/bar") == Fingerprint.of("com.example/baz"));
+	Assert.assertFalse(Fingerprint.of("") == 0);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The {@link FrontCodedReader} and {@link FrontCodedWriter} test class.
+ */
+public class FrontCodedReaderTest {
+    private static final List<String> KEYS = Arrays.asList("ch.sentric/blog/berlin-buzzwords-2012-presentation-and-highlights",
+	    "ch.sentric/blog/berlin-buzzwords-2012-review-from-a-search-perspective", "ch.sentric/blog/comparing-cloudera-impala",
+	    "ch.sentric/blog/cucumber-goes-hadoop", "ch.sentric/blog/ein-treffen-mit-james-kinley-von-cloudera",
+	    "ch.sentric/blog/hadoop-best-practice-cluster-checklist", "ch.sentric/blog/hbase-sizing-notes",
+	    "ch.sentric/blog/highlights-of-apache-lucene-solr-4-0", "ch.sentric/blog/how-should-pig-and-hive-be-integrated-to-access-data-in-hadoop",
+	    "ch.sentric/blog/how-to-determine-hbase-row-sizes", "ch.sentric/blog/log-data-analysis-what-is-the-most-popular-apache-webserver-version",
+	    "ch.sentric/blog/monitoring-web-apps-with-cucumber", "ch.sentric/blog/rebuilding-a-solr-index-the-hard-way",
+	    "ch.sentric/blog/sentric-at-strata-conference-hadoop-world-2012-in-new-york", "ch.sentric/blog/sentric-becomes-cloudera-connect-partner",
+	    "ch.sentric/blog/sentric-speaking-at-apachecon-europe-2012", "ch.sentric/blog/whats-an-appropriate-use-case-for-kafka",
+	    "ch.sentric/blog/why-hadoop-and-why-now", "ch.sentric/blog/why-we-chose-solr-4-0-instead-of-elasticsearch", "com.example",
+	    "com.example/bar.html", "com.example/display?article=fred&lang=en");
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+	this.file = File.createTempFile("keys", ".fc");
+	this.file.deleteOnExit();
+	final FrontCodedWriter writer = new FrontCodedWriter(this.file, 4);
+	for (final String key : KEYS) {
+	    writer.add(key);
+	}
+	writer.close();
+    }
+
+    @Test
+    public void writerShouldCompressSharedPrefixes() throws IOException {
+	final FrontCodedWriter writer = new FrontCodedWriter(this.file);
+	long raw = 0;
+	for (int i = 0; i < 10000; i++) {
+	    final String key = String.format("ch.sentric/blog/why-we-chose-solr-4-0-instead-of-elasticsearch?page=%05d", i);
+	    writer.add(key);
+	    raw += key.length();
+	}
+	writer.close();
+	Assert.assertTrue(this.file.length() + " >= " + raw, this.file.length() * 5 < raw);
+	final FrontCodedReader reader = new FrontCodedReader(this.file);
+	Assert.assertTrue(reader.contains("ch.sentric/blog/why-we-chose-solr-4-0-instead-of-elasticsearch?page=04711"));
+	reader.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writerShouldRejectUnsortedKeys() throws IOException {
+	final FrontCodedWriter writer = new FrontCodedWriter(this.file);
+	try {
+	    writer.add("com.example");
+	    writer.add("ch.sentric");
+	} finally {
+	    writer.close();
+	}
+    }
+
+    @Test
+    public void containsShouldFindAllKeys() throws IOException {
+	final FrontCodedReader reader = new FrontCodedReader(this.file);
+	Assert.assertEquals(KEYS.size(), reader.getKeyCount());
+	for (final String key : KEYS) {
+	    Assert.assertTrue(key, reader.contains(key));
+	}
+	Assert.assertFalse(reader.contains("aa"));
+	Assert.assertFalse(reader.contains("ch.sentric/blog"));
+	Assert.assertFalse(reader.contains("com.example/bar"));
+	Assert.assertFalse(reader.contains("zz"));
+	reader.close();
+    }
+
+    @Test
+    public void iteratorShouldReturnAllKeys() throws IOException {
+	final FrontCodedReader reader = new FrontCodedReader(this.file);
+	Assert.assertEquals(KEYS, toList(reader.iterator()));
+	reader.close();
+    }
+
+    @Test
+    public void prefixShouldReturnMatchingKeys() throws IOException {
+	final FrontCodedReader reader = new FrontCodedReader(this.file);
+	Assert.assertEquals(Arrays.asList("ch.sentric/blog/why-hadoop-and-why-now", "ch.sentric/blog/why-we-chose-solr-4-0-instead-of-elasticsearch"),
+		toList(reader.prefix("ch.sentric/blog/why")));
+	Assert.assertEquals(KEYS.subList(19, 22), toList(reader.prefix("com.example")));
+	Assert.assertEquals(new ArrayList<String>(), toList(reader.prefix("org")));
+	reader.close();
+    }
+
+    @Test
+    public void rangeShouldRespectBounds() throws IOException {
+	final FrontCodedReader reader = new FrontCodedReader(this.file);
+	Assert.assertEquals(KEYS.subList(6, 10), toList(reader.range("ch.sentric/blog/hbase-sizing-notes", "ch.sentric/blog/log")));
+	Assert.assertEquals(KEYS.subList(0, 2), toList(reader.range(null, "ch.sentric/blog/c")));
+	Assert.assertEquals(KEYS.subList(20, 22), toList(reader.range("com.example/", null)));
+	reader.close();
+    }
+
+    @Test
+    public void readerShouldHandleEmptyFile() throws IOException {
+	new FrontCodedWriter(this.file).close();
+	final FrontCodedReader reader = new FrontCodedReader(this.file);
+	Assert.assertEquals(0, reader.getKeyCount());
+	Assert.assertFalse(reader.contains("com.example"));
+	Assert.assertFalse(reader.iterator().hasNext());
+	reader.close();
+    }
+
+    private static List<String> toList(final Iterator<String> iterator) {
+	final List<String> result = new ArrayList<String>();
+	while (iterator.hasNext()) {
+	    result.add(iterator.next());
+	}
+	return result;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link HostNameFactory} test class.
+ */
+public class HostNameFactoryTest {
+
+    @Test
+    public void buildShouldReturnIPv4Address() {
+	Assert.assertEquals(new IPv4Address(0xC0A80102L), new HostNameFactory().build("192.168.1.2"));
+    }
+
+    @Test
+    public void buildShouldReadRange() {
+	Assert.assertEquals(new IPv4Address(0xC0A80102L), new HostNameFactory().build("http://192.168.1.2/", 7, 18));
+	Assert.assertEquals(new DomainName("www.sentric.ch"), new HostNameFactory().build(new StringBuilder("//WWW.sentric.ch:80"), 2, 16));
+	Assert.assertEquals("xn--bcher-kva.de", new HostNameFactory().build("[bücher.de]", 1, 10).getAsString());
+    }
+
+    @Test
+    public void buildShouldReturnDomainName() {
+	Assert.assertEquals(new DomainName("www.sentric.ch"), new HostNameFactory().build("WWW.sentric.ch"));
+    }
+
+    @Test
+    public void buildShouldConvertToAsciiCompatibleEncoding() {
+	Assert.assertEquals("xn--bcher-kva.de", new HostNameFactory().build("bücher.de").getAsString());
+	Assert.assertEquals("xn--bcher-kva.de", new HostNameFactory().build("BÜCHER.de").getAsString());
+	Assert.assertEquals(new HostNameFactory().build("xn--BCHER-kva.de"), new HostNameFactory().build("bücher.de"));
+    }
+
+    @Test
+    public void buildShouldMapIdeographicFullStops() {
+	Assert.assertEquals("xn--bcher-kva.de", new HostNameFactory().build("bücher。de").getAsString());
+	Assert.assertEquals(new IPv4Address(0x01020304L), new HostNameFactory().build("１.２.３.４"));
+    }
+
+    @Test
+    public void buildShouldKeepInvalidLabels() {
+	final String label = "a" + "ü".repeat(70);
+	Assert.assertEquals(label + ".de", new HostNameFactory().build(label + ".de").getAsString());
+    }
+
+    @Test
+    public void normalizedUrlShouldNotDependOnHostEncoding() throws Exception {
+	Assert.assertEquals(new URL("http://xn--bcher-kva.de/a").getNormalizedUrl(), new URL("http://www.Bücher.de/a").getNormalizedUrl());
+    }
+}
@@ -138,6 +138,7 @@ public class IPv4AddressTest {
     private void runParseTests(final List<int[]> cases) {
 	for (final int[] c : cases) {
 	    assertEquals(c.toString(), calculateLong(c), IPv4Address.parseIPv4String(buildIPv4(c)));
+	    assertEquals(c.toString(), calculateLong(c), IPv4Address.parseIPv4("//" + buildIPv4(c) + "/", 2, buildIPv4(c).length() + 2));
 	}
     }
 
@@ -145,6 +146,7 @@ public class IPv4AddressTest {
 	for (final String c : cases) {
 	    final long parseResult = IPv4Address.parseIPv4String(c);
 	    assertEquals("String: <" + c + "> did not fail, gave " + parseResult, IPv4Address.ILLEGAL_IPV4, parseResult);
+	    assertEquals("Range: <" + c + "> did not fail", IPv4Address.ILLEGAL_IPV4, IPv4Address.parseIPv4(new StringBuilder(c), 0, c.length()));
 	}
     }
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures extracting the links of a page with 200 anchors by a
+ * {@link LinkExtractor}, versus only resolving its hrefs with
+ * {@link URI#resolve(String)} and normalizing them with {@link URL}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkExtractorBenchmark {
+    private static final String PAGE_URL = "http://www.example.com/blog/2012/why-hadoop-and-why-now";
+    private static final String[] HREFS = { "../2013/comparing-cloudera-impala", "/tags/hadoop?page=2&sort=date", "http://sentric.ch/blog/hbase-sizing-notes",
+	    "#comments", "why-hadoop-and-why-now?replytocom=12#respond" };
+
+    private final LinkExtractor extractor = new LinkExtractor();
+    private final LinkExtractor.Listener listener = new LinkExtractor.Listener() {
+	@Override
+	public void link(final LinkExtractor.Kind kind, final String url, final String key) {
+	    // discarded
+	}
+    };
+    private String page;
+    private String[] hrefs;
+
+    @Setup
+    public void setUp() {
+	final StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>Why Hadoop</title><script>var a = '<a href=x>';</script></head><body>");
+	this.hrefs = new String[200];
+	for (int i = 0; i < this.hrefs.length; i++) {
+	    this.hrefs[i] = HREFS[i % HREFS.length] + (i % HREFS.length == 3 ? "" : Integer.toString(i % 50));
+	    html.append("<p class=\"entry\">Some text <a class=\"link\" href=\"").append(this.hrefs[i]).append("\" title=\"link ").append(i).append("\">link</a></p>\n");
+	}
+	this.page = html.append("</body></html>").toString();
+    }
+
+    @Benchmark
+    public int extractor() throws IOException {
+	return this.extractor.extract(new StringReader(this.page), PAGE_URL, this.listener);
+    }
+
+    @Benchmark
+    public int uriResolve() {
+	final URI base = URI.create(PAGE_URL);
+	final Set<String> keys = new HashSet<String>();
+	for (final String href : this.hrefs) {
+	    try {
+		keys.add(new URL(base.resolve(href).toString()).getNormalizedUrl());
+	    } catch (final MalformedURLException e) {
+		// skipped
+	    }
+	}
+	return keys.size();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link LinkExtractor} test class.
+ */
+public class LinkExtractorTest {
+    private static final String BASE = "http://a/b/c/d;p?q";
+
+    @Test
+    public void resolveShouldFollowRfc3986NormalExamples() {
+	final String[] examples = { "g:h", "g:h", "g", "http://a/b/c/g", "./g", "http://a/b/c/g", "g/", "http://a/b/c/g/", "/g", "http://a/g", "//g", "http://g",
+		"?y", "http://a/b/c/d;p?y", "g?y", "http://a/b/c/g?y", "g#s", "http://a/b/c/g", "g?y#s", "http://a/b/c/g?y", ";x", "http://a/b/c/;x", "g;x",
+		"http://a/b/c/g;x", "g;x?y#s", "http://a/b/c/g;x?y", ".", "http://a/b/c/", "./", "http://a/b/c/", "..", "http://a/b/", "../", "http://a/b/",
+		"../g", "http://a/b/g", "../..", "http://a/", "../../", "http://a/", "../../g", "http://a/g" };
+	assertResolved(examples);
+    }
+
+    @Test
+    public void resolveShouldFollowRfc3986AbnormalExamples() {
+	final String[] examples = { "../../../g", "http://a/g", "../../../../g", "http://a/g", "/./g", "http://a/g", "/../g", "http://a/g", "g.", "http://a/b/c/g.",
+		".g", "http://a/b/c/.g", "g..", "http://a/b/c/g..", "..g", "http://a/b/c/..g", "./../g", "http://a/b/g", "./g/.", "http://a/b/c/g/", "g/./h",
+		"http://a/b/c/g/h", "g/../h", "http://a/b/c/h", "g;x=1/./y", "http://a/b/c/g;x=1/y", "g;x=1/../y", "http://a/b/c/y", "g?y/./x",
+		"http://a/b/c/g?y/./x", "g?y/../x", "http://a/b/c/g?y/../x", "g#s/./x", "http://a/b/c/g", "http:g", "http:g" };
+	assertResolved(examples);
+    }
+
+    @Test
+    public void resolveShouldSkipFragmentsAndEmptyReferences() {
+	Assert.assertNull(LinkExtractor.resolve(BASE, ""));
+	Assert.assertNull(LinkExtractor.resolve(BASE, " #s"));
+	Assert.assertNull(LinkExtractor.resolve("/relative", "g"));
+	Assert.assertEquals("http://a/", LinkExtractor.resolve("http://a", "."));
+	Assert.assertEquals("http://a/g", LinkExtractor.resolve("http://a", "g"));
+	Assert.assertEquals("http://a/b/c/gh", LinkExtractor.resolve(BASE, " g\n\th "));
+    }
+
+    @Test
+    public void extractShouldFindLinksOfInterest() throws IOException {
+	final String html = "<!DOCTYPE html><HTML><head><title>a <a href=/title></title>\n"
+		+ "<link rel=\"stylesheet\" href=\"/s.css\"><LINK REL='Canonical alternate' HREF='http://www.example.com/page?b=2&amp;a=1'>\n"
+		+ "<script>if (a<b) document.write('<a href=\"/script\">')</script>"
+		+ "<!-- <a href=\"/comment\"> --></head><body><a href=page?a=1&#38;b=2#top>p</a><a href=\"/dir/page?b=2&a=1\">dup</a>"
+		+ "<a name=x href = \"other/../x.html\" href=\"/second\">x</a><a href=\"javascript:void(0)\">js</a><a href=\"mailto:a@b\">m</a>"
+		+ "<a href=\"#top\">top</a><a>none</a><a href=\"HTTPS://Example.COM/\">abs</a><iframe src=\"//cdn.example.com/f\"></iframe>"
+		+ "<frame src=../frame.html /><img src=\"/img.png\"><a href=\"http://[::1\">bad</a></body></html>";
+	final List<String> links = extract(html, "http://www.example.com/dir/page");
+	Assert.assertEquals(Arrays.asList("CANONICAL http://www.example.com/page?b=2&a=1 com.example/page?a=1&b=2",
+		"ANCHOR http://www.example.com/dir/page?a=1&b=2 com.example/dir/page?a=1&b=2", "ANCHOR http://www.example.com/dir/x.html com.example/dir/x.html", "ANCHOR HTTPS://Example.COM/ com.example",
+		"FRAME http://cdn.example.com/f com.example.cdn/f", "FRAME http://www.example.com/frame.html com.example/frame.html"), links);
+    }
+
+    @Test
+    public void extractShouldApplyFirstBase() throws IOException {
+	final String html = "<a href=a>a</a><base target=_blank><base href=\"http://other.org/x/\"><base href=\"http://third.org/\"><a href=b>b</a>";
+	Assert.assertEquals(Arrays.asList("ANCHOR http://example.com/a com.example/a", "ANCHOR http://other.org/x/b org.other/x/b"),
+		extract(html, "http://example.com/"));
+    }
+
+    @Test
+    public void extractShouldReadBytes() throws IOException {
+	final String html = "<a href=\"/bär\">x</a><a href='/&#x62;&#xE4;r'>y</a>";
+	for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16 }) {
+	    final List<String> links = new ArrayList<String>();
+	    final ByteBuffer bytes = ByteBuffer.wrap(html.getBytes(charset));
+	    Assert.assertEquals(1, new LinkExtractor().extract(bytes, charset, "http://example.com/", new LinkExtractor.Listener() {
+		@Override
+		public void link(final LinkExtractor.Kind kind, final String url, final String key) {
+		    links.add(url);
+		}
+	    }));
+	    Assert.assertEquals(charset.name(), Arrays.asList("http://example.com/bär"), links);
+	    Assert.assertEquals(0, bytes.position());
+	}
+    }
+
+    @Test
+    public void extractShouldReuseExtractor() throws IOException {
+	final LinkExtractor extractor = new LinkExtractor();
+	Assert.assertEquals(1, extractor.extract(new StringReader("<base href=/x/><a href=a>"), "http://example.com/", new CollectingListener()));
+	final CollectingListener second = new CollectingListener();
+	Assert.assertEquals(1, extractor.extract(new StringReader("<a href=a>"), "http://example.org/", second));
+	Assert.assertEquals(Arrays.asList("ANCHOR http://example.org/a org.example/a"), second.links);
+    }
+
+    private static void assertResolved(final String[] examples) {
+	for (int i = 0; i < examples.length; i += 2) {
+	    Assert.assertEquals(examples[i], examples[i + 1], LinkExtractor.resolve(BASE, examples[i]));
+	}
+    }
+
+    private static List<String> extract(final String html, final String pageUrl) throws IOException {
+	final CollectingListener listener = new CollectingListener();
+	Assert.assertEquals(new LinkExtractor().extract(new StringReader(html), pageUrl, listener), listener.links.size());
+	return listener.links;
+    }
+
+    private static final class CollectingListener implements LinkExtractor.Listener {
+	private final List<String> links = new ArrayList<String>();
+
+	@Override
+	public void link(final LinkExtractor.Kind kind, final String url, final String key) {
+	    this.links.add(kind + " " + url + " " + key);
+	}
+    }
+}
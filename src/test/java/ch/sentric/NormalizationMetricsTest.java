@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ch.sentric.NormalizationMetrics.Rule;
+import ch.sentric.NormalizationMetrics.Stage;
+
+/**
+ * The {@link NormalizationMetrics} test class.
+ */
+public class NormalizationMetricsTest {
+
+    @After
+    public void tearDown() {
+	NormalizationMetrics.disable();
+    }
+
+    @Test
+    public void getShouldReturnNullWhenDisabled() throws MalformedURLException {
+	Assert.assertNull(NormalizationMetrics.get());
+	new URL("http://www.example.com/").getNormalizedUrl();
+	Assert.assertNull(NormalizationMetrics.get());
+    }
+
+    @Test
+    public void enableShouldCountRules() throws MalformedURLException {
+	final NormalizationMetrics metrics = NormalizationMetrics.enable();
+	new URL("http://www.example.com/a;jsessionid=1?utm_source=x&b=1&PHPSESSID=2").getNormalizedUrl();
+	new URL("http://example.com/").getNormalizedUrl();
+	Assert.assertEquals(2, metrics.getUrlsParsed());
+	Assert.assertEquals(1, metrics.getCount(Rule.WWW_STRIPPED));
+	Assert.assertEquals(2, metrics.getCount(Rule.SESSION_ID_REMOVED));
+	Assert.assertEquals(1, metrics.getCount(Rule.TRACKING_PARAMETER_FILTERED));
+    }
+
+    @Test
+    public void enableShouldCountParseFailuresByCause() {
+	final NormalizationMetrics metrics = NormalizationMetrics.enable();
+	for (final String url : new String[] { "example.com", "foo.bar", "xyz://example.com" }) {
+	    try {
+		new URL(url);
+		Assert.fail(url);
+	    } catch (final MalformedURLException e) {
+		// expected
+	    }
+	}
+	Assert.assertEquals(Long.valueOf(2), metrics.getParseFailures().get("no protocol"));
+	Assert.assertEquals(Long.valueOf(1), metrics.getParseFailures().get("unknown protocol"));
+    }
+
+    @Test
+    public void enableShouldTimeSampledStages() throws MalformedURLException {
+	final NormalizationMetrics metrics = NormalizationMetrics.enable(1);
+	new URL("http://www.example.com/a?b=1&a=2").getNormalizedUrl();
+	UrlUtil.siteToTopLevel("uk.co.bbc.www");
+	for (final Stage stage : Stage.values()) {
+	    Assert.assertEquals(stage.name(), 1, metrics.getSamples(stage));
+	    Assert.assertTrue(stage.name(), metrics.getMeanNanos(stage) > 0);
+	}
+	metrics.reset();
+	Assert.assertEquals(0, metrics.getSamples(Stage.PARSE));
+    }
+
+    @Test
+    public void registerMBeanShouldExposeMetrics() throws Exception {
+	final NormalizationMetrics metrics = NormalizationMetrics.enable();
+	metrics.registerMBean();
+	try {
+	    final Object urls = java.lang.management.ManagementFactory.getPlatformMBeanServer().getAttribute(
+		    new javax.management.ObjectName("ch.sentric:type=NormalizationMetrics"), "UrlsParsed");
+	    Assert.assertEquals(Long.valueOf(0), urls);
+	} finally {
+	    metrics.unregisterMBean();
+	}
+    }
+}
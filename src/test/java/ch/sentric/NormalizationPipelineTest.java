@@ -0,0 +1,106 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link NormalizationPipeline} and {@link StandardStep} test class.
+ */
+public class NormalizationPipelineTest {
+    private static final String[] URLS = { "http://www.example.com/display?lang=en&article=fred", "http://WWW.Example.COM:8080/a/b/?b=2&a=1#top",
+	    "http://www.www.example.com/", "https://user:secret@bücher.de/straße", "http://010.0.0.1/index.html", "http://a..b.com./x",
+	    "http://example.com/te%7Est/a%2Fb/%zz/a+b/%20", "http://example.com/foo;jsessionid=0815?PHPSESSID=1&x=1", "http://example.com/?utm_source=x&WT.mc=1&b&a=",
+	    "http://example.com/?a=1;jsessionid=2&&=&c", "http://example.com?q=é&Q=%20", "ftp://www/" };
+
+    private final NormalizationPipeline pipeline = NormalizationPipeline.standard();
+
+    @Test
+    public void standardPipelineShouldMatchUrl() throws MalformedURLException {
+	for (final String url : URLS) {
+	    Assert.assertEquals(url, new URL(url).getNormalizedUrl(), this.pipeline.normalize(url));
+	}
+    }
+
+    @Test
+    public void pipelineShouldReuseBuffer() throws MalformedURLException {
+	final UrlBuffer buffer = new UrlBuffer();
+	for (final String url : URLS) {
+	    this.pipeline.normalize(url, buffer);
+	    Assert.assertEquals(url, new URL(url).getNormalizedUrl(), buffer.toString());
+	}
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void pipelineShouldRejectMalformedUrl() throws MalformedURLException {
+	this.pipeline.normalize("no url");
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void pipelineShouldRejectStepFailures() throws MalformedURLException {
+	new NormalizationPipeline(StandardStep.LOWERCASE_HOST).normalize("http://" + "a".repeat(70000) + ".com/");
+    }
+
+    @Test
+    public void pipelineShouldApplyCustomSteps() throws MalformedURLException {
+	final List<NormalizationStep> steps = StandardStep.standardSteps();
+	steps.add(steps.indexOf(StandardStep.REENCODE_PATH), StandardStep.REMOVE_DOT_SEGMENTS);
+	steps.add(new NormalizationStep() {
+	    @Override
+	    public void apply(final UrlBuffer url) {
+		// drops a trailing index.html
+		final int end = url.getPathEnd();
+		if (end - url.getPathStart() >= 11 && url.regionEquals(end - 11, end, "/index.html")) {
+		    url.delete(end - 11, end);
+		}
+	    }
+	});
+	final NormalizationPipeline custom = new NormalizationPipeline(steps);
+	Assert.assertEquals("com.example/a/c?x=1", custom.normalize("http://www.example.com/a/b/../c/./index.html?x=1"));
+	Assert.assertEquals("com.example/b", custom.normalize("http://example.com/a/../../b/"));
+    }
+
+    @Test
+    public void removeDotSegmentsShouldFollowRfc3986() throws MalformedURLException {
+	final NormalizationPipeline dots = new NormalizationPipeline(StandardStep.REMOVE_DOT_SEGMENTS);
+	Assert.assertEquals("example.com/a/g", dots.normalize("http://example.com/a/b/c/./../../g"));
+	Assert.assertEquals("example.com/a/", dots.normalize("http://example.com/a/b/.."));
+	Assert.assertEquals("example.com/a/", dots.normalize("http://example.com/a/."));
+	Assert.assertEquals("example.com/", dots.normalize("http://example.com/../.."));
+	Assert.assertEquals("example.com//a/..b/.c", dots.normalize("http://example.com//a/..b/.c"));
+	Assert.assertEquals("example.com", dots.normalize("http://example.com"));
+    }
+
+    @Test
+    public void removeDefaultPortShouldKeepOtherPorts() throws MalformedURLException {
+	final NormalizationPipeline ports = new NormalizationPipeline(StandardStep.REMOVE_DEFAULT_PORT);
+	Assert.assertEquals("example.com/a", ports.normalize("http://example.com:80/a"));
+	Assert.assertEquals("example.com/a", ports.normalize("https://example.com:443/a"));
+	Assert.assertEquals("example.com:443/a", ports.normalize("http://example.com:443/a"));
+	Assert.assertEquals("example.com:8080", ports.normalize("http://example.com:8080"));
+    }
+
+    @Test
+    public void hostStepsShouldLeaveIpAddressesAlone() throws MalformedURLException {
+	Assert.assertEquals("10.0.0.1/a", this.pipeline.normalize("http://010.0.0.1/a"));
+	// without the ip v4 step the address is taken for a domain
+	Assert.assertEquals("1.0.0.010/a", new NormalizationPipeline(StandardStep.REVERSE_HOST).normalize("http://010.0.0.1/a"));
+    }
+}
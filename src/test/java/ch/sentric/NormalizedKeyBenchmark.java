@@ -0,0 +1,60 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures re-normalizing a stored key that is canonical already, checked by
+ * {@link NormalizedKey} versus parsed as url, and rebuilding its url.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizedKeyBenchmark {
+    public String key = "com.example.shop/display/te~st/index.html?article=fred&category=laptops&lang=en&page=2";
+    private final StringBuilder url = new StringBuilder(256);
+
+    @Benchmark
+    public String normalize() throws MalformedURLException {
+	return NormalizedKey.normalize(this.key);
+    }
+
+    @Benchmark
+    public String renormalize() throws MalformedURLException {
+	return NormalizedKey.renormalize(this.key);
+    }
+
+    @Benchmark
+    public int denormalize() {
+	this.url.setLength(0);
+	return NormalizedKey.denormalize(this.key, "http", false, this.url).length();
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test-Class for the {@link NormalizedKey}.
+ */
+public class NormalizedKeyTest {
+
+    @Test
+    public void isNormalizedShouldAcceptCanonicalKeys() {
+	assertTrue(NormalizedKey.isNormalized("com.example"));
+	assertTrue(NormalizedKey.isNormalized("com.example/bar.html"));
+	assertTrue(NormalizedKey.isNormalized("com.example.shop/a//b/te%3fst"));
+	assertTrue(NormalizedKey.isNormalized("com.example?a=1&a=2&b=&c=x%20y"));
+	assertTrue(NormalizedKey.isNormalized("192.168.1.1/path"));
+	assertTrue(NormalizedKey.isNormalized("com.wwwexample.www2"));
+    }
+
+    @Test
+    public void isNormalizedShouldRejectHosts() {
+	assertFalse(NormalizedKey.isNormalized(""));
+	assertFalse(NormalizedKey.isNormalized("/bar.html"));
+	assertFalse(NormalizedKey.isNormalized("com.Example"));
+	assertFalse(NormalizedKey.isNormalized("com.example.www"));
+	assertFalse(NormalizedKey.isNormalized("com..example"));
+	assertFalse(NormalizedKey.isNormalized("com.example:8080"));
+	assertFalse(NormalizedKey.isNormalized("192.168.001.1"));
+	assertFalse(NormalizedKey.isNormalized("1.2.3"));
+    }
+
+    @Test
+    public void isNormalizedShouldRejectPaths() {
+	assertFalse(NormalizedKey.isNormalized("com.example/"));
+	assertFalse(NormalizedKey.isNormalized("com.example/a/"));
+	assertFalse(NormalizedKey.isNormalized("com.example/?a=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example/te st"));
+	assertFalse(NormalizedKey.isNormalized("com.example/te%7Est"));
+	assertFalse(NormalizedKey.isNormalized("com.example/te%3Fst"));
+	assertFalse(NormalizedKey.isNormalized("com.example/a;jsessionid=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example/bär"));
+    }
+
+    @Test
+    public void isNormalizedShouldRejectQueries() {
+	assertFalse(NormalizedKey.isNormalized("com.example?"));
+	assertFalse(NormalizedKey.isNormalized("com.example?b=1&a=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a=2&a=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a&&b"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a="));
+	assertFalse(NormalizedKey.isNormalized("com.example?a=1=2"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a&b=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a=1 "));
+	assertFalse(NormalizedKey.isNormalized("com.example?=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a=1&utm_source=x"));
+	assertFalse(NormalizedKey.isNormalized("com.example?jsessionid=1"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a=1;jsessionid=2"));
+	assertFalse(NormalizedKey.isNormalized("com.example?a=1#top"));
+    }
+
+    @Test
+    public void normalizeShouldReturnCanonicalKeyUntouched() throws MalformedURLException {
+	final String key = "com.example/bar.html?a=1&b=2";
+	assertSame(key, NormalizedKey.normalize(key));
+    }
+
+    @Test
+    public void normalizeShouldNormalizeOtherKeys() throws MalformedURLException {
+	assertEquals("com.example/a", NormalizedKey.normalize("COM.Example.www/a/"));
+	assertEquals("com.example/te~st?a=1&b=2", NormalizedKey.normalize("com.example/te%7Est?b=2&utm_source=x&a=1"));
+	assertEquals("192.168.1.1", NormalizedKey.normalize("192.168.001.1"));
+    }
+
+    @Test
+    public void normalizeShouldMatchUrlNormalization() throws MalformedURLException {
+	final Random random = new Random(11);
+	final String[] hosts = { "Example.com", "www.example.com", "a.b.example.org", "10.0.0.1", "www", "xn--bcher-kva.de" };
+	final String[] parts = { "", "/", "a", "A", "%7e", "%2F", "%41", "+", ";jsessionid=1", "a b", "ä", "?", "&", "=", "utm_x", "PHPSESSID", "b", "1" };
+	int canonical = 0;
+	for (int i = 0; i < 5000; i++) {
+	    final StringBuilder url = new StringBuilder("http://").append(hosts[random.nextInt(hosts.length)]);
+	    for (int j = random.nextInt(8); j > 0; j--) {
+		url.append(parts[random.nextInt(parts.length)]);
+	    }
+	    final String key;
+	    try {
+		key = new URL(url.toString()).getNormalizedUrl();
+	    } catch (final MalformedURLException e) {
+		continue;
+	    }
+	    if (NormalizedKey.isNormalized(key)) {
+		canonical++;
+		assertEquals(url.toString(), key, NormalizedKey.renormalize(key));
+		assertEquals(url.toString(), key, new URL(NormalizedKey.denormalize(key, "https")).getNormalizedUrl());
+	    }
+	}
+	assertTrue(canonical > 1000);
+    }
+
+    @Test
+    public void denormalizeShouldRebuildUrl() {
+	assertEquals("http://example.com/a?b=1", NormalizedKey.denormalize("com.example/a?b=1", "http"));
+	assertEquals("https://example.com/?b=1", NormalizedKey.denormalize("com.example?b=1", "https"));
+	assertEquals("http://example.com/", NormalizedKey.denormalize("com.example", "http"));
+	assertEquals("http://192.168.1.1/x", NormalizedKey.denormalize("192.168.1.1/x", "http"));
+	assertEquals("http://1.1.1.300/", NormalizedKey.denormalize("300.1.1.1", "http"));
+    }
+
+    @Test
+    public void denormalizeShouldPrefixWwwToDomains() {
+	assertEquals("http://www.example.com/a", NormalizedKey.denormalize("com.example/a", "http", true, new StringBuilder()).toString());
+	assertEquals("http://www.bbc.co.uk/", NormalizedKey.denormalize("uk.co.bbc", "http", true, new StringBuilder()).toString());
+	assertEquals("http://shop.example.com/", NormalizedKey.denormalize("com.example.shop", "http", true, new StringBuilder()).toString());
+	assertEquals("http://10.0.0.1/", NormalizedKey.denormalize("10.0.0.1", "http", true, new StringBuilder()).toString());
+	assertEquals("http://localhost/", NormalizedKey.denormalize("localhost", "http", true, new StringBuilder()).toString());
+    }
+
+    @Test
+    public void denormalizeShouldStreamKeys() throws IOException {
+	final StringWriter urls = new StringWriter();
+	final BufferedReader keys = new BufferedReader(new StringReader("com.example/a\t3\ncom.example.shop?x=1\t1\nch.sentric\n"));
+	assertEquals(3, NormalizedKey.denormalize(keys, urls, "https", true));
+	assertEquals("https://www.example.com/a\t3\nhttps://shop.example.com/?x=1\t1\nhttps://www.sentric.ch/\n", urls.toString());
+
+	final StringWriter more = new StringWriter();
+	assertEquals(2, NormalizedKey.denormalize(Arrays.asList("com.example/a", "10.0.0.1/b").iterator(), more, "http", false));
+	assertEquals("http://example.com/a\nhttp://10.0.0.1/b\n", more.toString());
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures bursts of urls through a {@link NormalizingProcessor}: the mean
+ * time per burst and, sampled, the distribution of the time until the last
+ * url of a burst was normalized. The subscriber requests 256 results at a
+ * time. Normalizing the burst directly is the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizingProcessorBenchmark {
+    private static final String[] URLS = { "http://www.example.com:80/display/te%7Est?lang=en&utm_source=x&article=fred&PHPSESSID=abc",
+	    "http://sentric.ch/blog/why-hadoop-and-why-now", "not a url", "http://www.subdomain.bbc.co.uk/news/world?b=2&a=1" };
+
+    @Param({ "16", "1024" })
+    public int burst;
+
+    @Param({ "16", "256" })
+    public int batchSize;
+
+    private ExecutorService executor;
+    private SubmissionPublisher<String> publisher;
+    private final AtomicLong received = new AtomicLong();
+    private volatile long expected;
+    private volatile Thread waiter;
+
+    @Setup
+    public void setUp() {
+	this.executor = Executors.newFixedThreadPool(2);
+	this.publisher = new SubmissionPublisher<String>(this.executor, 1024);
+	final NormalizingProcessor processor = new NormalizingProcessor(this.executor, this.batchSize, 1024);
+	this.publisher.subscribe(processor);
+	processor.subscribe(new Flow.Subscriber<NormalizedResult>() {
+	    private Flow.Subscription subscription;
+	    private int outstanding;
+
+	    @Override
+	    public void onSubscribe(final Flow.Subscription subscription) {
+		this.subscription = subscription;
+		this.outstanding = 256;
+		subscription.request(256);
+	    }
+
+	    @Override
+	    public void onNext(final NormalizedResult result) {
+		if (NormalizingProcessorBenchmark.this.received.incrementAndGet() == NormalizingProcessorBenchmark.this.expected) {
+		    LockSupport.unpark(NormalizingProcessorBenchmark.this.waiter);
+		}
+		if (--this.outstanding == 0) {
+		    this.outstanding = 256;
+		    this.subscription.request(256);
+		}
+	    }
+
+	    @Override
+	    public void onError(final Throwable throwable) {
+		throwable.printStackTrace();
+	    }
+
+	    @Override
+	    public void onComplete() {
+		// done
+	    }
+	});
+    }
+
+    @TearDown
+    public void tearDown() {
+	this.publisher.close();
+	this.executor.shutdownNow();
+    }
+
+    @Benchmark
+    @BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+    public long processor() {
+	this.waiter = Thread.currentThread();
+	final long expected = this.expected + this.burst;
+	this.expected = expected;
+	for (int i = 0; i < this.burst; i++) {
+	    this.publisher.submit(URLS[i & 3]);
+	}
+	// parks rather than spins, the workers may share the core
+	while (this.received.get() < expected) {
+	    LockSupport.park(this);
+	}
+	return expected;
+    }
+
+    @Benchmark
+    public int direct() {
+	int malformed = 0;
+	for (int i = 0; i < this.burst; i++) {
+	    if (NormalizedResult.of(URLS[i & 3]).isMalformed()) {
+		malformed++;
+	    }
+	}
+	return malformed;
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link NormalizingProcessor} test class.
+ */
+public class NormalizingProcessorTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+	this.executor.shutdownNow();
+    }
+
+    @Test
+    public void processorShouldPassMalformedUrlsAsResults() throws InterruptedException {
+	final NormalizingProcessor processor = new NormalizingProcessor(this.executor, 2, 4);
+	final Collector collector = new Collector(1);
+	final SubmissionPublisher<String> publisher = new SubmissionPublisher<String>(this.executor, 4);
+	publisher.subscribe(processor);
+	processor.subscribe(collector);
+	final List<String> urls = Arrays.asList("http://www.example.com/b?y=2&x=1", "not a url", "http://sentric.ch/", "http://example.com/a");
+	for (int i = 0; i < 25; i++) {
+	    for (final String url : urls) {
+		publisher.submit(url);
+	    }
+	}
+	publisher.close();
+
+	Assert.assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+	Assert.assertNull(collector.error);
+	Assert.assertEquals(100, collector.results.size());
+	for (int i = 0; i < 100; i += urls.size()) {
+	    Assert.assertEquals("com.example/b?x=1&y=2", collector.results.get(i).getNormalizedUrl());
+	    Assert.assertTrue(collector.results.get(i + 1).isMalformed());
+	    Assert.assertEquals("not a url", collector.results.get(i + 1).getInput());
+	    Assert.assertEquals("ch.sentric", collector.results.get(i + 2).getNormalizedUrl());
+	    Assert.assertEquals("com.example/a", collector.results.get(i + 3).getNormalizedUrl());
+	}
+    }
+
+    @Test
+    public void processorShouldBoundRequestedUrls() throws InterruptedException {
+	final NormalizingProcessor processor = new NormalizingProcessor(this.executor, 3, 8);
+	final CountingPublisher publisher = new CountingPublisher();
+	publisher.subscribe(processor);
+	final Collector collector = new Collector(0);
+	processor.subscribe(collector);
+	Assert.assertEquals(8, publisher.requested.get());
+	publisher.emit(8);
+	Thread.sleep(50);
+	// nothing was requested downstream, so nothing more is requested upstream
+	Assert.assertEquals(8, publisher.requested.get());
+	Assert.assertTrue(collector.results.isEmpty());
+
+	collector.subscription.request(5);
+	collector.awaitResults(5);
+	// the consumed urls are requested again, keeping 8 buffered or requested
+	publisher.awaitRequested(13);
+	publisher.emit(5);
+	collector.subscription.request(Long.MAX_VALUE);
+	collector.awaitResults(13);
+	publisher.complete();
+	Assert.assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+	Assert.assertEquals(13, collector.results.size());
+    }
+
+    @Test
+    public void processorShouldSignalUpstreamErrorAfterBufferedUrls() throws InterruptedException {
+	final NormalizingProcessor processor = new NormalizingProcessor(this.executor, 4, 4);
+	final CountingPublisher publisher = new CountingPublisher();
+	publisher.subscribe(processor);
+	publisher.emit(3);
+	publisher.subscriber.onError(new IllegalStateException("boom"));
+	final Collector collector = new Collector(Long.MAX_VALUE);
+	processor.subscribe(collector);
+	Assert.assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+	Assert.assertEquals(3, collector.results.size());
+	Assert.assertEquals("boom", collector.error.getMessage());
+    }
+
+    @Test
+    public void processorShouldRejectInvalidRequest() throws InterruptedException {
+	final NormalizingProcessor processor = new NormalizingProcessor(this.executor, 4, 4);
+	final CountingPublisher publisher = new CountingPublisher();
+	publisher.subscribe(processor);
+	final Collector collector = new Collector(0);
+	processor.subscribe(collector);
+	collector.subscription.request(0);
+	Assert.assertTrue(collector.completed.await(10, TimeUnit.SECONDS));
+	Assert.assertTrue(collector.error instanceof IllegalArgumentException);
+	Assert.assertTrue(publisher.cancelled);
+    }
+
+    @Test
+    public void processorShouldRejectSecondSubscriber() throws InterruptedException {
+	final NormalizingProcessor processor = new NormalizingProcessor(this.executor, 4, 4);
+	processor.subscribe(new Collector(0));
+	final Collector second = new Collector(0);
+	processor.subscribe(second);
+	Assert.assertTrue(second.completed.await(10, TimeUnit.SECONDS));
+	Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    /**
+     * Collects the results, requesting the given number of results at once.
+     */
+    private static final class Collector implements Flow.Subscriber<NormalizedResult> {
+	private final long batch;
+	private final List<NormalizedResult> results = new ArrayList<NormalizedResult>();
+	private final CountDownLatch completed = new CountDownLatch(1);
+	private volatile Flow.Subscription subscription;
+	private volatile Throwable error;
+	private long outstanding;
+
+	Collector(final long batch) {
+	    this.batch = batch;
+	}
+
+	@Override
+	public void onSubscribe(final Flow.Subscription subscription) {
+	    this.subscription = subscription;
+	    if (this.batch > 0) {
+		this.outstanding = this.batch;
+		subscription.request(this.batch);
+	    }
+	}
+
+	@Override
+	public void onNext(final NormalizedResult result) {
+	    synchronized (this.results) {
+		this.results.add(result);
+	    }
+	    if (this.batch > 0 && this.batch != Long.MAX_VALUE && --this.outstanding == 0) {
+		this.outstanding = this.batch;
+		this.subscription.request(this.batch);
+	    }
+	}
+
+	@Override
+	public void onError(final Throwable throwable) {
+	    this.error = throwable;
+	    this.completed.countDown();
+	}
+
+	@Override
+	public void onComplete() {
+	    this.completed.countDown();
+	}
+
+	void awaitResults(final int count) throws InterruptedException {
+	    final long deadline = System.currentTimeMillis() + 10000;
+	    while (System.currentTimeMillis() < deadline) {
+		synchronized (this.results) {
+		    if (this.results.size() >= count) {
+			return;
+		    }
+		}
+		Thread.sleep(5);
+	    }
+	    Assert.fail("expected " + count + " results");
+	}
+    }
+
+    /**
+     * A publisher recording the requested number of urls, emitting urls only
+     * when told to.
+     */
+    private static final class CountingPublisher implements Flow.Publisher<String> {
+	private final AtomicLong requested = new AtomicLong();
+	private volatile boolean cancelled;
+	private Flow.Subscriber<? super String> subscriber;
+	private int emitted;
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super String> subscriber) {
+	    this.subscriber = subscriber;
+	    subscriber.onSubscribe(new Flow.Subscription() {
+		@Override
+		public void request(final long n) {
+		    CountingPublisher.this.requested.addAndGet(n);
+		}
+
+		@Override
+		public void cancel() {
+		    CountingPublisher.this.cancelled = true;
+		}
+	    });
+	}
+
+	void emit(final int count) {
+	    for (int i = 0; i < count; i++) {
+		this.subscriber.onNext("http://example.com/page" + this.emitted++);
+	    }
+	}
+
+	void awaitRequested(final long count) throws InterruptedException {
+	    final long deadline = System.currentTimeMillis() + 10000;
+	    while (this.requested.get() < count && System.currentTimeMillis() < deadline) {
+		Thread.sleep(5);
+	    }
+	    Assert.assertEquals(count, this.requested.get());
+	}
+
+	void complete() {
+	    this.subscriber.onComplete();
+	}
+    }
+}
@@ -36,6 +36,14 @@ public class PercentCodecTest {
 	Assert.assertEquals(" % ", codec.decode("%20%%20"));
     }
 
+    @Test
+    public void testDecodeRange() {
+	Assert.assertEquals("a b", codec.decode("q=a+b&x", 2, 5));
+	Assert.assertEquals("AB%", codec.decode(new StringBuilder("x%41%42%"), 1, 8));
+	Assert.assertEquals("abc", codec.decode(java.nio.CharBuffer.wrap("[abc]"), 1, 4));
+	Assert.assertEquals("", codec.decode("abc", 1, 1));
+    }
+
     @Test
     public void testEncodeQueryComponent() {
 	Assert.assertEquals("%25%26%3b%3d%3a%3f%23", codec.encodeQueryComponent("%&;=:?#"));
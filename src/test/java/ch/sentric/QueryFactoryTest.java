@@ -17,6 +17,8 @@ package ch.sentric;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
@@ -40,6 +42,14 @@ public class QueryFactoryTest {
 	assertRoundTrip("alles=klar&auf=der&andrea=doria");
     }
 
+    @Test
+    public void buildShouldUseSiteRules() {
+	final SiteRules rules = new SiteRules(Arrays.asList("sid"), false, ';');
+	final Query query = new QueryFactory().build("b=a;SID=42;a=b&c", rules);
+	assertEquals("a=b&c;b=a", query.getAsSortedString());
+	assertEquals("sid=1&a=b", new QueryFactory().build("sid=1&a=b", SiteRules.DEFAULT).getAsString());
+    }
+
     @Test
     public void buildSortQuery() {
 	final Query query = new QueryFactory().build("b=a&a=b");
@@ -109,6 +119,13 @@ public class QueryFactoryTest {
 	assertEquals("ysmcampgid=123456", query.getAsSortedString());
     }
 
+    @Test
+    public void buildShouldReadRange() {
+	assertEquals("b=2&a=1", new QueryFactory().build("http://example.com/?b=2&a=1#top", 20, 27).getAsString());
+	assertEquals("b=2;a=1", new QueryFactory().build(new StringBuilder("?b=2;sid=x;a=1"), 1, 14, new SiteRules(Arrays.asList("sid"), false, ';')).getAsString());
+	assertEquals("", new QueryFactory().build("a=1", 1, 1).getAsString());
+    }
+
     private void assertRoundTrip(final String q) {
 	final Query query = new QueryFactory().build(q);
 	assertEquals(q, query.getAsString());
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link RollupAggregator} test class.
+ */
+public class RollupAggregatorTest {
+    private final List<String> rollups = new ArrayList<String>();
+
+    private final RollupAggregator.Listener listener = new RollupAggregator.Listener() {
+	@Override
+	public void rollup(final RollupAggregator.Level level, final int depth, final String prefix, final long keys, final long count) {
+	    RollupAggregatorTest.this.rollups.add(level + (depth > 0 ? Integer.toString(depth) : "") + " " + prefix + " " + keys + " " + count);
+	}
+    };
+
+    @Test
+    public void aggregatorShouldFinishGroupsWhenTheirPrefixEnds() {
+	final RollupAggregator aggregator = new RollupAggregator(EnumSet.allOf(RollupAggregator.Level.class), 2, this.listener);
+	aggregator.add("ch.sentric/blog/a", 3);
+	aggregator.add("ch.sentric/blog/b");
+	aggregator.add("com.example");
+	aggregator.add("com.example-foo/x");
+	Assert.assertEquals(Arrays.asList("PATH2 ch.sentric/blog/a 1 3", "PATH2 ch.sentric/blog/b 1 1", "PATH1 ch.sentric/blog 2 4", "HOST ch.sentric 2 4",
+		"DOMAIN ch.sentric 2 4", "TLD ch 2 4"), this.rollups);
+	this.rollups.clear();
+
+	aggregator.add("com.example.www/y");
+	aggregator.add("com.example/z");
+	aggregator.finish();
+	// the bare com.example is kept open while com.example-foo sorts in between
+	Assert.assertEquals(Arrays.asList("PATH1 com.example-foo/x 1 1", "HOST com.example-foo 1 1", "DOMAIN com.example-foo 1 1",
+		"PATH1 com.example.www/y 1 1", "HOST com.example.www 1 1", "PATH1 com.example/z 1 1", "HOST com.example 2 2", "DOMAIN com.example 3 3",
+		"TLD com 4 4"), this.rollups);
+    }
+
+    @Test
+    public void aggregatorShouldUseRegistrableDomains() {
+	final RollupAggregator aggregator = new RollupAggregator(EnumSet.of(RollupAggregator.Level.TLD, RollupAggregator.Level.DOMAIN), 0, this.listener);
+	aggregator.add("192.168.0.1/index.html");
+	aggregator.add("uk.co.bbc.news/a");
+	aggregator.add("uk.co.bbc.www/b?x=1");
+	aggregator.add("uk.co.guardian");
+	aggregator.finish();
+	Assert.assertEquals(Arrays.asList("DOMAIN 192.168.0.1 1 1", "TLD 192.168.0.1 1 1", "DOMAIN uk.co.bbc 2 2", "DOMAIN uk.co.guardian 1 1", "TLD uk 3 3"),
+		this.rollups);
+    }
+
+    @Test
+    public void aggregatorShouldMatchGroupedCounts() {
+	final Random random = new Random(7);
+	final String[] hosts = { "com.example", "com.example-foo", "com.example.www", "com.example.www.a", "com", "com.exa", "de.example", "uk.co.bbc",
+		"uk.co.bbc.www", "10.0.0.1" };
+	final String[] segments = { "", "a", "a-b", "ab", "b" };
+	final List<String> keys = new ArrayList<String>();
+	for (int i = 0; i < 3000; i++) {
+	    final StringBuilder key = new StringBuilder(hosts[random.nextInt(hosts.length)]);
+	    final int depth = random.nextInt(4);
+	    for (int d = 0; d < depth; d++) {
+		key.append('/').append(segments[random.nextInt(segments.length)]);
+	    }
+	    if (random.nextInt(4) == 0) {
+		key.append("?q=").append(random.nextInt(3));
+	    }
+	    keys.add(key.toString());
+	}
+	Collections.sort(keys);
+
+	final RollupAggregator aggregator = new RollupAggregator(EnumSet.allOf(RollupAggregator.Level.class), 2, this.listener);
+	final Map<String, Long> expected = new HashMap<String, Long>();
+	for (final String key : keys) {
+	    aggregator.add(key);
+	    final String host = key.split("[/?]", 2)[0];
+	    final String domain = host.startsWith("10.") ? host : UrlUtil.siteToTopLevel(host);
+	    increment(expected, "TLD " + (host.startsWith("10.") ? host : host.split("\\.")[0]));
+	    increment(expected, "DOMAIN " + domain);
+	    increment(expected, "HOST " + host);
+	    final String path = key.substring(host.length()).split("\\?")[0];
+	    final String[] parts = path.split("/", -1);
+	    for (int depth = 1; depth < parts.length && depth <= 2; depth++) {
+		final StringBuilder prefix = new StringBuilder(host);
+		for (int d = 1; d <= depth; d++) {
+		    prefix.append('/').append(parts[d]);
+		}
+		increment(expected, "PATH" + depth + " " + prefix);
+	    }
+	}
+	aggregator.finish();
+
+	final Map<String, Long> actual = new HashMap<String, Long>();
+	for (final String rollup : this.rollups) {
+	    final String[] fields = rollup.split(" ");
+	    Assert.assertNull(rollup, actual.put(fields[0] + " " + fields[1], Long.valueOf(fields[2])));
+	}
+	Assert.assertEquals(expected, actual);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectPathWithoutSegments() {
+	new RollupAggregator(EnumSet.of(RollupAggregator.Level.PATH), 0, this.listener);
+    }
+
+    private static void increment(final Map<String, Long> counts, final String group) {
+	final Long count = counts.get(group);
+	counts.put(group, null == count ? 1L : count + 1);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link RowKey} test class.
+ */
+public class RowKeyTest {
+
+    @Test
+    public void encodeShouldOrderSemantically() throws MalformedURLException {
+	final String[] ordered = { "http://example.com/", "http://example.com/?a=1", "http://example.com/a", "http://example.com/a?x=1", "http://example.com/a/b",
+		"http://example.com/a-b", "http://example.com/a.b", "http://example.com/ab", "http://shop.example.com/", "http://example-foo.com/",
+		"http://exampleb.com/", "http://example.org/" };
+	final List<URL> urls = new ArrayList<URL>();
+	for (int i = ordered.length - 1; i >= 0; i--) {
+	    urls.add(new URL(ordered[i]));
+	}
+	Collections.sort(urls, new Comparator<URL>() {
+	    @Override
+	    public int compare(final URL a, final URL b) {
+		return RowKey.compare(RowKey.encode(a), RowKey.encode(b));
+	    }
+	});
+	for (int i = 0; i < ordered.length; i++) {
+	    Assert.assertEquals(ordered[i], urls.get(i).getGivenInputUrl());
+	}
+    }
+
+    @Test
+    public void encodeShouldIgnoreWwwAndDefaultPort() throws MalformedURLException {
+	Assert.assertArrayEquals(RowKey.encode(new URL("http://example.com/bar.html")), RowKey.encode(new URL("http://www.example.com:80/bar.html")));
+    }
+
+    @Test
+    public void encodeShouldDistinguishSchemeAndPort() throws MalformedURLException {
+	final byte[] http = RowKey.encode(new URL("http://example.com/bar.html"));
+	final byte[] https = RowKey.encode(new URL("https://example.com/bar.html"));
+	final byte[] port = RowKey.encode(new URL("http://example.com:8080/bar.html"));
+	Assert.assertTrue(RowKey.compare(http, https) < 0);
+	Assert.assertTrue(RowKey.compare(http, port) < 0);
+	Assert.assertTrue(RowKey.compare(https, RowKey.encode(new URL("http://example.com/bar.html?a=b"))) < 0);
+    }
+
+    @Test
+    public void domainRangeShouldCoverSubdomains() throws MalformedURLException {
+	final RowKey.Range range = RowKey.domainRange("example.com");
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("http://example.com/"))));
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("https://www.example.com/a?b=c"))));
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("http://a.b.example.com/"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://example-foo.com/"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://examplecom.com/"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://example.org/"))));
+    }
+
+    @Test
+    public void domainRangeShouldCoverIpAddress() throws MalformedURLException {
+	final RowKey.Range range = RowKey.domainRange("192.168.1.2");
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("http://192.168.1.2/a"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://192.168.1.20/a"))));
+    }
+
+    @Test
+    public void pathRangeShouldCoverSubPathsOnly() throws MalformedURLException {
+	final RowKey.Range range = RowKey.pathRange(new URL("http://example.com/blog"));
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("http://example.com/blog"))));
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("https://example.com/blog?page=2"))));
+	Assert.assertTrue(range.contains(RowKey.encode(new URL("http://example.com/blog/hbase-sizing-notes"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://example.com/blog-archive"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://example.com/"))));
+	Assert.assertFalse(range.contains(RowKey.encode(new URL("http://blog.example.com/blog"))));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link SiteRuleTrie} test class.
+ */
+public class SiteRuleTrieTest {
+    private static final SiteRules DOMAIN = new SiteRules(Arrays.asList("sid"), false, '&');
+    private static final SiteRules SUBDOMAIN = new SiteRules(Collections.<String> emptyList(), true, '&');
+    private static final SiteRules HOST = new SiteRules(Collections.<String> emptyList(), false, ';');
+
+    @Test
+    public void findShouldPreferHostOverInnermostDomain() {
+	final SiteRuleTrie trie = new SiteRuleTrie();
+	trie.putDomain("example.co.uk", DOMAIN);
+	trie.putDomain("shop.example.co.uk", SUBDOMAIN);
+	trie.putHost("www.example.co.uk", HOST);
+	Assert.assertEquals(3, trie.size());
+
+	Assert.assertSame(DOMAIN, trie.findReversed("uk.co.example"));
+	Assert.assertSame(DOMAIN, trie.findReversed("uk.co.example.blog"));
+	Assert.assertSame(SUBDOMAIN, trie.findReversed("uk.co.example.shop.eu"));
+	Assert.assertSame(HOST, trie.findReversed("uk.co.example.www"));
+	Assert.assertSame(DOMAIN, trie.findReversed("uk.co.example.www.x"));
+	Assert.assertSame(SiteRules.DEFAULT, trie.findReversed("uk.co.examples"));
+	Assert.assertSame(SiteRules.DEFAULT, trie.findReversed("uk.co"));
+	Assert.assertSame(SiteRules.DEFAULT, trie.findReversed(""));
+    }
+
+    @Test
+    public void findShouldNormalizeHosts() {
+	final SiteRuleTrie trie = new SiteRuleTrie();
+	trie.putHost("WWW.Bücher.DE", HOST);
+	trie.putHost("10.0.0.1", DOMAIN);
+	Assert.assertSame(HOST, trie.find(new HostNameFactory().build("www.xn--bcher-kva.de")));
+	Assert.assertSame(DOMAIN, trie.find(new HostNameFactory().build("010.0.0.1")));
+	Assert.assertSame(SiteRules.DEFAULT, trie.find(new HostNameFactory().build("10.0.0.2")));
+    }
+
+    @Test
+    public void findShouldScaleToManyRules() {
+	final SiteRuleTrie trie = new SiteRuleTrie();
+	for (int i = 0; i < 10000; i++) {
+	    trie.putDomain("site" + i + ".com", i % 2 == 0 ? DOMAIN : SUBDOMAIN);
+	}
+	trie.putDomain("site0.com", HOST);
+	Assert.assertEquals(10000, trie.size());
+	for (int i = 1; i < 10000; i++) {
+	    Assert.assertSame(i % 2 == 0 ? DOMAIN : SUBDOMAIN, trie.findReversed("com.site" + i + ".www"));
+	}
+	Assert.assertSame(HOST, trie.findReversed("com.site0"));
+	Assert.assertSame(SiteRules.DEFAULT, trie.findReversed("com.site10000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void siteRulesShouldRejectEqualsAsDelimiter() {
+	new SiteRules(Collections.<String> emptyList(), false, '=');
+    }
+}
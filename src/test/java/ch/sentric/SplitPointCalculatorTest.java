@@ -0,0 +1,92 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link SplitPointCalculator} test class.
+ */
+public class SplitPointCalculatorTest {
+
+    @Test
+    public void computeShouldBalancePartitions() {
+	final SplitPointCalculator calculator = new SplitPointCalculator(1000, new Random(42));
+	for (int i = 0; i < 100000; i++) {
+	    calculator.add(String.format("http://www.example.com/%05d", i));
+	}
+	final SplitPointCalculator.Splits splits = calculator.compute(4, false);
+	Assert.assertEquals(100000, calculator.getSeen());
+	Assert.assertEquals(3, splits.getSplitPoints().size());
+	long total = 0;
+	for (final long size : splits.getExpectedSizes()) {
+	    Assert.assertTrue(String.valueOf(size), size > 20000 && size < 30000);
+	    total += size;
+	}
+	Assert.assertEquals(100000, total, 4);
+	Assert.assertTrue(splits.getSplitPoints().get(1), splits.getSplitPoints().get(1).compareTo("com.example/45000") > 0);
+	Assert.assertTrue(splits.getSplitPoints().get(1), splits.getSplitPoints().get(1).compareTo("com.example/55000") < 0);
+    }
+
+    @Test
+    public void computeShouldIgnoreMalformedUrls() {
+	final SplitPointCalculator calculator = new SplitPointCalculator(10);
+	calculator.add("http://a.com/");
+	calculator.add("no url");
+	calculator.add("http://b.com/");
+	final SplitPointCalculator.Splits splits = calculator.compute(2, false);
+	Assert.assertEquals(Arrays.asList("com.b"), splits.getSplitPoints());
+	Assert.assertArrayEquals(new long[] { 1, 1 }, splits.getExpectedSizes());
+    }
+
+    @Test
+    public void computeShouldOrderByUtf8Bytes() {
+	final SplitPointCalculator calculator = new SplitPointCalculator(10);
+	// U+FF21 sorts after U+1F600 in utf-16 but before it in utf-8
+	calculator.add("http://a.com/?q=\uD83D\uDE00");
+	calculator.add("http://a.com/?q=\uFF21");
+	final SplitPointCalculator.Splits splits = calculator.compute(2, false);
+	Assert.assertEquals(Arrays.asList("com.a?q=\uD83D\uDE00"), splits.getSplitPoints());
+	Assert.assertArrayEquals(new long[] { 1, 1 }, splits.getExpectedSizes());
+    }
+
+    @Test
+    public void computeShouldSnapToSites() {
+	final SplitPointCalculator calculator = new SplitPointCalculator(100);
+	for (int i = 0; i < 10; i++) {
+	    calculator.add("http://www.bbc.co.uk/news/" + i);
+	    calculator.add("http://sport.bbc.co.uk/" + i);
+	    calculator.add("http://example-foo.com/" + i);
+	    calculator.add("http://example.com/" + i);
+	}
+	final List<String> splitPoints = calculator.compute(8, true).getSplitPoints();
+	Assert.assertEquals(Arrays.asList("uk.co.bbc"), splitPoints);
+    }
+
+    @Test
+    public void siteBoundaryShouldReturnRegistrableDomain() {
+	Assert.assertEquals("uk.co.bbc", SplitPointCalculator.siteBoundary("uk.co.bbc.sport/football?a=b"));
+	Assert.assertEquals("com.example", SplitPointCalculator.siteBoundary("com.example.www"));
+	Assert.assertEquals("com.example", SplitPointCalculator.siteBoundary("com.example-foo/bar"));
+	Assert.assertEquals("com.example", SplitPointCalculator.siteBoundary("com.example-foo-bar.shop"));
+	Assert.assertEquals("com.examplefoo", SplitPointCalculator.siteBoundary("com.examplefoo"));
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link SplitPointTool} test class.
+ */
+public class SplitPointToolTest {
+
+    @Test
+    public void runShouldWriteOnePartitionPerLine() throws IOException {
+	final StringWriter out = new StringWriter();
+	SplitPointTool.run(new String[] { "2", "10" }, new BufferedReader(new StringReader("http://a.com/\nno url\n http://b.com/ \n")), out);
+	Assert.assertEquals("\t1\ncom.b\t1\n", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void runShouldRejectMissingPartitions() throws IOException {
+	SplitPointTool.run(new String[0], new BufferedReader(new StringReader("")), new StringWriter());
+    }
+}
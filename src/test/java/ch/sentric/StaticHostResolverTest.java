@@ -0,0 +1,55 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link StaticHostResolver} test class.
+ */
+public class StaticHostResolverTest {
+
+    @Test
+    public void resolveShouldReturnAddedAddresses() throws UnknownHostException {
+	final StaticHostResolver resolver = new StaticHostResolver().add("www.sentric.ch", "192.168.1.2").add("WWW.sentric.ch", "::1");
+	final InetAddress[] addresses = resolver.resolve("www.SENTRIC.ch");
+	Assert.assertEquals(2, addresses.length);
+	Assert.assertArrayEquals(new byte[] { (byte) 192, (byte) 168, 1, 2 }, addresses[0].getAddress());
+	Assert.assertEquals("www.sentric.ch", addresses[0].getHostName());
+	Assert.assertEquals(16, addresses[1].getAddress().length);
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void resolveShouldFailForUnknownHost() throws UnknownHostException {
+	new StaticHostResolver().resolve("www.sentric.ch");
+    }
+
+    @Test
+    public void addShouldRejectNonLiterals() {
+	for (final String ip : new String[] { "", "ab.cd1", "1.2.3.4.5", "256.1.1.1", "1.2.3", "localhost", "zz:1", ".:1", "1::2::3" }) {
+	    try {
+		new StaticHostResolver().add("www.sentric.ch", ip);
+		Assert.fail(ip);
+	    } catch (final UnknownHostException e) {
+		// expected
+	    }
+	}
+    }
+}
@@ -20,6 +20,7 @@ import static org.junit.Assert.*;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -235,4 +236,22 @@ public class URLTest {
 	    fail("getUri() should not throw URISyntaxException when url contains no fragment");
 	}
     }
+
+    @Test
+    public void constructorShouldReadRange() throws MalformedURLException {
+	final String line = "127.0.0.1 - - \"GET http://www.Example.com/a/?b=1#top HTTP/1.1\" 200";
+	final int start = line.indexOf("http");
+	final URL url = new URL(line, start, line.indexOf(" HTTP/"));
+	assertEquals("http://www.Example.com/a/?b=1#top", url.getGivenInputUrl());
+	assertEquals("com.example/a?b=1", url.getNormalizedUrl());
+	assertEquals(new URL("http://[::1]:8080/x").getNormalizedUrl(), new URL(new StringBuilder(" http://[::1]:8080/x "), 1, 20).getNormalizedUrl());
+    }
+
+    @Test
+    public void getNormalizedUrlShouldApplySiteRules() throws MalformedURLException {
+	final SiteRuleTrie rules = new SiteRuleTrie();
+	rules.putDomain("example.com", new SiteRules(Arrays.asList("sid"), true, ';'));
+	assertEquals("com.example.shop/cart?a=1;b=2", new URL("http://shop.example.com/Cart?b=2;sid=abc;a=1", rules).getNormalizedUrl());
+	assertEquals("org.example/Cart?b=2&sid=abc", new URL("http://example.org/Cart?b=2&sid=abc", rules).getNormalizedUrl());
+    }
 }
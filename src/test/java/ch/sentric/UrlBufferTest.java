@@ -0,0 +1,111 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The {@link UrlBuffer} test class.
+ */
+public class UrlBufferTest {
+    private UrlBuffer load(final String host, final int port, final String path, final String query) {
+	final UrlBuffer buffer = new UrlBuffer();
+	buffer.reset("http", host, port, path, query);
+	return buffer;
+    }
+
+    @Test
+    public void resetShouldLayOutComponents() {
+	final UrlBuffer buffer = load("example.com", 8080, "/a/b", "x=1");
+	Assert.assertEquals("example.com:8080/a/b?x=1", buffer.toString());
+	Assert.assertEquals(11, buffer.getHostEnd());
+	Assert.assertEquals(8080, buffer.getPort());
+	Assert.assertEquals("/a/b", buffer.substring(buffer.getPathStart(), buffer.getPathEnd()));
+	Assert.assertEquals("x=1", buffer.substring(buffer.getQueryStart(), buffer.getQueryEnd()));
+
+	buffer.reset("http", "example.com", -1, "", "");
+	Assert.assertEquals("example.com", buffer.toString());
+	Assert.assertEquals(-1, buffer.getPort());
+	Assert.assertEquals(buffer.getQueryEnd(), buffer.getQueryStart());
+    }
+
+    @Test
+    public void replaceShouldMoveBoundaries() {
+	final UrlBuffer buffer = load("example.com", 8080, "/a/b", "x=1");
+	buffer.replace(0, buffer.getHostEnd(), "sentric.ch");
+	Assert.assertEquals(10, buffer.getHostEnd());
+	buffer.delete(buffer.getPortStart(), buffer.getPortEnd());
+	Assert.assertEquals(-1, buffer.getPort());
+	Assert.assertEquals(10, buffer.getPathStart());
+	// inserted at a boundary, the text belongs to the following component
+	buffer.replace(buffer.getPathStart(), buffer.getPathStart(), "/c");
+	Assert.assertEquals("/c/a/b", buffer.substring(buffer.getPathStart(), buffer.getPathEnd()));
+	buffer.replace(buffer.getPathStart(), buffer.getPathEnd(), "");
+	Assert.assertEquals("sentric.ch?x=1", buffer.toString());
+	Assert.assertEquals("x=1", buffer.substring(buffer.getQueryStart(), buffer.getQueryEnd()));
+    }
+
+    @Test
+    public void parametersShouldBeRemovedSortedAndRendered() {
+	final UrlBuffer buffer = load("example.com", -1, "/", "b=2&a=1&c=3");
+	final int start = buffer.getQueryStart();
+	buffer.clearParameters();
+	buffer.addParameter(start, start + 1, start + 2, start + 3);
+	buffer.addParameter(start + 4, start + 5, start + 6, start + 7);
+	buffer.addParameter(start + 8, start + 9, start + 9, start + 9);
+	buffer.sortParameters();
+	Assert.assertEquals("example.com/?a=1&b=2&c=", buffer.toString());
+	buffer.removeParameter(1);
+	Assert.assertEquals("example.com/?a=1&c=", buffer.toString());
+	buffer.removeParameter(0);
+	buffer.removeParameter(0);
+	Assert.assertEquals("example.com/", buffer.toString());
+    }
+
+    @Test
+    public void changingTheQueryLengthShouldDropParameters() {
+	final UrlBuffer buffer = load("example.com", -1, "", "b=2");
+	final int start = buffer.getQueryStart();
+	buffer.clearParameters();
+	buffer.addParameter(start, start + 1, start + 2, start + 3);
+	buffer.replace(start + 2, start + 3, "3");
+	Assert.assertTrue(buffer.isQueryParsed());
+	Assert.assertEquals("example.com?b=3", buffer.toString());
+	buffer.replace(start + 2, start + 3, "42");
+	Assert.assertFalse(buffer.isQueryParsed());
+	Assert.assertEquals("example.com?b=42", buffer.toString());
+    }
+
+    @Test
+    public void parametersShouldMoveWithEditsBeforeTheQuery() {
+	final UrlBuffer buffer = load("example.com", 80, "/a", "b=2");
+	final int start = buffer.getQueryStart();
+	buffer.clearParameters();
+	buffer.addParameter(start, start + 1, start + 2, start + 3);
+	buffer.delete(buffer.getPortStart(), buffer.getPortEnd());
+	buffer.replace(buffer.getPathStart(), buffer.getPathEnd(), "/abc");
+	Assert.assertTrue(buffer.isQueryParsed());
+	Assert.assertEquals("example.com/abc?b=2", buffer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addParameterShouldRejectRangesOutsideOfTheQuery() {
+	final UrlBuffer buffer = load("example.com", -1, "/a", "b=2");
+	buffer.clearParameters();
+	buffer.addParameter(0, 1, 1, 1);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link URL#getNormalizedUrl()} with a reused {@link UrlParser}
+ * normalizing into a reused builder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlParserBenchmark {
+    @Param({ "http://sentric.ch/blog/why-hadoop-and-why-now",
+	    "http://www.example.com:80/display/te%7Est?lang=en&utm_source=x&article=fred&PHPSESSID=abc" })
+    public String url;
+
+    private final UrlParser parser = new UrlParser();
+    private final StringBuilder key = new StringBuilder(256);
+
+    @Benchmark
+    public String url() throws MalformedURLException {
+	return new URL(this.url).getNormalizedUrl();
+    }
+
+    @Benchmark
+    public int parser() throws MalformedURLException {
+	this.key.setLength(0);
+	return this.parser.reset(this.url).normalizeInto(this.key).length();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+
+import org.junit.Test;
+
+/**
+ * Test-Class for the {@link UrlParser}.
+ */
+public class UrlParserTest {
+
+    @Test
+    public void shouldNormalizeLikeUrl() throws MalformedURLException {
+	final UrlParser parser = new UrlParser();
+	for (final String url : new String[] { "http://www.example.com:80/display/te%7Est?lang=en&utm_source=x&article=fred&PHPSESSID=abc",
+		"HTTPS://Example.COM/a/b/../c/?b=2&a=1#top", " http://user:pw@192.168.001.1:8080/x;jsessionid=1 ", "http://example.com",
+		"ftp://example.com/?a&b=", "http://[::1]:8080/a", "http://bücher.de/straße", "http://a@b@c/x", "mailto://example.com/a" }) {
+	    final StringBuilder key = new StringBuilder("key:");
+	    assertEquals(url, "key:" + new URL(url).getNormalizedUrl(), parser.reset(url).normalizeInto(key).toString());
+	}
+    }
+
+    @Test
+    public void shouldNormalizeOnceAfterReset() throws MalformedURLException {
+	final UrlParser parser = new UrlParser();
+	parser.reset("http://www.example.com/a/");
+	assertEquals("com.example/a", parser.normalizeInto(new StringBuilder()).toString());
+	assertEquals("com.example/a", parser.normalizeInto(new StringBuilder()).toString());
+	assertEquals("com.example/a", parser.getUrl().toString());
+	parser.reset(new StringBuilder("http://example.org/b?y=1&x=2"));
+	assertEquals("org.example/b?x=2&y=1", parser.normalizeInto(new StringBuilder()).toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailBeforeReset() throws MalformedURLException {
+	new UrlParser().normalizeInto(new StringBuilder());
+    }
+
+    @Test
+    public void shouldRejectMalformedUrls() throws MalformedURLException {
+	final UrlParser parser = new UrlParser();
+	parser.reset("http://example.com/a");
+	for (final String url : new String[] { "no-scheme", "foo://example.com", "http://exa\u0001mple.com/" }) {
+	    try {
+		parser.reset(url);
+		fail(url);
+	    } catch (final MalformedURLException e) {
+		// expected
+	    }
+	}
+	try {
+	    parser.normalizeInto(new StringBuilder());
+	    fail();
+	} catch (final IllegalStateException e) {
+	    // expected, the failed reset dropped the url
+	}
+    }
+}
@@ -133,6 +133,63 @@ public class UrlUtilTest {
 	assertEquals(url, UrlUtil.fromEscapedFragmentUrl(fragmentUrl));
     }
 
+    @Test
+    public void reverseUrlOrderShouldReverseLabels() {
+	assertEquals("subdomain.bbc.co.uk", UrlUtil.reverseUrlOrder("uk.co.bbc.subdomain"));
+	assertEquals("com", UrlUtil.reverseUrlOrder("com"));
+	assertEquals("", UrlUtil.reverseUrlOrder(""));
+    }
+
+    @Test
+    public void reverseUrlOrderShouldDropEmptyLabels() {
+	assertEquals("c.b.a", UrlUtil.reverseUrlOrder(".a..b.c."));
+	assertEquals("", UrlUtil.reverseUrlOrder(".."));
+    }
+
+    @Test
+    public void reverseUrlOrderShouldKeepIp() {
+	assertEquals("192.168.1.2", UrlUtil.reverseUrlOrder("192.168.1.2"));
+	assertEquals("400.1.168.192", UrlUtil.reverseUrlOrder("192.168.1.400"));
+    }
+
+    @Test
+    public void reverseUrlOrderShouldReverseRange() {
+	final String key = "uk.co.bbc.subdomain/path?a=b";
+	assertEquals("subdomain.bbc.co.uk", UrlUtil.reverseUrlOrder(key, 0, key.indexOf('/')));
+	assertEquals("bbc.co", UrlUtil.reverseUrlOrder(key, 3, 9));
+	assertEquals("1.2.3.4", UrlUtil.reverseUrlOrder("x/1.2.3.4/", 2, 9));
+    }
+
+    @Test
+    public void reverseUrlOrderShouldReverseBatch() {
+	assertArrayEquals(new String[] { "www.example.com", "1.2.3.4", "" }, UrlUtil.reverseUrlOrder(new String[] { "com.example.www", "1.2.3.4", "" }));
+    }
+
+    @Test
+    public void escapedFragmentConversionShouldMatchParsedUrl() throws MalformedURLException, UnsupportedEncodingException {
+	final String[] urls = { "http://example.com#!a=b", "http://user@example.com:8080/a/b;jsessionid=1?x=1&utm_source=y&PHPSESSID=2#!key=v&x=%25 #",
+		"http://example.com/?#!", "http://example.com/a&b#!price=$5\\1", "https://example.com/p?q=a?b#!state" };
+	for (final String s : urls) {
+	    final URL escaped = UrlUtil.toEscapedFragmentUrl(new URL(s));
+	    assertEquals(new URL(escaped.getGivenInputUrl()), escaped);
+	    final URL unescaped = UrlUtil.fromEscapedFragmentUrl(escaped);
+	    assertEquals(new URL(unescaped.getGivenInputUrl()), unescaped);
+	    assertEquals(new URL(s).getFragment(), unescaped.getFragment());
+	}
+    }
+
+    @Test
+    public void isEscapedFragmentShouldRequireParameterDelimiter() {
+	assertFalse(UrlUtil.isEscapeFragmentUrl("http://example.com/my_escaped_fragment_=x"));
+	assertTrue(UrlUtil.isEscapeFragmentUrl("http://example.com/?a=my_escaped_fragment_=x&_escaped_fragment_=y"));
+    }
+
+    @Test
+    public void fromEscapedFragmentUrlShouldUseLastParameter() throws MalformedURLException, UnsupportedEncodingException {
+	final URL url = new URL("http://example.com/?_escaped_fragment_=a&_escaped_fragment_=b%24");
+	assertEquals(new URL("http://example.com/?_escaped_fragment_=a#!b$"), UrlUtil.fromEscapedFragmentUrl(url));
+    }
+
     @Test
     public void subdomainShouldReturnCorrectValue1() throws MalformedURLException {
 	final URL url = new URL("http://news.google.co.uk?#!my-request&key=value");
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.sentric;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test-Class for the {@link UrlView}.
+ */
+public class UrlViewTest {
+
+    @Test
+    public void shouldSplitComponents() throws MalformedURLException {
+	final UrlView view = new UrlView(" HTTP://user:pw@www.Example.com:8080/a/b?x=1&y#top ");
+	assertEquals("HTTP", view.getScheme().toString());
+	assertEquals("user:pw", view.getUserInfo().toString());
+	assertEquals("www.Example.com", view.getHost().toString());
+	assertEquals(8080, view.getPort());
+	assertEquals("/a/b", view.getPath().toString());
+	assertEquals("x=1&y", view.getQuery().toString());
+	assertEquals("top", view.getFragment().toString());
+    }
+
+    @Test
+    public void shouldReturnNullForMissingComponents() throws MalformedURLException {
+	final UrlView view = new UrlView("http://example.com");
+	assertNull(view.getUserInfo());
+	assertEquals(-1, view.getPort());
+	assertEquals("", view.getPath().toString());
+	assertNull(view.getQuery());
+	assertNull(view.getFragment());
+	assertFalse(view.getPathSegments().iterator().hasNext());
+	assertFalse(view.getQueryParameters().iterator().hasNext());
+    }
+
+    @Test
+    public void shouldIterateSegments() throws MalformedURLException {
+	final UrlView view = new UrlView("http://example.com/a//b/?&x=1&&y&#f");
+	assertEquals(Arrays.asList("a", "", "b", ""), toStrings(view.getPathSegments()));
+	assertEquals(Arrays.asList("x=1", "y"), toStrings(view.getQueryParameters()));
+	assertEquals(Arrays.asList(""), toStrings(new UrlView("http://example.com/").getPathSegments()));
+    }
+
+    @Test
+    public void shouldRejectMalformedUrls() {
+	for (final String url : new String[] { "example.com/a", "://example.com", "http:/example.com", "1http://example.com", "http://example.com:8o/",
+		"http://example.com:99999999999/" }) {
+	    try {
+		new UrlView(url);
+		fail(url);
+	    } catch (final MalformedURLException e) {
+		// expected
+	    }
+	}
+    }
+
+    @Test
+    public void shouldSplitLikeJavaNetUrl() throws MalformedURLException {
+	final Random random = new Random(3);
+	final String[] parts = { "http://", "https://", "ftp://", "a", "B", ".", ":", "80", "@", "/", "?", "#", "&", "=", "[::1]", "%20", " " };
+	int compared = 0;
+	for (int i = 0; i < 20000; i++) {
+	    final StringBuilder builder = new StringBuilder(parts[random.nextInt(3)]);
+	    for (int j = random.nextInt(10); j > 0; j--) {
+		builder.append(parts[3 + random.nextInt(parts.length - 3)]);
+	    }
+	    final String url = builder.toString();
+	    final java.net.URL expected;
+	    try {
+		expected = new java.net.URL(url);
+	    } catch (final MalformedURLException e) {
+		continue;
+	    }
+	    final UrlView view = new UrlView(url);
+	    assertEquals(url, expected.getProtocol(), view.getScheme().toString());
+	    assertEquals(url, expected.getUserInfo(), toString(view.getUserInfo()));
+	    assertEquals(url, expected.getHost(), view.getHost().toString());
+	    assertEquals(url, expected.getPort(), view.getPort());
+	    assertEquals(url, expected.getPath(), view.getPath().toString());
+	    assertEquals(url, expected.getQuery(), toString(view.getQuery()));
+	    assertEquals(url, expected.getRef(), toString(view.getFragment()));
+	    compared++;
+	}
+	assertTrue(compared > 10000);
+    }
+
+    private static String toString(final CharSequence s) {
+	return null == s ? null : s.toString();
+    }
+
+    private static List<String> toStrings(final Iterable<CharSequence> slices) {
+	final List<String> result = new ArrayList<String>();
+	for (final CharSequence slice : slices) {
+	    result.add(slice.toString());
+	}
+	return result;
+    }
+}